@@ -0,0 +1,67 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads the front matter of a curated dir of 200 term files from a {@link StubGithubServer} that
+ * adds a latency, with up to half as much again of jitter, to every request, at different fetch
+ * concurrencies. Nothing is cached between reads.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class GithubConnectorBenchmark {
+
+  private static final String OWNER_REPO = "synthetic/synthetic";
+  private static final String CURATED_DIR = "docs/terms";
+  private static final int FILES = 200;
+
+  @Param({"0", "20", "100"})
+  public int latencyMillis;
+
+  @Param({"1", "8", "32"})
+  public int concurrency;
+
+  private StubGithubServer stub;
+  private GithubConnector connector;
+
+  @Setup
+  public void setUp() throws IOException {
+    Duration latency = Duration.ofMillis(latencyMillis);
+    stub = new StubGithubServer().withLatency(latency, latency.dividedBy(2));
+    for (int i = 0; i < FILES; i++) {
+      stub.withFile(OWNER_REPO, CURATED_DIR + "/term-" + i + ".md", "---\nterm: term-" + i + "\ngrouptags: group-" + (i % 20) + "\n---\n\n# Term " + i + "\n");
+    }
+    connector = new GithubConnector(stub.client(), null, concurrency, concurrency, 4096);
+  }
+
+  @TearDown
+  public void tearDown() {
+    stub.close();
+  }
+
+  @Benchmark
+  public List<FileContent> directoryFrontMatter() {
+    return connector.getDirectoryFrontMatter(OWNER_REPO, CURATED_DIR, filename -> true, true);
+  }
+}
@@ -0,0 +1,68 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry.Source;
+
+/**
+ * Generates the {@code mrgtest} version of the essif-lab skeleton end to end, from reading the SAF to
+ * the last entry written, against an {@link InMemoryConnector} serving either the skeleton's own
+ * curated dir or a number of synthetic term files. Cold generations start with empty caches, as the
+ * command line does; warm ones share the caches of every earlier generation, as the web app does.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark {
+
+  private static final String VERSION = "mrgtest";
+
+  @Param({"skeleton", "1000", "10000"})
+  public String corpus;
+
+  @Param({"cold", "warm"})
+  public String caches;
+
+  private InMemoryConnector connector;
+  private ModelWrangler wrangler;
+  private MRGlossaryGenerator warmGenerator;
+  private ConnectorRegistry registry;
+
+  @Setup
+  public void setUp() throws IOException {
+    connector = InMemoryConnector.skeleton(corpus);
+    wrangler = new ModelWrangler(new YamlWrangler(), connector);
+    registry = new ConnectorRegistry(Source.GITHUB); // only asked for connectors for local scopedirs
+    warmGenerator = new MRGlossaryGenerator(wrangler, registry, 1, Duration.ofSeconds(30));
+  }
+
+  @Benchmark
+  public void generate() {
+    // a generator without remote scopes never starts its executor, so a new one per call costs nothing
+    MRGlossaryGenerator generator =
+        "warm".equals(caches)
+            ? warmGenerator
+            : new MRGlossaryGenerator(wrangler.withConnector(connector), registry, 1, Duration.ofSeconds(30));
+    generator.generate(
+        InMemoryConnector.SKELETON_SCOPEDIR, MRGlossaryGenerator.DEFAULT_SAF_FILENAME, VERSION, OutputStream.nullOutputStream());
+  }
+}
@@ -0,0 +1,90 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.MRGConnector;
+
+/**
+ * A connector that serves files held in memory, so benchmarks measure the generator rather than the
+ * network or the disk. Files are keyed by owner/repo and path and a directory lists the files
+ * directly in it, in the order they were added.
+ *
+ * @author sih
+ */
+final class InMemoryConnector implements MRGConnector {
+
+  static final String SKELETON_SCOPEDIR = "https://github.com/essif-lab/framework/tree/master/docs/tev2";
+  static final String SKELETON_REPO = "essif-lab/framework";
+  static final String SKELETON_ROOT = "docs/tev2";
+  private static final Path SKELETON = Path.of("src/test/resources/essif-lab-skeleton/tev2");
+  private static final Pattern TERMID = Pattern.compile("(?m)^termid:");
+
+  private final Map<String, String> files = new LinkedHashMap<>();
+
+  /**
+   * @return the skeleton SAF with either the skeleton's own curated dir or, for a number, that many
+   *     synthetic term files in its place. The skeleton's term files still call the term {@code
+   *     termid} so it is renamed, otherwise none of them would parse.
+   */
+  static InMemoryConnector skeleton(String corpus) throws IOException {
+    InMemoryConnector connector = new InMemoryConnector();
+    connector.put(SKELETON_REPO, SKELETON_ROOT + "/saf.yaml", Files.readString(SKELETON.resolve("saf.yaml")));
+    if ("skeleton".equals(corpus)) {
+      try (Stream<Path> paths = Files.list(SKELETON.resolve("terms"))) {
+        for (Path termFile : paths.sorted().collect(Collectors.toList())) {
+          connector.put(SKELETON_REPO, SKELETON_ROOT + "/terms/" + termFile.getFileName(), TERMID.matcher(Files.readString(termFile)).replaceFirst("term:"));
+        }
+      }
+    } else {
+      List<String> termFiles = new SyntheticCorpus(SyntheticCorpus.Shape.of(Integer.parseInt(corpus)), 42L).termFiles();
+      for (int i = 0; i < termFiles.size(); i++) {
+        connector.put(SKELETON_REPO, SKELETON_ROOT + "/terms/term-" + i + ".md", termFiles.get(i));
+      }
+    }
+    return connector;
+  }
+
+  void put(String repository, String path, String content) {
+    files.put(repository + "/" + path, content);
+  }
+
+  @Override
+  public String getContent(String repository, String contentName) {
+    return files.get(repository + "/" + contentName);
+  }
+
+  @Override
+  public List<FileContent> getDirectoryContent(String repository, String directoryName) {
+    String prefix = repository + "/" + directoryName + "/";
+    List<FileContent> contents = new ArrayList<>();
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      String key = file.getKey();
+      if (key.startsWith(prefix) && key.indexOf('/', prefix.length()) < 0) {
+        contents.add(new FileContent(key.substring(prefix.length()), file.getValue(), key, new ArrayList<>()));
+      }
+    }
+    return contents;
+  }
+
+  @Override
+  public Map<String, String> getDirectoryFingerprints(String repository, String directoryName) {
+    // never changes, so the filename will do
+    Map<String, String> fingerprints = new LinkedHashMap<>();
+    getDirectoryContent(repository, directoryName).forEach(fc -> fingerprints.put(fc.filename(), fc.filename()));
+    return fingerprints;
+  }
+
+  @Override
+  public String getFingerprint(String repository, String contentName) {
+    return files.containsKey(repository + "/" + contentName) ? contentName : null;
+  }
+}
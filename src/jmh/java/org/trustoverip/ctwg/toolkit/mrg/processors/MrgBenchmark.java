@@ -0,0 +1,93 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
+import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
+
+/**
+ * Writes and parses MRGs of synthetic entries: writing the whole MRG through {@link MRGStreamWriter},
+ * parsing all of it, and parsing it keeping only the one entry in a hundred a remote scope might
+ * import.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MrgBenchmark {
+
+  private static final long SEED = 42L;
+
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  private YamlWrangler wrangler;
+  private MRGModel mrg;
+  private byte[] mrgBytes;
+
+  @Setup
+  public void setUp() {
+    wrangler = new YamlWrangler();
+    Random random = new Random(SEED);
+    List<MRGEntry> mrgEntries = new ArrayList<>(entries);
+    for (int i = 0; i < entries; i++) {
+      MRGEntry entry = new MRGEntry();
+      entry.setTerm("term-" + i);
+      entry.setScopetag("synthetic");
+      entry.setVsntag("v1");
+      entry.setTermType("concept");
+      entry.setGrouptags("group-" + random.nextInt(20) + ", group-" + random.nextInt(20));
+      entry.setGlossaryText("synthetic term number " + i + " ".repeat(random.nextInt(200)));
+      entry.setLocator("term-" + i + ".md");
+      entry.setHeadingids(List.of("# Term " + i, "## Section 0"));
+      mrgEntries.add(entry);
+    }
+    mrg = new MRGModel(new Terminology("synthetic", "scopedir", "terms", "v1"), List.of(new ScopeRef(List.of("synthetic"), "scopedir")), mrgEntries);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    write(out);
+    mrgBytes = out.toByteArray();
+  }
+
+  @Benchmark
+  public void write() {
+    write(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public MRGModel parse() {
+    return wrangler.parseMrg(new ByteArrayInputStream(mrgBytes));
+  }
+
+  @Benchmark
+  public MRGModel parseFiltered() {
+    return wrangler.parseMrg(new ByteArrayInputStream(mrgBytes), e -> e.getTerm().endsWith("00"));
+  }
+
+  private void write(OutputStream out) {
+    try (MRGStreamWriter writer = wrangler.openMrg(out, mrg.terminology(), mrg.scopes())) {
+      writer.write(mrg.entries());
+    }
+  }
+}
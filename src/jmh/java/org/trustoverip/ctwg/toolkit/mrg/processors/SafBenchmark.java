@@ -0,0 +1,57 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
+
+/**
+ * The work done with the essif-lab skeleton SAF before any term is read: parsing it, building the
+ * context map of a version that imports from remote scopes, and getting the plan of a SAF that hasn't
+ * changed, which is what every generation after the first does.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SafBenchmark {
+
+  private static final String REMOTE_VERSION = "0x921456";
+
+  private ModelWrangler wrangler;
+  private SAFModel saf;
+
+  @Setup
+  public void setUp() throws IOException {
+    wrangler = new ModelWrangler(new YamlWrangler(), InMemoryConnector.skeleton("skeleton"), 1);
+    saf = wrangler.getSaf(InMemoryConnector.SKELETON_SCOPEDIR, MRGlossaryGenerator.DEFAULT_SAF_FILENAME);
+  }
+
+  @Benchmark
+  public SAFModel parseSaf() {
+    return wrangler.getSaf(InMemoryConnector.SKELETON_SCOPEDIR, MRGlossaryGenerator.DEFAULT_SAF_FILENAME);
+  }
+
+  @Benchmark
+  public Object buildContextMap() {
+    return wrangler.buildContextMap(InMemoryConnector.SKELETON_SCOPEDIR, saf, REMOTE_VERSION);
+  }
+
+  @Benchmark
+  public GenerationPlan cachedPlan() {
+    return wrangler.plan(InMemoryConnector.SKELETON_SCOPEDIR, MRGlossaryGenerator.DEFAULT_SAF_FILENAME);
+  }
+}
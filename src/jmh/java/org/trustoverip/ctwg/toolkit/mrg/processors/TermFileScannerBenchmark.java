@@ -0,0 +1,112 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.TermFileScanner;
+import org.trustoverip.ctwg.toolkit.mrg.processors.SyntheticCorpus.Shape;
+
+/**
+ * Compares {@link TermFileScanner} with the split-based cleaning it replaced, over every term file
+ * of a corpus: the essif-lab skeleton in the test resources, 50,000 synthetic term files or 5,000
+ * with 50 grouptags each and a glossaryText of 20,000 characters.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermFileScannerBenchmark {
+
+  private static final Path SKELETON = Path.of("src/test/resources/essif-lab-skeleton");
+  private static final int SYNTHETIC_FILES = 50_000;
+  private static final int DEEP_FILES = 5_000;
+  private static final long SEED = 42L;
+
+  @Param({"skeleton", "synthetic", "deep"})
+  public String corpus;
+
+  private List<String> termFiles;
+
+  @Setup
+  public void setUp() throws IOException {
+    termFiles =
+        switch (corpus) {
+          case "skeleton" -> skeleton();
+          case "deep" -> new SyntheticCorpus(Shape.of(DEEP_FILES).withGrouptags(1_000, 50).withGlossaryTextLength(20_000), SEED).termFiles();
+          default -> new SyntheticCorpus(Shape.of(SYNTHETIC_FILES), SEED).termFiles();
+        };
+  }
+
+  @Benchmark
+  public void split(Blackhole bh) {
+    for (String content : termFiles) {
+      splitClean(content, bh);
+    }
+  }
+
+  @Benchmark
+  public void scanner(Blackhole bh) {
+    for (String content : termFiles) {
+      bh.consume(TermFileScanner.frontMatter(content));
+      bh.consume(TermFileScanner.bodyHeadings(content));
+    }
+  }
+
+  /*
+   The cleaning done before TermFileScanner, kept here as the baseline
+  */
+  private static void splitClean(String content, Blackhole bh) {
+    StringBuilder cleanYaml = new StringBuilder();
+    String[] parts = content.split("---");
+    String[] restOfFile = parts[2].split("\n");
+    String[] lines = parts[1].split("\n");
+    List<String> headings = new ArrayList<>();
+    for (String line : lines) {
+      if (!line.isEmpty() && !line.startsWith("---") && !line.startsWith("#")) {
+        cleanYaml.append(line).append("\n");
+      } else if (line.startsWith("#")) {
+        headings.add(line);
+      }
+    }
+    for (String line : restOfFile) {
+      if (line.startsWith("#")) {
+        headings.add(line);
+      }
+    }
+    bh.consume(cleanYaml.toString());
+    bh.consume(headings);
+  }
+
+  private static List<String> skeleton() throws IOException {
+    try (Stream<Path> paths = Files.walk(SKELETON)) {
+      List<Path> termFiles =
+          paths.filter(p -> p.toString().endsWith(".md")).sorted().collect(Collectors.toList());
+      List<String> contents = new ArrayList<>(termFiles.size());
+      for (Path termFile : termFiles) {
+        contents.add(Files.readString(termFile));
+      }
+      return contents;
+    }
+  }
+}
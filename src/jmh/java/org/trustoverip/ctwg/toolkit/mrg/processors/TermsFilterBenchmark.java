@@ -0,0 +1,110 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
+
+/**
+ * Selects from 100,000 terms with a scope's add and remove filters, chained with {@code
+ * Predicate::or} and {@code Predicate::and} as before, and compiled into a {@link
+ * CompiledTermsFilter}, and as set operations on a {@link TermIndex} built once in setup. Half the add filters select by grouptag and half by term id, and there are
+ * two remove filters whatever the number of add filters.
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TermsFilterBenchmark {
+
+  private static final int TERMS = 100_000;
+  private static final int GROUPTAGS = 1_000;
+  private static final long SEED = 42L;
+
+  @Param({"10", "100", "500"})
+  public int filters;
+
+  private List<Term> terms;
+  private List<Predicate<Term>> addFilters;
+  private List<Predicate<Term>> removeFilters;
+  private TermIndex index;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(SEED);
+    terms = new ArrayList<>(TERMS);
+    for (int i = 0; i < TERMS; i++) {
+      Term term = new Term();
+      term.setTerm("Term-" + i);
+      term.setGrouptags(
+          String.format("Group-%d, group-%d, group-%d", random.nextInt(GROUPTAGS), random.nextInt(GROUPTAGS), random.nextInt(GROUPTAGS)));
+      terms.add(term);
+    }
+    addFilters = new ArrayList<>(filters);
+    for (int f = 0; f < filters; f++) {
+      addFilters.add(
+          (f % 2 == 0)
+              ? TermsFilter.of(TermsFilterType.tags, "group-" + random.nextInt(GROUPTAGS))
+              : TermsFilter.of(TermsFilterType.terms, "term-" + random.nextInt(TERMS) + ", term-" + random.nextInt(TERMS)));
+    }
+    removeFilters =
+        List.of(
+            TermsFilter.of(TermsFilterType.tags, "group-1, group-2, group-3"),
+            TermsFilter.of(TermsFilterType.tags, "group-4"));
+    Map<String, Term> termsByFilename = new LinkedHashMap<>();
+    for (int i = 0; i < TERMS; i++) {
+      termsByFilename.put("term-" + i + ".md", terms.get(i));
+    }
+    index = new TermIndex(List.of(), termsByFilename);
+  }
+
+  @Benchmark
+  public int chained() {
+    Predicate<Term> selected =
+        addFilters.stream()
+            .reduce(Predicate::or)
+            .get()
+            .and(removeFilters.stream().reduce(Predicate::and).get().negate());
+    return select(selected);
+  }
+
+  @Benchmark
+  public int compiled() {
+    return select(CompiledTermsFilter.compile(addFilters, removeFilters));
+  }
+
+  @Benchmark
+  public int indexed() {
+    return index.select(addFilters, removeFilters).cardinality();
+  }
+
+  private int select(Predicate<Term> selected) {
+    int count = 0;
+    for (Term term : terms) {
+      if (selected.test(term)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,96 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.TermFileScanner;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * Terms parsed per second: the per-call {@code ObjectMapper.readValue} used before against the
+ * pre-built Jackson reader in {@link YamlWrangler}, from Strings and from bytes, with and without
+ * Blackbird, and against the {@link FlatTermParser} fast path (which Blackbird doesn't affect).
+ *
+ * @author sih
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(YamlWranglerBenchmark.TERMS)
+public class YamlWranglerBenchmark {
+
+  static final int TERMS = 1_000;
+  private static final long SEED = 42L;
+
+  @Param({"false", "true"})
+  public boolean blackbird;
+
+  private ObjectMapper mapper;
+  private YamlWrangler wrangler;
+  private List<String> termYaml;
+  private List<byte[]> termBytes;
+
+  @Setup
+  public void setUp() {
+    mapper = new ObjectMapper(new YAMLFactory().enable(Feature.INDENT_ARRAYS));
+    mapper.findAndRegisterModules();
+    wrangler = new YamlWrangler(blackbird, false);
+    termYaml =
+        new SyntheticCorpus(SyntheticCorpus.Shape.of(TERMS), SEED).termFiles().stream()
+            .map(content -> TermFileScanner.frontMatter(content).yaml())
+            .collect(Collectors.toList());
+    termBytes =
+        termYaml.stream()
+            .map(yaml -> yaml.getBytes(StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public void mapperReadValue(Blackhole bh) throws JsonProcessingException {
+    for (String yaml : termYaml) {
+      bh.consume(mapper.readValue(yaml, Term.class));
+    }
+  }
+
+  @Benchmark
+  public void readerFromString(Blackhole bh) {
+    for (String yaml : termYaml) {
+      bh.consume(wrangler.parseTerm(yaml));
+    }
+  }
+
+  @Benchmark
+  public void readerFromBytes(Blackhole bh) {
+    for (byte[] bytes : termBytes) {
+      bh.consume(wrangler.parseTerm(bytes));
+    }
+  }
+
+  @Benchmark
+  public void flatTermParser(Blackhole bh) {
+    for (String yaml : termYaml) {
+      bh.consume(FlatTermParser.parse(yaml));
+    }
+  }
+}
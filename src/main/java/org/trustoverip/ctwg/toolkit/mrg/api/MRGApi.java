@@ -2,6 +2,7 @@ package org.trustoverip.ctwg.toolkit.mrg.api;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.stereotype.Controller;
@@ -10,9 +11,11 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
 import org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException;
 import org.trustoverip.ctwg.toolkit.mrg.processors.MRGlossaryGenerator;
+import org.trustoverip.ctwg.toolkit.mrg.processors.MRGlossaryGenerator.MRGWriter;
 import org.trustoverip.ctwg.toolkit.mrg.processors.YamlWrangler;
 
 /**
@@ -23,6 +26,8 @@ import org.trustoverip.ctwg.toolkit.mrg.processors.YamlWrangler;
 @Slf4j
 public class MRGApi {
 
+  private static final MediaType APPLICATION_YAML = new MediaType("application", "yaml");
+
   private final MRGlossaryGenerator generator;
   private final YamlWrangler yamlWrangler;
 
@@ -44,6 +49,24 @@ public class MRGApi {
     return "mrg-result";
   }
 
+  /*
+   The MRG as YAML, with the entries of each scope sent as soon as that scope is done rather than
+   once the whole glossary has been built. The SAF and version are resolved before the response is
+   committed, so those errors still get an error status; only the entries are written afterwards
+  */
+  @RequestMapping(value = "/ctwg/mrg/yaml", method = RequestMethod.POST)
+  ResponseEntity<StreamingResponseBody> streamMrg(WebRequest webRequest) {
+    MRGParams params =
+        new MRGParams(
+            webRequest.getParameter("scopedir"),
+            webRequest.getParameter("safFilename"),
+            webRequest.getParameter("versionTag"));
+    MRGWriter writer =
+        generator.prepare(params.scopedir(), params.safFilename(), params.versionTag());
+    StreamingResponseBody body = writer::writeTo;
+    return ResponseEntity.ok().contentType(APPLICATION_YAML).body(body);
+  }
+
   @ExceptionHandler
   public ResponseEntity<String> handleException(Exception e) {
     String errorMessage;
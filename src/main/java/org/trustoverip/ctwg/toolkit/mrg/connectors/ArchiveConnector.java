@@ -0,0 +1,292 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+/**
+ * Serves content from a snapshot of a whole repository. The first lookup for an owner/repo downloads
+ * the archive of its default branch in a single request and every later lookup for that repo is
+ * answered from memory until the snapshot is older than the configured time-to-live. Only the
+ * default branch is ever snapshotted, so a scope on any other branch can't be read this way.
+ *
+ * <p>Snapshots are held up to a total number of bytes, dropping the least recently used repos
+ * first, and expired ones are dropped as soon as any lookup is made.
+ *
+ * @author sih
+ */
+@Slf4j
+public class ArchiveConnector implements MRGConnector {
+
+  // how long a downloaded snapshot is used before the archive is fetched again
+  private static final String GH_ARCHIVE_TTL = "gh_archive_ttl_seconds";
+  private static final int DEFAULT_ARCHIVE_TTL_SECONDS = 300;
+  // most bytes of file content held in snapshots at once
+  private static final String GH_ARCHIVE_CACHE_SIZE_MB = "gh_archive_cache_size_mb";
+  private static final int DEFAULT_ARCHIVE_CACHE_SIZE_MB = 256;
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+  private static final String BLOB = "blob";
+
+  private final GitHub gh;
+  private final Duration ttl;
+  private final long maxBytes;
+  // by owner/repo in access order, a download in progress is a future that isn't done yet
+  private final Map<String, CompletableFuture<Snapshot>> snapshots =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long bytesHeld;
+
+  public ArchiveConnector() {
+    this(GithubConnector.connect());
+  }
+
+  ArchiveConnector(GitHub gh) {
+    this(
+        gh,
+        Duration.ofSeconds(
+            NumberUtils.toInt(System.getenv(GH_ARCHIVE_TTL), DEFAULT_ARCHIVE_TTL_SECONDS)));
+  }
+
+  ArchiveConnector(GitHub gh, Duration ttl) {
+    this(
+        gh,
+        ttl,
+        NumberUtils.toLong(System.getenv(GH_ARCHIVE_CACHE_SIZE_MB), DEFAULT_ARCHIVE_CACHE_SIZE_MB)
+            * BYTES_PER_MB);
+  }
+
+  ArchiveConnector(GitHub gh, Duration ttl, long maxBytes) {
+    this.gh = gh;
+    this.ttl = ttl;
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public String getContent(String repository, String contentName) {
+    Snapshot snapshot = snapshot(repository);
+    byte[] content = (null == snapshot) ? null : snapshot.files().get(normalise(contentName));
+    if (null == content) {
+      log.warn("Could not find GitHub resource {} in repo {}", contentName, repository);
+      return null;
+    }
+    return new String(content, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public InputStream getContentAsStream(String repository, String contentName) {
+    Snapshot snapshot = snapshot(repository);
+    byte[] content = (null == snapshot) ? null : snapshot.files().get(normalise(contentName));
+    if (null == content) {
+      log.warn("Could not find GitHub resource {} in repo {}", contentName, repository);
+      return null;
+    }
+    return new ByteArrayInputStream(content);
+  }
+
+  @Override
+  public List<FileContent> getDirectoryContent(String repository, String directoryName) {
+    return getDirectoryContent(repository, directoryName, filename -> true);
+  }
+
+  @Override
+  public List<FileContent> getDirectoryContent(
+      String repository, String directoryName, Predicate<String> filenameFilter) {
+    return directoryContent(
+        repository, directoryName, filenameFilter, bytes -> new String(bytes, StandardCharsets.UTF_8));
+  }
+
+  /*
+   The snapshot already holds every file so the saving here is not building a string of the whole
+   file only to throw most of it away
+  */
+  @Override
+  public List<FileContent> getDirectoryFrontMatter(
+      String repository,
+      String directoryName,
+      Predicate<String> filenameFilter,
+      boolean withHeadings) {
+    return directoryContent(
+        repository,
+        directoryName,
+        filenameFilter,
+        bytes -> {
+          try {
+            return TermFileScanner.read(new ByteArrayInputStream(bytes), withHeadings);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen reading from memory
+          }
+        });
+  }
+
+  private List<FileContent> directoryContent(
+      String repository,
+      String directoryName,
+      Predicate<String> filenameFilter,
+      Function<byte[], String> reader) {
+    List<FileContent> contents = new ArrayList<>();
+    Snapshot snapshot = snapshot(repository);
+    if (null == snapshot) {
+      return contents;
+    }
+    String dir = normalise(directoryName);
+    String prefix = dir.isEmpty() ? dir : dir + "/";
+    boolean exists = false;
+    for (Map.Entry<String, byte[]> file : snapshot.files().tailMap(prefix).entrySet()) {
+      String path = file.getKey();
+      if (!path.startsWith(prefix)) {
+        break;
+      }
+      exists = true;
+      String filename = path.substring(prefix.length());
+      // only direct children, like the contents API
+      if (filename.indexOf('/') == -1 && filenameFilter.test(filename)) {
+        contents.add(
+            new FileContent(
+                filename,
+                reader.apply(file.getValue()),
+                String.join("/", snapshot.htmlUrl(), BLOB, snapshot.ref(), path),
+                new ArrayList<>()));
+      }
+    }
+    if (!exists) {
+      log.warn("There's no such directory {} in the repo {}", directoryName, repository);
+    }
+    return contents;
+  }
+
+  /*
+   The first lookup for a repo puts a future in the map and downloads outside the lock, so lookups
+   for the same repo wait for that one download and lookups for other repos aren't held up by it
+  */
+  private Snapshot snapshot(String repository) {
+    CompletableFuture<Snapshot> pending;
+    boolean download = false;
+    synchronized (this) {
+      removeExpired();
+      pending = snapshots.get(repository);
+      if (null == pending) {
+        pending = new CompletableFuture<>();
+        snapshots.put(repository, pending);
+        download = true;
+      }
+    }
+    if (download) {
+      Snapshot snapshot;
+      try {
+        snapshot = download(repository);
+      } catch (Throwable e) {
+        // an Error too, or lookups waiting on the download would never return
+        synchronized (this) {
+          snapshots.remove(repository, pending); // not kept, so the next lookup tries again
+        }
+        pending.completeExceptionally(e);
+        throw e;
+      }
+      hold(repository, pending, snapshot);
+      return snapshot;
+    }
+    try {
+      return pending.join();
+    } catch (CompletionException e) {
+      throw (e.getCause() instanceof RuntimeException re) ? re : e;
+    }
+  }
+
+  /*
+   Completed under the lock so a snapshot is never seen as done before its bytes are counted. A
+   missing repo, or a snapshot bigger than the whole allowance, is handed out but not kept
+  */
+  private synchronized void hold(
+      String repository, CompletableFuture<Snapshot> pending, Snapshot snapshot) {
+    pending.complete(snapshot);
+    if (null == snapshot || snapshot.bytes() > maxBytes) {
+      snapshots.remove(repository, pending);
+      return;
+    }
+    bytesHeld += snapshot.bytes();
+    Iterator<CompletableFuture<Snapshot>> lru = snapshots.values().iterator();
+    while (bytesHeld > maxBytes && lru.hasNext()) {
+      CompletableFuture<Snapshot> next = lru.next();
+      if (next.isDone() && next != pending) {
+        bytesHeld -= next.join().bytes();
+        lru.remove();
+      }
+    }
+  }
+
+  private void removeExpired() {
+    Instant now = Instant.now();
+    Iterator<CompletableFuture<Snapshot>> held = snapshots.values().iterator();
+    while (held.hasNext()) {
+      CompletableFuture<Snapshot> next = held.next();
+      if (next.isDone() && !next.join().fetchedAt().plus(ttl).isAfter(now)) {
+        bytesHeld -= next.join().bytes();
+        held.remove();
+      }
+    }
+  }
+
+  private Snapshot download(String ownerRepo) {
+    try {
+      GHRepository repo = gh.getRepository(ownerRepo);
+      String ref = repo.getDefaultBranch();
+      log.info("Downloading archive of {} at {}", ownerRepo, ref);
+      SortedMap<String, byte[]> files = repo.readZip(ArchiveConnector::unzip, ref);
+      log.info("... indexed {} files from the archive of {}", files.size(), ownerRepo);
+      long bytes = files.values().stream().mapToLong(content -> content.length).sum();
+      return new Snapshot(repo.getHtmlUrl().toString(), ref, files, bytes, Instant.now());
+    } catch (GHFileNotFoundException e) {
+      log.warn("Could not find GitHub repo {}", ownerRepo);
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /*
+   GitHub archives put everything under a single <owner>-<repo>-<sha>/ directory which we strip so
+   entries are keyed by their path in the repo
+  */
+  private static SortedMap<String, byte[]> unzip(InputStream is) throws IOException {
+    SortedMap<String, byte[]> files = new TreeMap<>();
+    try (ZipInputStream zis = new ZipInputStream(is)) {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        int rootEnd = entry.getName().indexOf('/');
+        if (!entry.isDirectory() && rootEnd != -1) {
+          files.put(entry.getName().substring(rootEnd + 1), zis.readAllBytes());
+        }
+      }
+    }
+    return files;
+  }
+
+  private static String normalise(String path) {
+    return StringUtils.strip(StringUtils.defaultString(path), "/");
+  }
+
+  private record Snapshot(
+      String htmlUrl, String ref, SortedMap<String, byte[]> files, long bytes, Instant fetchedAt) {}
+}
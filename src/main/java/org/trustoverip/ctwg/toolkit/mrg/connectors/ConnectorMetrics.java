@@ -0,0 +1,151 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records every request that goes over the network to GitHub: how long it took, by the kind of
+ * request and the status it came back with, how many bytes the response said it had and how many
+ * were not found. It is added as a network interceptor so responses served from the HTTP cache
+ * aren't counted, while a 304 revalidation is.
+ *
+ * <p>The response cache, when there is one, has its lookups and size published as well, see {@link
+ * #httpCache(MeterRegistry, Cache)}.
+ *
+ * @author sih
+ */
+final class ConnectorMetrics implements Interceptor {
+
+  static final String REQUESTS = "mrg.connector.requests";
+  static final String RESPONSE_BYTES = "mrg.connector.response.bytes";
+  static final String NOT_FOUND = "mrg.connector.not.found";
+  static final String CACHE_REQUESTS = "mrg.connector.cache.requests";
+  static final String CACHE_BYTES = "mrg.connector.cache.bytes";
+
+  // the API client talks to the REST API, the raw client downloads file content
+  static final String API = "api";
+  static final String RAW = "raw";
+
+  private static final int HTTP_NOT_FOUND = 404;
+  private static final String IO_ERROR = "IO_ERROR";
+
+  private final MeterRegistry registry;
+  private final String client;
+
+  ConnectorMetrics(String client) {
+    this(Metrics.globalRegistry, client);
+  }
+
+  ConnectorMetrics(MeterRegistry registry, String client) {
+    this.registry = registry;
+    this.client = client;
+  }
+
+  /*
+   A hit is a response taken from the cache, with or without revalidating it with a 304
+  */
+  static void httpCache(MeterRegistry registry, Cache cache) {
+    FunctionCounter.builder(CACHE_REQUESTS, cache, Cache::hitCount)
+        .description("Requests to GitHub looked up in the response cache, found or not")
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder(CACHE_REQUESTS, cache, c -> c.requestCount() - c.hitCount())
+        .description("Requests to GitHub looked up in the response cache, found or not")
+        .tag("result", "miss")
+        .register(registry);
+    Gauge.builder(CACHE_BYTES, cache, ConnectorMetrics::cacheSize)
+        .description("Bytes of GitHub responses held in the response cache")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  private static double cacheSize(Cache cache) {
+    try {
+      return cache.size();
+    } catch (IOException e) {
+      return Double.NaN;
+    }
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    String operation = operation(request);
+    long start = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(request);
+    } catch (IOException e) {
+      requests(operation, IO_ERROR).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      throw e;
+    }
+    // time to the response headers; the body is read by the caller, often only part of it
+    requests(operation, String.valueOf(response.code()))
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    long contentLength = (null == response.body()) ? -1 : response.body().contentLength();
+    if (contentLength >= 0) {
+      DistributionSummary.builder(RESPONSE_BYTES)
+          .description("Size of the responses from GitHub, when it is known up front")
+          .baseUnit("bytes")
+          .tag("client", client)
+          .tag("operation", operation)
+          .register(registry)
+          .record(contentLength);
+    }
+    if (response.code() == HTTP_NOT_FOUND) {
+      Counter.builder(NOT_FOUND)
+          .description("Requests to GitHub for something that isn't there")
+          .tag("client", client)
+          .tag("operation", operation)
+          .register(registry)
+          .increment();
+    }
+    return response;
+  }
+
+  private Timer requests(String operation, String status) {
+    return Timer.builder(REQUESTS)
+        .description("Requests sent to GitHub, timed to the response headers")
+        .tag("client", client)
+        .tag("operation", operation)
+        .tag("status", status)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  /*
+   The kind of API call from its path, so the tags stay few whatever the owner, repo and file
+  */
+  private String operation(Request request) {
+    if (RAW.equals(client)) {
+      return "download";
+    }
+    List<String> segments = request.url().pathSegments();
+    int repos = segments.indexOf("repos");
+    if (repos < 0 || segments.size() < repos + 3) {
+      return "other";
+    }
+    if (segments.size() == repos + 3) {
+      return "repository";
+    }
+    String resource = segments.get(repos + 3);
+    return switch (resource) {
+      case "contents" -> "contents";
+      case "git" -> (segments.size() > repos + 4) ? "git." + segments.get(repos + 4) : "git";
+      case "zipball", "tarball" -> "archive";
+      default -> "other";
+    };
+  }
+}
@@ -0,0 +1,102 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands out one long-lived connector per kind of source, so every generation in the JVM shares the
+ * same authenticated GitHub client, response cache and repository handles rather than logging on
+ * and looking up repositories again.
+ *
+ * <p>A scopedir is routed by its form: a URL goes to the remote source (the GitHub contents API, or
+ * archive snapshots when those are preferred) and anything else is read from the local file system.
+ *
+ * <p>Closing the registry closes the connectors it created, not one it was given.
+ *
+ * @author sih
+ */
+@Slf4j
+@Service
+public class ConnectorRegistry implements Closeable {
+
+  private static final String HTTPS = "https://";
+  private static final String HTTP = "http://";
+
+  public enum Source {
+    LOCAL,
+    GITHUB,
+    ARCHIVE
+  }
+
+  private final Map<Source, MRGConnector> connectors = new EnumMap<>(Source.class);
+  private final EnumSet<Source> created = EnumSet.noneOf(Source.class);
+  @Getter private final Source remoteSource;
+
+  /*
+   Spring already holds a GithubConnector so make sure that is the one that's shared
+  */
+  @Autowired
+  public ConnectorRegistry(GithubConnector github) {
+    this(Source.GITHUB);
+    connectors.put(Source.GITHUB, github);
+  }
+
+  /**
+   * @param remoteSource where scopedirs that are URLs are read from, either {@link Source#GITHUB} or
+   *     {@link Source#ARCHIVE}
+   */
+  public ConnectorRegistry(Source remoteSource) {
+    if (Source.LOCAL == remoteSource) {
+      throw new IllegalArgumentException("Remote scopedirs can't be read from the local file system");
+    }
+    this.remoteSource = remoteSource;
+  }
+
+  /**
+   * @param scopedir a local path or the URL of a scope in GitHub
+   * @return the shared connector that reads from that scopedir
+   */
+  public MRGConnector forScopedir(String scopedir) {
+    return get(isRemote(scopedir) ? remoteSource : Source.LOCAL);
+  }
+
+  /**
+   * @return the shared connector for the source, created the first time it is asked for
+   */
+  public synchronized MRGConnector get(Source source) {
+    MRGConnector connector = connectors.get(source);
+    if (null == connector) {
+      log.info("Creating the shared {} connector", source);
+      connector =
+          switch (source) {
+            case LOCAL -> new LocalFSConnector();
+            case GITHUB -> new GithubConnector();
+            case ARCHIVE -> new ArchiveConnector(((GithubConnector) get(Source.GITHUB)).client());
+          };
+      connectors.put(source, connector);
+      created.add(source);
+    }
+    return connector;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (Source source : created) {
+      if (connectors.get(source) instanceof Closeable closeable) {
+        closeable.close();
+      }
+    }
+  }
+
+  static boolean isRemote(String scopedir) {
+    return StringUtils.startsWithAny(StringUtils.trim(scopedir), HTTPS, HTTP);
+  }
+}
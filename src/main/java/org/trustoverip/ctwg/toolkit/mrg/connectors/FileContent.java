@@ -1,10 +1,41 @@
 package org.trustoverip.ctwg.toolkit.mrg.connectors;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
 
 /**
  * @author sih
+ * @param sha the Git blob SHA of the content when the connector knows it, otherwise null
  */
-public record FileContent(String filename, String content, String htmlLink, List<String> headings) {
+public record FileContent(
+    String filename, String content, String htmlLink, List<String> headings, String sha) {
 
+  public FileContent(String filename, String content, String htmlLink, List<String> headings) {
+    this(filename, content, htmlLink, headings, null);
+  }
+
+  /**
+   * @return the sha from the connector, or else the Git blob SHA of the content
+   */
+  public String contentSha() {
+    return (null == sha) ? blobSha(content) : sha;
+  }
+
+  /**
+   * The SHA Git and GitHub give a file with this content, the same as {@code git hash-object}, so it
+   * can be compared with the SHAs GitHub lists without reading the file.
+   */
+  public static String blobSha(String content) {
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(("blob " + bytes.length + "\0").getBytes(StandardCharsets.US_ASCII));
+      return HexFormat.of().formatHex(sha1.digest(bytes));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 }
@@ -2,51 +2,186 @@ package org.trustoverip.ctwg.toolkit.mrg.connectors;
 
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.GITHUB_LOGON_ERROR;
 
+import io.micrometer.core.instrument.Metrics;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GHFileNotFoundException;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.extras.okhttp3.OkHttpGitHubConnector;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException;
 
 /**
+ * Reads scopes through the GitHub contents API, downloading term files from their raw URLs. Files of
+ * a curated dir are fetched on a pool of daemon threads, which {@link #close()} shuts down; Spring
+ * closes the connector it holds when the context is closed.
+ *
  * @author sih
  */
 @Slf4j
 @Service
 @Primary
-public class GithubConnector implements MRGConnector {
+public class GithubConnector implements MRGConnector, Closeable {
   private static final String GH_NAME = "gh_user";
 
   private static final String GH_TOKEN = "gh_token";
+
+  // number of files of a curated dir that are fetched at the same time (1 = one after another)
+  private static final String GH_FETCH_CONCURRENCY = "gh_fetch_concurrency";
+  // upper bound on simultaneous requests to any single host, whatever the overall concurrency
+  private static final String GH_FETCH_PER_HOST = "gh_fetch_per_host";
+  private static final int DEFAULT_FETCH_CONCURRENCY = 8;
+  private static final int DEFAULT_FETCH_PER_HOST = 8;
+  // on-disk cache of GitHub responses, revalidated with ETags (a 304 doesn't count against the rate limit);
+  // off unless a directory is given, as it holds whatever the token can read, private repos included
+  private static final String GH_CACHE_DIR = "gh_cache_dir";
+  private static final String GH_CACHE_SIZE_MB = "gh_cache_size_mb";
+  private static final int DEFAULT_CACHE_SIZE_MB = 100;
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+  // bytes asked for up front when only the front matter of a term file is needed (0 = whole file)
+  private static final String GH_FRONT_MATTER_RANGE_BYTES = "gh_front_matter_range_bytes";
+  private static final int DEFAULT_FRONT_MATTER_RANGE_BYTES = 4096;
+  private static final int PARTIAL_CONTENT = 206;
+  private static final int RANGE_NOT_SATISFIABLE = 416;
   private final GitHub gh;
+  private final int fetchConcurrency;
+  private final int fetchPerHost;
+  private final ExecutorService fetchExecutor;
+  private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+  // repository handles are looked up once per owner/repo rather than once per file
+  private final Map<String, GHRepository> repositories = new ConcurrentHashMap<>();
+  // raw file content is read directly so that it can be read a range at a time
+  private final OkHttpClient rawClient;
+  private final int frontMatterRangeBytes;
+  private final String token;
 
 
   public GithubConnector() {
+    this(
+        connect(),
+        SharedHttpCache.INSTANCE,
+        NumberUtils.toInt(System.getenv(GH_FETCH_CONCURRENCY), DEFAULT_FETCH_CONCURRENCY),
+        NumberUtils.toInt(System.getenv(GH_FETCH_PER_HOST), DEFAULT_FETCH_PER_HOST));
+  }
+
+  GithubConnector(GitHub gh, int fetchConcurrency, int fetchPerHost) {
+    this(gh, null, fetchConcurrency, fetchPerHost);
+  }
+
+  GithubConnector(GitHub gh, Cache httpCache, int fetchConcurrency, int fetchPerHost) {
+    this(
+        gh,
+        httpCache,
+        fetchConcurrency,
+        fetchPerHost,
+        NumberUtils.toInt(
+            System.getenv(GH_FRONT_MATTER_RANGE_BYTES), DEFAULT_FRONT_MATTER_RANGE_BYTES));
+  }
+
+  GithubConnector(
+      GitHub gh, Cache httpCache, int fetchConcurrency, int fetchPerHost, int frontMatterRangeBytes) {
+    this.gh = gh;
+    this.fetchConcurrency = Math.max(1, fetchConcurrency);
+    this.fetchPerHost = Math.max(1, fetchPerHost);
+    this.fetchExecutor =
+        (this.fetchConcurrency == 1)
+            ? null
+            : Executors.newFixedThreadPool(
+                this.fetchConcurrency,
+                new BasicThreadFactory.Builder().namingPattern("gh-fetch-%d").daemon(true).build());
+    this.rawClient = httpClient(httpCache, ConnectorMetrics.RAW);
+    this.frontMatterRangeBytes = Math.max(0, frontMatterRangeBytes);
+    this.token = System.getenv(GH_TOKEN);
+  }
+
+  static GitHub connect() {
     String user = null;
     try {
       user = System.getenv(GH_NAME);
       log.info("Connecting to Github as {}", user);
-      gh = GitHub.connect(user, System.getenv(GH_TOKEN));
+      GitHubBuilder builder = new GitHubBuilder().withOAuthToken(System.getenv(GH_TOKEN), user);
+      return withHttpCache(builder, SharedHttpCache.INSTANCE).build();
     } catch (IOException ioe) {
       throw new MRGGenerationException(String.format(GITHUB_LOGON_ERROR, user));
     }
   }
 
+  /*
+   The authenticated client, so other connectors can share it rather than logging on again
+  */
+  GitHub client() {
+    return gh;
+  }
+
+  /*
+   The API is always called through OkHttp, with or without a cache, so its requests are measured
+  */
+  static GitHubBuilder withHttpCache(GitHubBuilder builder, Cache httpCache) {
+    return builder.withConnector(new OkHttpGitHubConnector(httpClient(httpCache, ConnectorMetrics.API)));
+  }
+
+  private static OkHttpClient httpClient(Cache httpCache, String client) {
+    return new OkHttpClient.Builder()
+        .cache(httpCache)
+        .addInterceptor(GithubRequestEvent.RECORDER)
+        .addNetworkInterceptor(new ConnectorMetrics(client))
+        .build();
+  }
+
+  /**
+   * Stops the threads that fetch files concurrently once the fetches already started are done. The
+   * connector can't read directories concurrently after it is closed.
+   */
+  @Override
+  public void close() {
+    if (fetchExecutor != null) {
+      fetchExecutor.shutdown();
+    }
+  }
+
   @Override
   public String getContent(final String repository, final String contentName) {
     GHRepository repo;
     try {
-      repo = gh.getRepository(repository);
+      repo = repository(repository);
       GHContent content = repo.getFileContent(contentName);
       if (null == content) {
         return null;
@@ -61,25 +196,91 @@ public class GithubConnector implements MRGConnector {
   }
 
 
+  /*
+   The contents API inlines the whole file, base64 encoded, when asked for it, so the download URL is
+   taken from the listing of its directory and the raw file is streamed from there instead
+  */
+  @Override
+  public InputStream getContentAsStream(final String repository, final String contentName) {
+    try {
+      GHContent content = listedFile(repository, contentName);
+      if (null == content) {
+        log.warn("Could not find GitHub resource {} in repo {}", contentName, repository);
+        return null;
+      }
+      String downloadUrl = content.getDownloadUrl();
+      if (null == downloadUrl) {
+        return new ByteArrayInputStream(contentAsString(content).getBytes(StandardCharsets.UTF_8));
+      }
+      Response response = rawClient.newCall(rawRequest(downloadUrl).build()).execute();
+      if (!response.isSuccessful()) {
+        response.close();
+        throw new IOException(String.format("HTTP %d reading %s", response.code(), downloadUrl));
+      }
+      return response.body().byteStream(); // closing it releases the connection
+    } catch (GHFileNotFoundException e) {
+      log.warn("Could not find GitHub resource {} in repo {}", contentName, repository);
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public List<FileContent> getDirectoryContent(
       final String repository, final String directoryName) {
+    return getDirectoryContent(repository, directoryName, filename -> true);
+  }
+
+  /*
+   The listing already carries every filename, so files that aren't wanted are never downloaded
+  */
+  @Override
+  public List<FileContent> getDirectoryContent(
+      final String repository, final String directoryName, final Predicate<String> filenameFilter) {
+    // the content of each file is read from the contents API
+    return directoryContent(
+        repository, directoryName, filenameFilter, gc -> hostOf(gc.getUrl()), this::toFileContent);
+  }
+
+  /*
+   Term files are read from their raw download URL. Without headings only the first range of bytes
+   is asked for and the rest is only fetched if the front matter runs past it
+  */
+  @Override
+  public List<FileContent> getDirectoryFrontMatter(
+      final String repository,
+      final String directoryName,
+      final Predicate<String> filenameFilter,
+      final boolean withHeadings) {
+    return directoryContent(
+        repository,
+        directoryName,
+        filenameFilter,
+        GithubConnector::downloadHost,
+        gc -> toFrontMatter(gc, withHeadings));
+  }
+
+  private List<FileContent> directoryContent(
+      final String repository,
+      final String directoryName,
+      final Predicate<String> filenameFilter,
+      final Function<GHContent, String> host,
+      final Function<GHContent, FileContent> reader) {
     List<FileContent> contents = new ArrayList<>();
     try {
-      GHRepository repo = gh.getRepository(repository);
+      GHRepository repo = repository(repository);
       List<GHContent> gitContents = repo.getDirectoryContent(directoryName);
       if (gitContents != null && !gitContents.isEmpty()) {
-        contents =
+        List<GHContent> files =
             gitContents.stream()
                 .filter(GHContent::isFile)
-                .map(
-                    gc ->
-                        new FileContent(
-                            gc.getName(),
-                            this.contentAsString(gc),
-                            gc.getHtmlUrl(),
-                            new ArrayList<>()))
+                .filter(gc -> filenameFilter.test(gc.getName()))
                 .collect(Collectors.toList());
+        contents =
+            (null == fetchExecutor)
+                ? fetchSequentially(files, reader)
+                : fetchConcurrently(files, host, reader);
       }
     } catch (GHFileNotFoundException e) {
       log.warn("There's no such directory {} in the repo {}", directoryName, repository);
@@ -89,6 +290,291 @@ public class GithubConnector implements MRGConnector {
     return contents;
   }
 
+  /*
+   Git blob SHAs, read from the listing of the file's directory as getDirectoryFingerprints does, so
+   the file itself isn't downloaded
+  */
+  @Override
+  public String getFingerprint(final String repository, final String contentName) {
+    try {
+      GHContent content = listedFile(repository, contentName);
+      return (null == content) ? null : content.getSha();
+    } catch (GHFileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Map<String, String> getDirectoryFingerprints(
+      final String repository, final String directoryName) {
+    Map<String, String> fingerprints = new LinkedHashMap<>();
+    try {
+      List<GHContent> gitContents = repository(repository).getDirectoryContent(directoryName);
+      if (gitContents != null) {
+        for (GHContent gc : gitContents) {
+          if (gc.isFile()) {
+            fingerprints.put(gc.getName(), gc.getSha());
+          }
+        }
+      }
+    } catch (GHFileNotFoundException e) {
+      log.warn("There's no such directory {} in the repo {}", directoryName, repository);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return fingerprints;
+  }
+
+  /*
+   A file's entry in the listing of its directory, which has its SHA and download URL but not its
+   content. The listing is revalidated through the response cache like any other.
+  */
+  private GHContent listedFile(String repository, String contentName) throws IOException {
+    int slash = contentName.lastIndexOf('/');
+    String directoryName = (slash < 0) ? "" : contentName.substring(0, slash);
+    String filename = contentName.substring(slash + 1);
+    List<GHContent> gitContents = repository(repository).getDirectoryContent(directoryName);
+    if (gitContents != null) {
+      for (GHContent gc : gitContents) {
+        if (gc.isFile() && filename.equals(gc.getName())) {
+          return gc;
+        }
+      }
+    }
+    return null;
+  }
+
+  private GHRepository repository(String ownerRepo) throws IOException {
+    try {
+      return repositories.computeIfAbsent(
+          ownerRepo,
+          r -> {
+            try {
+              return gh.getRepository(r);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause(); // not cached, so a missing repo is looked up again next time
+    }
+  }
+
+  private List<FileContent> fetchSequentially(
+      List<GHContent> files, Function<GHContent, FileContent> reader) {
+    return files.stream().map(reader).collect(Collectors.toList());
+  }
+
+  /*
+   Files are fetched on the shared executor but collected in listing order so callers see the same
+   ordering as the sequential fetch. Each fetch holds a permit for the host its bytes come from.
+  */
+  private List<FileContent> fetchConcurrently(
+      List<GHContent> files,
+      Function<GHContent, String> host,
+      Function<GHContent, FileContent> reader) {
+    log.debug("Fetching {} files with concurrency {}", files.size(), fetchConcurrency);
+    List<Future<FileContent>> pending = new ArrayList<>(files.size());
+    for (GHContent gc : files) {
+      pending.add(fetchExecutor.submit(() -> withHostPermit(host.apply(gc), gc, reader)));
+    }
+    List<FileContent> contents = new ArrayList<>(files.size());
+    try {
+      for (Future<FileContent> f : pending) {
+        contents.add(f.get());
+      }
+    } catch (InterruptedException e) {
+      pending.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new MRGGenerationException("Interrupted whilst fetching directory content", e);
+    } catch (ExecutionException e) {
+      pending.forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    return contents;
+  }
+
+  private FileContent withHostPermit(
+      String host, GHContent gc, Function<GHContent, FileContent> reader)
+      throws InterruptedException {
+    Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(fetchPerHost));
+    permits.acquire();
+    try {
+      return reader.apply(gc);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private FileContent toFileContent(GHContent gc) {
+    return new FileContent(
+        gc.getName(), this.contentAsString(gc), gc.getHtmlUrl(), new ArrayList<>(), gc.getSha());
+  }
+
+  private FileContent toFrontMatter(GHContent gc, boolean withHeadings) {
+    String content;
+    String downloadUrl;
+    try {
+      downloadUrl = gc.getDownloadUrl(); // already in the listing so no extra request
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (null == downloadUrl) {
+      content = TermFileScanner.read(this.contentAsString(gc), withHeadings);
+    } else {
+      content = readFrontMatter(downloadUrl, withHeadings);
+    }
+    return new FileContent(gc.getName(), content, gc.getHtmlUrl(), new ArrayList<>(), gc.getSha());
+  }
+
+  private String readFrontMatter(String downloadUrl, boolean withHeadings) {
+    boolean ranged = !withHeadings && frontMatterRangeBytes > 0;
+    Request.Builder request = rawRequest(downloadUrl);
+    if (ranged) {
+      request.header("Range", "bytes=0-" + (frontMatterRangeBytes - 1));
+    }
+    Response response = null;
+    try {
+      response = rawClient.newCall(request.build()).execute();
+      if (!response.isSuccessful()) {
+        throw new IOException(String.format("HTTP %d reading %s", response.code(), downloadUrl));
+      }
+      InputStream in = response.body().byteStream();
+      if (response.code() == PARTIAL_CONTENT) {
+        // the rest of the file is only asked for if the reader gets to the end of the first range
+        in = new SequenceInputStream(in, new Remainder(downloadUrl));
+      }
+      try (InputStream content = in) {
+        return TermFileScanner.read(content, withHeadings);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (response != null) {
+        response.close();
+      }
+    }
+  }
+
+  private Request.Builder rawRequest(String downloadUrl) {
+    Request.Builder request = new Request.Builder().url(downloadUrl);
+    if (StringUtils.isNotEmpty(token)) {
+      request.header("Authorization", "token " + token);
+    }
+    return request;
+  }
+
+  /*
+   The bytes of a file after the first range, not requested until something reads them
+  */
+  private final class Remainder extends InputStream {
+    private final String downloadUrl;
+    private Response response;
+    private InputStream in;
+
+    private Remainder(String downloadUrl) {
+      this.downloadUrl = downloadUrl;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return in().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return in().read(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      if (response != null) {
+        response.close();
+      }
+    }
+
+    private InputStream in() throws IOException {
+      if (null == in) {
+        Request request =
+            rawRequest(downloadUrl).header("Range", "bytes=" + frontMatterRangeBytes + "-").build();
+        response = rawClient.newCall(request).execute();
+        if (response.code() == RANGE_NOT_SATISFIABLE) {
+          in = InputStream.nullInputStream(); // the first range was the whole file
+        } else if (!response.isSuccessful()) {
+          throw new IOException(String.format("HTTP %d reading %s", response.code(), downloadUrl));
+        } else {
+          in = response.body().byteStream();
+          if (response.code() != PARTIAL_CONTENT) {
+            in.skipNBytes(frontMatterRangeBytes); // range ignored so skip what has already been read
+          }
+        }
+      }
+      return in;
+    }
+  }
+
+  /*
+   Where a term file is downloaded from, raw.githubusercontent.com rather than the API host, unless
+   the listing has no download URL and its content is read through the API
+  */
+  private static String downloadHost(GHContent gc) {
+    try {
+      String downloadUrl = gc.getDownloadUrl();
+      return hostOf((null == downloadUrl) ? gc.getUrl() : downloadUrl);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static String hostOf(String url) {
+    String host = (null == url) ? null : URI.create(url).getHost();
+    return (null == host) ? "" : host;
+  }
+
+  /*
+   A disk cache directory can only be used by one Cache instance, so every connector shares this one
+  */
+  private static final class SharedHttpCache {
+    private static final Cache INSTANCE = create();
+
+    private static Cache create() {
+      String dir = System.getenv(GH_CACHE_DIR);
+      long maxSize =
+          NumberUtils.toLong(System.getenv(GH_CACHE_SIZE_MB), DEFAULT_CACHE_SIZE_MB) * BYTES_PER_MB;
+      if (StringUtils.isEmpty(dir) || maxSize <= 0) {
+        log.info("GitHub response cache is switched off");
+        return null;
+      }
+      File cacheDir = new File(dir);
+      try {
+        ownerOnly(cacheDir.toPath());
+      } catch (IOException | UnsupportedOperationException e) {
+        log.warn("GitHub response cache is switched off, {} can't be kept private", cacheDir, e);
+        return null;
+      }
+      log.info("Caching GitHub responses in {} (max {} bytes)", cacheDir.getAbsolutePath(), maxSize);
+      Cache cache = new Cache(cacheDir, maxSize);
+      ConnectorMetrics.httpCache(Metrics.globalRegistry, cache);
+      return cache;
+    }
+
+    /*
+     The responses are those of an authenticated user, so no one else may read or list them
+    */
+    private static void ownerOnly(Path dir) throws IOException {
+      Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+      if (Files.notExists(dir)) {
+        Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(ownerOnly));
+      }
+      Files.setPosixFilePermissions(dir, ownerOnly);
+    }
+  }
+
   private String contentAsString(GHContent content) {
     try (InputStream is = content.read()) {
       return new String(is.readAllBytes(), StandardCharsets.US_ASCII);
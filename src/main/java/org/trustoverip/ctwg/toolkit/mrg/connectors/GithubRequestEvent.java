@@ -0,0 +1,80 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import java.io.IOException;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * A Java Flight Recorder event for every request the GitHub connectors make, whether it was answered
+ * from the HTTP cache, revalidated with a conditional request or downloaded. Recorded by {@link
+ * #RECORDER}, which sits in front of the cache so that cache hits are seen too.
+ *
+ * @author sih
+ */
+@Name("org.trustoverip.mrg.GithubRequest")
+@Label("GitHub Request")
+@Description("A request made to GitHub by a connector")
+@Category({"MRG Generator", "Connector"})
+@StackTrace(false)
+final class GithubRequestEvent extends Event {
+
+  static final Interceptor RECORDER = GithubRequestEvent::record;
+
+  @Label("Method")
+  String method;
+
+  @Label("Host")
+  String host;
+
+  @Label("Path")
+  String path;
+
+  @Label("Status")
+  int status;
+
+  @Label("Size")
+  @Description("The Content-Length of the response, -1 when it isn't known up front")
+  @DataAmount
+  long bytes;
+
+  @Label("Cache Hit")
+  @Description("Answered from the HTTP cache without going to GitHub")
+  boolean cacheHit;
+
+  @Label("Revalidated")
+  @Description("Answered from the HTTP cache after GitHub said it hadn't changed")
+  boolean revalidated;
+
+  private static Response record(Interceptor.Chain chain) throws IOException {
+    GithubRequestEvent event = new GithubRequestEvent();
+    Request request = chain.request();
+    event.begin();
+    Response response = null;
+    try {
+      response = chain.proceed(request);
+      return response;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.method = request.method();
+        event.host = request.url().host();
+        event.path = request.url().encodedPath();
+        if (response != null) {
+          event.status = response.code();
+          event.bytes = (null == response.body()) ? -1 : response.body().contentLength();
+          event.cacheHit = response.cacheResponse() != null && response.networkResponse() == null;
+          event.revalidated = response.cacheResponse() != null && response.networkResponse() != null;
+        }
+        event.commit();
+      }
+    }
+  }
+}
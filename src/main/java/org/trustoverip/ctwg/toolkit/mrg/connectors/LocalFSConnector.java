@@ -3,11 +3,16 @@ package org.trustoverip.ctwg.toolkit.mrg.connectors;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.COULD_NOT_READ_LOCAL_CONTENT;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException;
@@ -32,6 +37,17 @@ public class LocalFSConnector implements MRGConnector {
     return content;
   }
 
+  @Override
+  public InputStream getContentAsStream(String repository, String contentName) {
+    Path contentPath = Paths.get(contentName);
+    try {
+      return Files.newInputStream(contentPath);
+    } catch (IOException e) {
+      throw new MRGGenerationException(
+          String.format(COULD_NOT_READ_LOCAL_CONTENT, contentPath.toUri()));
+    }
+  }
+
   private String getContent(Path contentPath) throws MRGGenerationException {
     String content;
     try {
@@ -45,12 +61,19 @@ public class LocalFSConnector implements MRGConnector {
 
   @Override
   public List<FileContent> getDirectoryContent(String repository, String directoryName) {
+    return getDirectoryContent(repository, directoryName, filename -> true);
+  }
+
+  @Override
+  public List<FileContent> getDirectoryContent(
+      String repository, String directoryName, Predicate<String> filenameFilter) {
     List<FileContent> contents;
     Path directoryPath = Paths.get(directoryName);
     try (Stream<Path> contentsAsPath = Files.walk(directoryPath)) {
       contents =
           contentsAsPath
               .filter(p -> !Files.isDirectory(p))
+              .filter(p -> filenameFilter.test(p.getFileName().toString()))
               .map(
                   path ->
                       new FileContent(
@@ -65,4 +88,85 @@ public class LocalFSConnector implements MRGConnector {
     }
     return contents;
   }
+
+  /*
+   Each file is streamed and closed as soon as its front matter (or, with headings, its last line)
+   has been read
+  */
+  @Override
+  public List<FileContent> getDirectoryFrontMatter(
+      String repository,
+      String directoryName,
+      Predicate<String> filenameFilter,
+      boolean withHeadings) {
+    List<FileContent> contents;
+    Path directoryPath = Paths.get(directoryName);
+    try (Stream<Path> contentsAsPath = Files.walk(directoryPath)) {
+      contents =
+          contentsAsPath
+              .filter(p -> !Files.isDirectory(p))
+              .filter(p -> filenameFilter.test(p.getFileName().toString()))
+              .map(
+                  path ->
+                      new FileContent(
+                          path.getFileName().toString(),
+                          this.getFrontMatter(path, withHeadings),
+                          path.toUri().toString(),
+                          new ArrayList<>()))
+              .collect(Collectors.toList());
+    } catch (Exception e) {
+      throw new MRGGenerationException(
+          String.format(COULD_NOT_READ_LOCAL_CONTENT, directoryPath.toUri()));
+    }
+    return contents;
+  }
+
+  /*
+   Size and last modified time, so nothing has to be read to tell that a file has changed
+  */
+  @Override
+  public String getFingerprint(String repository, String contentName) {
+    Path contentPath = Paths.get(contentName);
+    if (!Files.isRegularFile(contentPath)) {
+      return null;
+    }
+    try {
+      return fingerprint(contentPath);
+    } catch (IOException e) {
+      throw new MRGGenerationException(
+          String.format(COULD_NOT_READ_LOCAL_CONTENT, contentPath.toUri()));
+    }
+  }
+
+  @Override
+  public Map<String, String> getDirectoryFingerprints(String repository, String directoryName) {
+    Map<String, String> fingerprints = new LinkedHashMap<>();
+    Path directoryPath = Paths.get(directoryName);
+    try (Stream<Path> contentsAsPath = Files.walk(directoryPath)) {
+      for (Path path : (Iterable<Path>) contentsAsPath::iterator) {
+        if (!Files.isDirectory(path)) {
+          fingerprints.put(path.getFileName().toString(), fingerprint(path));
+        }
+      }
+    } catch (Exception e) {
+      throw new MRGGenerationException(
+          String.format(COULD_NOT_READ_LOCAL_CONTENT, directoryPath.toUri()));
+    }
+    return fingerprints;
+  }
+
+  private static String fingerprint(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    return attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+  }
+
+  private String getFrontMatter(Path contentPath, boolean withHeadings)
+      throws MRGGenerationException {
+    try (InputStream in = Files.newInputStream(contentPath)) {
+      return TermFileScanner.read(in, withHeadings);
+    } catch (IOException e) {
+      throw new MRGGenerationException(
+          String.format(COULD_NOT_READ_LOCAL_CONTENT, contentPath.toUri()));
+    }
+  }
 }
@@ -1,6 +1,13 @@
 package org.trustoverip.ctwg.toolkit.mrg.connectors;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.springframework.stereotype.Service;
 
 /**
@@ -11,5 +18,83 @@ public interface MRGConnector {
 
   String getContent(String repository, String contentName);
 
+  /**
+   * Like {@link #getContent(String, String)} but the content is read as it is needed rather than
+   * held as a String, for files too large to want in memory in one piece. The caller closes the
+   * stream.
+   *
+   * @return the content as UTF-8 bytes, or null when there is no such content
+   */
+  default InputStream getContentAsStream(String repository, String contentName) {
+    String content = getContent(repository, contentName);
+    return (null == content)
+        ? null
+        : new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
   List<FileContent> getDirectoryContent(String repository, String directoryName);
+
+  /**
+   * Like {@link #getDirectoryContent(String, String)} but only returns the files whose name is
+   * accepted by the filter. Connectors that can list a directory without reading it should apply
+   * the filter before any content is fetched.
+   *
+   * @param filenameFilter tested against the name of each file, without its directory
+   */
+  default List<FileContent> getDirectoryContent(
+      String repository, String directoryName, Predicate<String> filenameFilter) {
+    return getDirectoryContent(repository, directoryName).stream()
+        .filter(fc -> filenameFilter.test(fc.filename()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Like {@link #getDirectoryContent(String, String, Predicate)} but the content of each file is cut
+   * down to its front matter, plus the heading lines of the rest of the file when {@code
+   * withHeadings} is set. Connectors that can stop reading part way through a file should do so once
+   * they have what is needed.
+   *
+   * @param withHeadings true to keep the {@code #} headings that follow the front matter
+   */
+  default List<FileContent> getDirectoryFrontMatter(
+      String repository,
+      String directoryName,
+      Predicate<String> filenameFilter,
+      boolean withHeadings) {
+    return getDirectoryContent(repository, directoryName, filenameFilter).stream()
+        .map(
+            fc ->
+                new FileContent(
+                    fc.filename(),
+                    TermFileScanner.read(fc.content(), withHeadings),
+                    fc.htmlLink(),
+                    fc.headings(),
+                    fc.sha()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * A value that changes whenever the content does, for telling whether a file has changed since an
+   * earlier generation. Connectors that can tell without reading the content should do so.
+   *
+   * @return the fingerprint, or null when there is no such content
+   */
+  default String getFingerprint(String repository, String contentName) {
+    String content = getContent(repository, contentName);
+    return (null == content) ? null : FileContent.blobSha(content);
+  }
+
+  /**
+   * The fingerprint of every file in the directory, see {@link #getFingerprint(String, String)}.
+   *
+   * @return fingerprints keyed by filename, in the same order as {@link
+   *     #getDirectoryContent(String, String)} lists the files
+   */
+  default Map<String, String> getDirectoryFingerprints(String repository, String directoryName) {
+    Map<String, String> fingerprints = new LinkedHashMap<>();
+    for (FileContent fc : getDirectoryContent(repository, directoryName)) {
+      fingerprints.put(fc.filename(), fc.contentSha());
+    }
+    return fingerprints;
+  }
 }
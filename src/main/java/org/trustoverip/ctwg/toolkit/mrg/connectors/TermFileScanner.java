@@ -0,0 +1,187 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pulls what the MRG needs out of a term file in a single pass over its lines: the front matter and
+ * the markdown headings. Lines are located without splitting the file and only the parts that are
+ * kept are copied, so no array of lines or parts is built.
+ *
+ * <p>The front matter runs from the first line starting with {@code ---} to the next such line.
+ * Anything after that is body, where further {@code ---} rules are ordinary lines. Lines may end in
+ * {@code \n} or {@code \r\n} and carriage returns are never kept.
+ *
+ * <p>Connectors cut a term file down with {@link #read(InputStream, boolean)} while reading it, and
+ * the generator then splits what they kept with {@link #frontMatter(String)} and {@link
+ * #bodyHeadings(String)}.
+ *
+ * @author sih
+ */
+public final class TermFileScanner {
+
+  private static final String FRONT_MATTER_MARKER = "---";
+  private static final char MARKDOWN_HEADING = '#';
+  private static final int BUFFER_SIZE = 8192;
+
+  private TermFileScanner() {}
+
+  /**
+   * @param yaml the front matter without its markers, headings or blank lines
+   * @param headings the heading lines found in the front matter
+   */
+  public record FrontMatter(String yaml, List<String> headings) {}
+
+  /**
+   * @return the front matter of the term file; reading stops at the line that closes it
+   */
+  public static FrontMatter frontMatter(String content) {
+    StringBuilder yaml = new StringBuilder(content.length() / 2);
+    List<String> headings = new ArrayList<>();
+    int markers = 0;
+    int lineStart = 0;
+    int length = content.length();
+    while (lineStart < length && markers < 2) {
+      int newline = content.indexOf('\n', lineStart);
+      int end = (newline == -1) ? length : newline;
+      int lineEnd = lineEnd(content, lineStart, end);
+      if (content.startsWith(FRONT_MATTER_MARKER, lineStart)) {
+        markers++;
+      } else if (markers == 1 && lineEnd > lineStart) {
+        if (content.charAt(lineStart) == MARKDOWN_HEADING) {
+          headings.add(content.substring(lineStart, lineEnd));
+        } else {
+          yaml.append(content, lineStart, lineEnd).append('\n');
+        }
+      }
+      lineStart = end + 1;
+    }
+    return new FrontMatter(yaml.toString(), headings);
+  }
+
+  /**
+   * @return the heading lines that follow the front matter, empty when there is no front matter
+   */
+  public static List<String> bodyHeadings(String content) {
+    List<String> headings = new ArrayList<>();
+    int markers = 0;
+    int lineStart = 0;
+    int length = content.length();
+    while (lineStart < length) {
+      int newline = content.indexOf('\n', lineStart);
+      int end = (newline == -1) ? length : newline;
+      if (markers < 2) {
+        if (content.startsWith(FRONT_MATTER_MARKER, lineStart)) {
+          markers++;
+        }
+      } else if (content.charAt(lineStart) == MARKDOWN_HEADING) {
+        headings.add(content.substring(lineStart, lineEnd(content, lineStart, end)));
+      }
+      lineStart = end + 1;
+    }
+    return headings;
+  }
+
+  /**
+   * Cuts a term file down to the lines up to the one that closes the front matter and, when asked
+   * for, the heading lines of the rest of the file. What is returned keeps the shape of a term file
+   * so it is handled exactly like the full content.
+   *
+   * <p>The file is scanned as bytes, which is safe as the markers and newlines are ASCII, and only
+   * the kept lines are decoded. Without headings reading stops once the front matter is closed, so
+   * the body of a long term page is never read.
+   *
+   * @param in the term file, which is read but not closed
+   * @param withHeadings true to carry on past the front matter collecting headings
+   */
+  static String read(InputStream in, boolean withHeadings) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    byte[] kept = new byte[BUFFER_SIZE];
+    int keptLength = 0;
+    int markers = 0;
+    // bytes of the current line read so far, and whether its first three were all dashes
+    int column = 0;
+    boolean dashes = false;
+    boolean keepLine = true;
+    int read;
+    reading:
+    while ((read = in.read(buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        byte b = buffer[i];
+        if (column == 0) {
+          keepLine = markers < 2 || b == MARKDOWN_HEADING;
+          dashes = true;
+        }
+        if (column < FRONT_MATTER_MARKER.length()) {
+          dashes &= b == '-';
+        }
+        if (b == '\n') {
+          if (keepLine) {
+            if (keptLength > 0 && kept[keptLength - 1] == '\r') {
+              keptLength--;
+            }
+            kept = ensureCapacity(kept, keptLength + 1);
+            kept[keptLength++] = '\n';
+          }
+          boolean marker = dashes && column >= FRONT_MATTER_MARKER.length();
+          column = 0;
+          if (marker && markers < 2 && ++markers == 2 && !withHeadings) {
+            break reading;
+          }
+          continue;
+        }
+        if (keepLine) {
+          kept = ensureCapacity(kept, keptLength + 1);
+          kept[keptLength++] = b;
+        }
+        column++;
+      }
+    }
+    if (column > 0 && keepLine) {
+      // the last line had no newline of its own
+      if (kept[keptLength - 1] == '\r') {
+        keptLength--;
+      }
+      kept = ensureCapacity(kept, keptLength + 1);
+      kept[keptLength++] = '\n';
+    }
+    return new String(kept, 0, keptLength, StandardCharsets.UTF_8);
+  }
+
+  /*
+   For content that is already in memory, where the saving is the size of the string that is kept
+  */
+  static String read(String content, boolean withHeadings) {
+    StringBuilder kept = new StringBuilder();
+    int markers = 0;
+    int lineStart = 0;
+    int length = content.length();
+    while (lineStart < length) {
+      int newline = content.indexOf('\n', lineStart);
+      int end = (newline == -1) ? length : newline;
+      if (markers < 2 || content.charAt(lineStart) == MARKDOWN_HEADING) {
+        kept.append(content, lineStart, lineEnd(content, lineStart, end)).append('\n');
+      }
+      if (markers < 2
+          && content.startsWith(FRONT_MATTER_MARKER, lineStart)
+          && ++markers == 2
+          && !withHeadings) {
+        break;
+      }
+      lineStart = end + 1;
+    }
+    return kept.toString();
+  }
+
+  private static int lineEnd(String content, int lineStart, int end) {
+    return (end > lineStart && content.charAt(end - 1) == '\r') ? end - 1 : end;
+  }
+
+  private static byte[] ensureCapacity(byte[] bytes, int capacity) {
+    return (capacity <= bytes.length) ? bytes : Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+  }
+}
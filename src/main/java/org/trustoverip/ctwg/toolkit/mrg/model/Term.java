@@ -1,6 +1,7 @@
 package org.trustoverip.ctwg.toolkit.mrg.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.ArrayList;
 import java.util.List;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
@@ -48,6 +49,44 @@ public class Term implements Comparable<Term> {
   @Getter(AccessLevel.PROTECTED)
   private List<String> headings;
 
+  public Term() {}
+
+  public Term(Term other) {
+    this.term = other.term;
+    this.id = other.id;
+    this.scope = other.scope;
+    this.scopetag = other.scopetag;
+    this.locator = other.locator;
+    this.isa = other.isa;
+    this.termType = other.termType;
+    this.status = other.status;
+    this.synonyms = other.synonyms;
+    this.synonymOf = other.synonymOf;
+    this.grouptags = other.grouptags;
+    this.glossaryText = other.glossaryText;
+    this.hoverText = other.hoverText;
+    this.formPhrases = other.formPhrases;
+    this.created = other.created;
+    this.updated = other.updated;
+    this.vsntag = other.vsntag;
+    this.commit = other.commit;
+    this.contributors = other.contributors;
+    this.sidebar_label = other.sidebar_label;
+    this.displayed_sidebar = other.displayed_sidebar;
+    this.attribution = other.attribution;
+    this.originalLicense = other.originalLicense;
+    this.filename = other.filename;
+    this.navurl = other.navurl;
+    this.headings = (null == other.headings) ? null : new ArrayList<>(other.headings);
+  }
+
+  public void addHeadings(List<String> moreHeadings) {
+    if (null == headings) {
+      headings = new ArrayList<>();
+    }
+    headings.addAll(moreHeadings);
+  }
+
   @Override
   public int compareTo(Term other) {
     return this.term.compareTo(other.term);
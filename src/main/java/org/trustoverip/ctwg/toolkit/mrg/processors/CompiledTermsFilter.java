@@ -0,0 +1,148 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
+
+/**
+ * The term selection criteria of one scope compiled into a single predicate. A term is selected when
+ * any add filter matches it and not every remove filter does, the same as chaining the add filters
+ * with {@link Predicate#or} and the negated remove filters with {@link Predicate#and}.
+ *
+ * <p>The values of all the add filters are merged into one set of term ids and one set of grouptags,
+ * and each remove filter keeps its values in a set of its own. A term's normalised id and grouptags
+ * are worked out once per test however many filters there are. Predicates that aren't {@link
+ * TermsFilter}s are still honoured, they are just tested as they are.
+ *
+ * @author sih
+ */
+final class CompiledTermsFilter implements Predicate<Term> {
+
+  private final boolean addsAll;
+  private final Set<String> addTermIds = new HashSet<>();
+  private final Set<String> addGrouptags = new HashSet<>();
+  private final List<Predicate<Term>> otherAdds = new ArrayList<>();
+  private final List<RemoveClause> removes = new ArrayList<>();
+
+  private CompiledTermsFilter(List<Predicate<Term>> addFilters, List<Predicate<Term>> removeFilters) {
+    boolean all = null == addFilters || addFilters.isEmpty();
+    if (addFilters != null) {
+      for (Predicate<Term> filter : addFilters) {
+        if (filter instanceof TermsFilter tf) {
+          switch (tf.getFilterType()) {
+            case all -> all = true;
+            case terms -> addTermIds.addAll(tf.getNormalisedValues());
+            case tags -> addGrouptags.addAll(tf.getNormalisedValues());
+          }
+        } else {
+          otherAdds.add(filter);
+        }
+      }
+    }
+    addsAll = all;
+    if (removeFilters != null) {
+      for (Predicate<Term> filter : removeFilters) {
+        removes.add(
+            (filter instanceof TermsFilter tf)
+                ? new RemoveClause(tf.getFilterType(), new HashSet<>(tf.getNormalisedValues()), null)
+                : new RemoveClause(null, Set.of(), filter));
+      }
+    }
+  }
+
+  /**
+   * @param addFilters a term must match at least one of these, all terms match when there are none
+   * @param removeFilters a term that matches every one of these is not selected, none are removed
+   *     when there are none
+   */
+  static CompiledTermsFilter compile(
+      List<Predicate<Term>> addFilters, List<Predicate<Term>> removeFilters) {
+    return new CompiledTermsFilter(addFilters, removeFilters);
+  }
+
+  @Override
+  public boolean test(Term term) {
+    NormalisedTerm normalised = new NormalisedTerm(term);
+    return isAdded(normalised) && !isRemoved(normalised);
+  }
+
+  private boolean isAdded(NormalisedTerm term) {
+    if (addsAll
+        || (!addTermIds.isEmpty() && addTermIds.contains(term.id()))
+        || (!addGrouptags.isEmpty() && containsAny(addGrouptags, term.grouptags()))) {
+      return true;
+    }
+    for (Predicate<Term> other : otherAdds) {
+      if (other.test(term.term)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isRemoved(NormalisedTerm term) {
+    if (removes.isEmpty()) {
+      return false;
+    }
+    for (RemoveClause clause : removes) {
+      if (!clause.test(term)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean containsAny(Set<String> values, List<String> candidates) {
+    for (String candidate : candidates) {
+      if (values.contains(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private record RemoveClause(TermsFilterType type, Set<String> values, Predicate<Term> other) {
+
+    boolean test(NormalisedTerm term) {
+      if (other != null) {
+        return other.test(term.term);
+      }
+      return switch (type) {
+        case all -> true;
+        case terms -> values.contains(term.id());
+        case tags -> containsAny(values, term.grouptags());
+      };
+    }
+  }
+
+  /*
+   A term with its id and grouptags normalised the first time they are needed
+  */
+  private static final class NormalisedTerm {
+    private final Term term;
+    private String id;
+    private List<String> grouptags;
+
+    private NormalisedTerm(Term term) {
+      this.term = term;
+    }
+
+    private String id() {
+      if (null == id) {
+        id = ModelWrangler.normaliseTermId(term.getTerm());
+      }
+      return id;
+    }
+
+    private List<String> grouptags() {
+      if (null == grouptags) {
+        grouptags = TermsFilter.splitAndNormalise(term.getGrouptags());
+      }
+      return grouptags;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.DUPLICATE_ENTRY;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+
+/**
+ * Merges the entries of each scope into the MRG as the scopes finish, checking every entry against
+ * an index of the (scopetag, term) pairs already merged. The index holds only the keys so the
+ * entries themselves can be written out as soon as they are merged.
+ *
+ * <p>A term that appears twice in the same scope is a duplicate and is handled according to the
+ * {@link DuplicatePolicy}. The same term in different scopes is not, as each scope defines its own.
+ * A merger belongs to one generation and is not thread-safe.
+ *
+ * @author sih
+ */
+@Slf4j
+final class EntryMerger {
+
+  enum DuplicatePolicy {
+    /** keep every entry and log a warning for each duplicate */
+    KEEP_ALL,
+    /** keep the entry merged first, so local terms win over remote ones and earlier scopes over later */
+    KEEP_FIRST,
+    /** fail the generation */
+    FAIL;
+
+    static DuplicatePolicy of(String name) {
+      return EnumUtils.getEnumIgnoreCase(DuplicatePolicy.class, StringUtils.trim(name), KEEP_ALL);
+    }
+  }
+
+  private final DuplicatePolicy policy;
+  private final Set<Key> merged = new HashSet<>();
+  private int duplicates;
+
+  EntryMerger(DuplicatePolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * @param scopetag the scope the entries come from
+   * @param entries the entries of that scope
+   * @return the entries to add to the MRG, which is the batch itself when nothing is dropped
+   */
+  List<MRGEntry> merge(String scopetag, List<MRGEntry> entries) throws MRGGenerationException {
+    List<MRGEntry> kept = null;
+    for (int i = 0; i < entries.size(); i++) {
+      MRGEntry entry = entries.get(i);
+      if (merged.add(new Key(scopetag, termOf(entry)))) {
+        if (kept != null) {
+          kept.add(entry);
+        }
+        continue;
+      }
+      duplicates++;
+      switch (policy) {
+        case FAIL -> throw new MRGGenerationException(String.format(DUPLICATE_ENTRY, termOf(entry), scopetag));
+        case KEEP_FIRST -> {
+          log.warn("Dropping duplicate of term {} in scope {}", termOf(entry), scopetag);
+          if (null == kept) {
+            // only copied once something is dropped
+            kept = new ArrayList<>(entries.size() - 1);
+            kept.addAll(entries.subList(0, i));
+          }
+        }
+        default -> log.warn("Term {} appears more than once in scope {}", termOf(entry), scopetag);
+      }
+    }
+    return (null == kept) ? entries : kept;
+  }
+
+  int duplicates() {
+    return duplicates;
+  }
+
+  private static String termOf(MRGEntry entry) {
+    return ModelWrangler.normaliseTermId(StringUtils.defaultIfEmpty(entry.getTerm(), entry.getId()));
+  }
+
+  private record Key(String scopetag, String term) {}
+}
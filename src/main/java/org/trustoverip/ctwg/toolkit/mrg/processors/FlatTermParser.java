@@ -0,0 +1,163 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * A fast path for the front matter of term files, which is almost always a flat map of known keys
+ * to strings. It handles {@code key: value} lines where the value is plain (with or without a
+ * trailing comment) or quoted with nothing inside that needs unescaping, including double-quoted
+ * values folded over several lines, and sets the term's fields directly.
+ *
+ * <p>Anything else (an unknown or repeated key, a flow or block value, an anchor, an escape
+ * sequence) means the front matter is handed back unparsed so that Jackson can deal with it as
+ * before. Numbers, dates and booleans need no special handling as Jackson keeps their text when
+ * binding them to the term's string fields.
+ *
+ * @author sih
+ */
+final class FlatTermParser {
+
+  private static final Map<String, BiConsumer<Term, String>> SETTERS = new HashMap<>();
+  // plain scalars starting with these are YAML syntax rather than text
+  private static final String INDICATORS = "-?:,[]{}#&*!|>'\"%@`";
+
+  static {
+    SETTERS.put("term", Term::setTerm);
+    SETTERS.put("id", Term::setId);
+    SETTERS.put("scope", Term::setScope);
+    SETTERS.put("scopetag", Term::setScopetag);
+    SETTERS.put("locator", Term::setLocator);
+    SETTERS.put("isa", Term::setIsa);
+    SETTERS.put("termType", Term::setTermType);
+    SETTERS.put("status", Term::setStatus);
+    SETTERS.put("synonyms", Term::setSynonyms);
+    SETTERS.put("synonymOf", Term::setSynonymOf);
+    SETTERS.put("grouptags", Term::setGrouptags);
+    SETTERS.put("glossaryText", Term::setGlossaryText);
+    SETTERS.put("hoverText", Term::setHoverText);
+    SETTERS.put("formPhrases", Term::setFormPhrases);
+    SETTERS.put("created", Term::setCreated);
+    SETTERS.put("updated", Term::setUpdated);
+    SETTERS.put("vsntag", Term::setVsntag);
+    SETTERS.put("commit", Term::setCommit);
+    SETTERS.put("contributors", Term::setContributors);
+    SETTERS.put("sidebar_label", Term::setSidebar_label);
+    SETTERS.put("displayed_sidebar", Term::setDisplayed_sidebar);
+    SETTERS.put("attribution", Term::setAttribution);
+    SETTERS.put("originalLicense", Term::setOriginalLicense);
+  }
+
+  private FlatTermParser() {}
+
+  /**
+   * @param yaml the front matter of a term file, without its markers
+   * @return the term, or null when the front matter is outside what this parser understands
+   */
+  static Term parse(String yaml) {
+    if (null == yaml) {
+      return null;
+    }
+    Term term = new Term();
+    Set<String> seen = new HashSet<>();
+    int lineStart = 0;
+    int length = yaml.length();
+    while (lineStart < length) {
+      int lineEnd = lineEnd(yaml, lineStart);
+      if (lineEnd == lineStart) {
+        lineStart++;
+        continue;
+      }
+      int colon = yaml.indexOf(':', lineStart);
+      if (colon == -1 || colon >= lineEnd) {
+        return null;
+      }
+      String key = yaml.substring(lineStart, colon);
+      BiConsumer<Term, String> setter = SETTERS.get(key);
+      if (null == setter || !seen.add(key) || (colon + 1 < lineEnd && yaml.charAt(colon + 1) != ' ')) {
+        return null; // unknown or repeated key, or "key:value" which isn't a mapping
+      }
+      String value = yaml.substring(colon + 1, lineEnd).strip();
+      if (isOpenQuote(value)) {
+        // a double-quoted value folded over several lines, each line break becomes a space
+        StringBuilder folded = new StringBuilder(value);
+        while (isOpenQuote(folded) && lineEnd < length) {
+          lineStart = lineEnd + 1;
+          lineEnd = lineEnd(yaml, lineStart);
+          String continuation = yaml.substring(lineStart, lineEnd).strip();
+          if (continuation.isEmpty()) {
+            return null;
+          }
+          folded.append(' ').append(continuation);
+        }
+        value = folded.toString();
+      } else if (!value.startsWith("'") && value.contains(" #")) {
+        value = value.substring(0, value.indexOf(" #")).strip(); // trailing comment
+      }
+      if (!isFlat(value)) {
+        return null;
+      }
+      setter.accept(term, valueOf(value));
+      lineStart = lineEnd + 1;
+    }
+    return seen.isEmpty() ? null : term;
+  }
+
+  private static int lineEnd(String yaml, int lineStart) {
+    int newline = yaml.indexOf('\n', lineStart);
+    return (newline == -1) ? yaml.length() : newline;
+  }
+
+  private static boolean isOpenQuote(CharSequence value) {
+    int length = value.length();
+    return length > 0 && value.charAt(0) == '"' && (length == 1 || value.charAt(length - 1) != '"');
+  }
+
+  private static boolean isFlat(String value) {
+    if (value.isEmpty() || isNull(value)) {
+      return true;
+    }
+    if (value.indexOf('\t') != -1) {
+      return false;
+    }
+    return switch (value.charAt(0)) {
+      case '"' -> isSimpleQuoted(value, '"', "\\\"");
+      case '\'' -> isSimpleQuoted(value, '\'', "'");
+      default -> INDICATORS.indexOf(value.charAt(0)) == -1
+          && !value.contains(": ")
+          && !value.contains(" #")
+          && !value.endsWith(":");
+    };
+  }
+
+  private static String valueOf(String value) {
+    if (value.isEmpty() || isNull(value)) {
+      return null;
+    }
+    char first = value.charAt(0);
+    return (first == '"' || first == '\'') ? value.substring(1, value.length() - 1) : value;
+  }
+
+  /*
+   Only quoted values that need no unescaping, i.e. none of the special characters inside the quotes
+  */
+  private static boolean isSimpleQuoted(String value, char quote, String special) {
+    if (value.length() < 2 || value.charAt(value.length() - 1) != quote) {
+      return false;
+    }
+    for (int i = 1; i < value.length() - 1; i++) {
+      if (special.indexOf(value.charAt(i)) != -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isNull(String value) {
+    return value.equals("~") || value.equals("null") || value.equals("Null") || value.equals("NULL");
+  }
+}
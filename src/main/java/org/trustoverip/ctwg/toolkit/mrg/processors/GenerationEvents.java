@@ -0,0 +1,193 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.MRGConnector;
+
+/**
+ * Java Flight Recorder events for a generation, so a recording shows which scope, remote scope,
+ * connector call or term file the time went on rather than only Jackson and HTTP frames. They are
+ * enabled with the thresholds in {@code jfr/mrg.jfc}.
+ *
+ * <p>Events are cheap when nothing is recording them, and the fields of the per-file events are only
+ * filled in once {@link Event#shouldCommit()} says the event will be kept. None of them take a stack
+ * trace.
+ *
+ * @author sih
+ */
+final class GenerationEvents {
+
+  static final String CATEGORY = "MRG Generator";
+
+  private GenerationEvents() {}
+
+  @Name("org.trustoverip.mrg.Generation")
+  @Label("MRG Generation")
+  @Description("Generating an MRG, from reading the SAF to writing the last entry")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class Generation extends Event {
+    @Label("Scopedir")
+    String scopedir;
+
+    @Label("Version Tag")
+    String versionTag;
+
+    @Label("Output")
+    @Description("model, file or stream")
+    String output;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Outcome")
+    String outcome;
+  }
+
+  @Name("org.trustoverip.mrg.RemoteScope")
+  @Label("Remote Scope")
+  @Description("Resolving the entries imported from a remote scope")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class RemoteScope extends Event {
+    @Label("Scopetag")
+    String scopetag;
+
+    @Label("Scopedir")
+    String scopedir;
+
+    @Label("Version Tag")
+    String versionTag;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Outcome")
+    String outcome;
+  }
+
+  @Name("org.trustoverip.mrg.ConnectorCall")
+  @Label("Connector Call")
+  @Description("A call to the connector a scope is read through")
+  @Category({CATEGORY, "Connector"})
+  @StackTrace(false)
+  static final class ConnectorCall extends Event {
+    @Label("Connector")
+    String connector;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Path")
+    String path;
+
+    @Label("Files")
+    int files;
+
+    @Label("Size")
+    @Description("Content read, counting each character as a byte")
+    @DataAmount
+    long bytes;
+
+    static ConnectorCall start(MRGConnector connector, String operation, String repository, String path) {
+      ConnectorCall event = new ConnectorCall();
+      event.connector = connector.getClass().getSimpleName();
+      event.operation = operation;
+      event.repository = repository;
+      event.path = path;
+      event.begin();
+      return event;
+    }
+
+    void done(int files, long bytes) {
+      end();
+      if (shouldCommit()) {
+        this.files = files;
+        this.bytes = bytes;
+        commit();
+      }
+    }
+
+    void done(List<FileContent> contents) {
+      end();
+      if (shouldCommit()) {
+        files = contents.size();
+        for (FileContent fileContent : contents) {
+          bytes += (null == fileContent.content()) ? 0 : fileContent.content().length();
+        }
+        commit();
+      }
+    }
+
+    /*
+     A stream is read after the call returns, so the event lasts until the stream is closed
+    */
+    InputStream doneOnClose(InputStream in) {
+      return new FilterInputStream(in) {
+        private long read;
+
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b != -1) {
+            read++;
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int n = super.read(b, off, len);
+          if (n > 0) {
+            read += n;
+          }
+          return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            done(1, read);
+          }
+        }
+      };
+    }
+  }
+
+  @Name("org.trustoverip.mrg.TermParse")
+  @Label("Term Parse")
+  @Description("Turning a term file into a term, from the term cache when its content is unchanged")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  static final class TermParse extends Event {
+    @Label("Filename")
+    String filename;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Cached")
+    @Description("Taken from the term cache rather than parsed")
+    boolean cached = true;
+
+    @Label("Skipped")
+    @Description("The file couldn't be parsed and was left out")
+    boolean skipped;
+  }
+}
@@ -0,0 +1,209 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Timers and counters for each stage of a generation, registered with Micrometer's global registry
+ * so they are recorded whether the generator runs from the command line or in the web app, where
+ * Spring Boot adds its own registry to the global one and publishes them through the actuator.
+ *
+ * <p>The stage timers are summed over a whole generation where a stage runs once, and recorded per
+ * term file for the ones that run once a file, so {@code local.parse} has the count of term files
+ * parsed as well as the time spent parsing them.
+ *
+ * <p>The term cache meters add up every term cache registered with {@link #termCache(TermCache)},
+ * as each model wrangler, including the ones reading remote scopes, has a cache of its own.
+ *
+ * @author sih
+ */
+final class GenerationMetrics {
+
+  static final String GENERATION = "mrg.generation";
+  static final String STAGE = "mrg.generation.stage";
+  static final String REMOTE_SCOPE = "mrg.generation.remote.scope";
+  static final String REMOTE_TIMEOUTS = "mrg.generation.remote.timeouts";
+  static final String TERM_FILES = "mrg.generation.term.files";
+  static final String ENTRIES = "mrg.generation.entries";
+  static final String TERM_CACHE_REQUESTS = "mrg.term.cache.requests";
+  static final String TERM_CACHE_ENTRIES = "mrg.term.cache.entries";
+  static final String TERM_CACHE_BYTES = "mrg.term.cache.bytes";
+
+  static final String SUCCESS = "success";
+  static final String FAILURE = "failure";
+
+  enum Stage {
+    // reading the SAF, and parsing and compiling it into a plan when it has changed
+    SAF_FETCH("saf.fetch"),
+    SAF_PARSE("saf.parse"),
+    CONTEXT("context"),
+    // reading the front matter of the curated dir
+    LOCAL_FETCH("local.fetch"),
+    // per term file, on a term cache miss
+    LOCAL_CLEAN("local.clean"),
+    LOCAL_PARSE("local.parse"),
+    // selecting terms with the version's termselcrit
+    LOCAL_FILTER("local.filter"),
+    // waiting for the remote scopes once the local terms are done
+    REMOTE_WAIT("remote.wait"),
+    // serialising the MRG: a model once to its file, for a file or stream each batch of entries
+    WRITE("write");
+
+    private final String tag;
+
+    Stage(String tag) {
+      this.tag = tag;
+    }
+  }
+
+  private static final GenerationMetrics GLOBAL = new GenerationMetrics(Metrics.globalRegistry);
+
+  private final MeterRegistry registry;
+  private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+  private final Counter termFilesParsed;
+  private final Counter termFilesSkipped;
+  // weak so a wrangler that is dropped takes its cache with it
+  private final Set<TermCache> termCaches = Collections.newSetFromMap(new WeakHashMap<>());
+
+  GenerationMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    for (Stage stage : Stage.values()) {
+      stages.put(
+          stage,
+          Timer.builder(STAGE)
+              .description("Time spent in each stage of MRG generation")
+              .tag("stage", stage.tag)
+              .register(registry));
+    }
+    termFilesParsed = termFiles("parsed");
+    termFilesSkipped = termFiles("skipped");
+    termCacheRequests("hit", TermCache.Stats::hits);
+    termCacheRequests("miss", TermCache.Stats::misses);
+    Gauge.builder(TERM_CACHE_ENTRIES, this, metrics -> metrics.termCacheTotal(TermCache.Stats::entries))
+        .description("Parsed terms held in the term caches")
+        .register(registry);
+    Gauge.builder(TERM_CACHE_BYTES, this, metrics -> metrics.termCacheTotal(TermCache.Stats::bytesHeld))
+        .description("Approximate size of the terms held in the term caches")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  static GenerationMetrics global() {
+    return GLOBAL;
+  }
+
+  <T> T time(Stage stage, Supplier<T> work) {
+    long start = System.nanoTime();
+    try {
+      return work.get();
+    } finally {
+      record(stage, start);
+    }
+  }
+
+  /**
+   * @param start the {@link System#nanoTime()} the stage started at
+   */
+  void record(Stage stage, long start) {
+    stages.get(stage).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param outcome {@link #SUCCESS} or {@link #FAILURE}
+   */
+  void generation(String output, String outcome, long start) {
+    Timer.builder(GENERATION)
+        .description("Time to generate an MRG, from reading the SAF to writing the last entry")
+        .tag("output", output)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param outcome {@link #SUCCESS} or {@link #FAILURE}, as seen by the thread resolving the scope
+   */
+  void remoteScope(String scopetag, String outcome, long start) {
+    Timer.builder(REMOTE_SCOPE)
+        .description("Time to resolve the entries imported from a remote scope")
+        .tag("scopetag", String.valueOf(scopetag))
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  /*
+   The generation stops waiting for a scope that times out, the thread resolving it may still finish
+   and record its own outcome later
+  */
+  void remoteScopeTimedOut(String scopetag) {
+    Counter.builder(REMOTE_TIMEOUTS)
+        .description("Remote scopes the generation stopped waiting for")
+        .tag("scopetag", String.valueOf(scopetag))
+        .register(registry)
+        .increment();
+  }
+
+  void termFileParsed() {
+    termFilesParsed.increment();
+  }
+
+  void termFileSkipped() {
+    termFilesSkipped.increment();
+  }
+
+  /**
+   * @param source "local" or "remote"
+   */
+  void entries(String source, int count) {
+    Counter.builder(ENTRIES)
+        .description("MRG entries handed to the writer, after duplicates are dropped")
+        .tag("source", source)
+        .register(registry)
+        .increment(count);
+  }
+
+  void termCache(TermCache cache) {
+    synchronized (termCaches) {
+      termCaches.add(cache);
+    }
+  }
+
+  private void termCacheRequests(String result, ToDoubleFunction<TermCache.Stats> count) {
+    FunctionCounter.builder(TERM_CACHE_REQUESTS, this, metrics -> metrics.termCacheTotal(count))
+        .description("Term files looked up in the term caches, found or not")
+        .tag("result", result)
+        .register(registry);
+  }
+
+  private double termCacheTotal(ToDoubleFunction<TermCache.Stats> value) {
+    List<TermCache> caches;
+    synchronized (termCaches) {
+      caches = new ArrayList<>(termCaches);
+    }
+    return caches.stream().map(TermCache::stats).mapToDouble(value).sum();
+  }
+
+  private Counter termFiles(String outcome) {
+    return Counter.builder(TERM_FILES)
+        .description("Term files parsed, or skipped because they couldn't be parsed")
+        .tag("outcome", outcome)
+        .register(registry);
+  }
+}
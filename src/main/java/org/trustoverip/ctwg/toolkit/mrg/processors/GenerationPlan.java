@@ -0,0 +1,84 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
+import org.trustoverip.ctwg.toolkit.mrg.model.Version;
+
+/**
+ * A SAF compiled into everything a generation needs from it: the versions indexed by vsntag and, for
+ * every version, the local and remote scopes with their resolved owner/repo and root paths and their
+ * term selection criteria parsed into filters. Nothing in a plan changes once it is built so one plan
+ * is shared by every generation against the same SAF content, see {@link
+ * ModelWrangler#plan(String, String)}.
+ *
+ * @author sih
+ */
+final class GenerationPlan {
+
+  private final String safSha;
+  private final SAFModel saf;
+  private final Map<String, Version> versionsByTag;
+  private final Map<String, Map<String, GeneratorContext>> contextMapsByTag;
+  // the scopes without any filters, for a vsntag that isn't in the SAF
+  private final Map<String, GeneratorContext> unversionedContextMap;
+
+  /**
+   * @param safSha identifies the SAF content the plan was compiled from
+   * @param saf the parsed SAF
+   * @param contextMapBuilder builds the context map of a version, or of no version when given null,
+   *     see {@link ModelWrangler#buildContextMap(String, SAFModel, Version)}
+   */
+  GenerationPlan(
+      String safSha,
+      SAFModel saf,
+      Function<Version, Map<String, GeneratorContext>> contextMapBuilder) {
+    this.safSha = safSha;
+    this.saf = saf;
+    Map<String, Version> versions = new HashMap<>();
+    Map<String, Map<String, GeneratorContext>> contextMaps = new HashMap<>();
+    if (saf.getVersions() != null) {
+      for (Version version : saf.getVersions()) {
+        // the first of two versions with the same vsntag wins, as it did when the list was scanned
+        if (versions.putIfAbsent(version.getVsntag(), version) == null) {
+          contextMaps.put(version.getVsntag(), freeze(contextMapBuilder.apply(version)));
+        }
+      }
+    }
+    this.versionsByTag = Collections.unmodifiableMap(versions);
+    this.contextMapsByTag = Collections.unmodifiableMap(contextMaps);
+    this.unversionedContextMap = freeze(contextMapBuilder.apply(null));
+  }
+
+  String safSha() {
+    return safSha;
+  }
+
+  SAFModel saf() {
+    return saf;
+  }
+
+  Optional<Version> version(String versionTag) {
+    return Optional.ofNullable(versionsByTag.get(versionTag));
+  }
+
+  /**
+   * @return the local and remote scopes keyed by scopetag, in SAF order, for the version
+   */
+  Map<String, GeneratorContext> contextMap(String versionTag) {
+    return contextMapsByTag.getOrDefault(versionTag, unversionedContextMap);
+  }
+
+  /*
+   Copies rather than the contexts that were built, so whoever built them can't change the plan
+  */
+  private static Map<String, GeneratorContext> freeze(Map<String, GeneratorContext> contextMap) {
+    Map<String, GeneratorContext> frozen = new LinkedHashMap<>();
+    contextMap.forEach((scopetag, context) -> frozen.put(scopetag, context.frozenCopy()));
+    return Collections.unmodifiableMap(frozen);
+  }
+}
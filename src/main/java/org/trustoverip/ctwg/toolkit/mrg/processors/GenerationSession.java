@@ -0,0 +1,60 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
+
+/**
+ * Everything that belongs to a single request to generate an MRG. A new session is opened for every
+ * call to {@link MRGlossaryGenerator#generate(String, String, String)} so simultaneous generations
+ * share no mutable state through the generator.
+ *
+ * @param scopedir the scopedir of the (local) scope the MRG is built for
+ * @param safFilename the name of the SAF in the scopedir
+ * @param versionTag the version of the local scope the MRG is built for
+ * @param plan the SAF compiled for generation, shared with other sessions against the same SAF
+ * @param contextMap the local and remote scopes keyed by scopetag, see {@link
+ *     GenerationPlan#contextMap(String)}
+ * @param remoteErrors errors with remote scopes, collected rather than failing fast
+ * @param incremental what can be reused from the MRG generated before, see {@link IncrementalRun}
+ * @author sih
+ */
+record GenerationSession(
+    String scopedir,
+    String safFilename,
+    String versionTag,
+    GenerationPlan plan,
+    Map<String, GeneratorContext> contextMap,
+    List<String> remoteErrors,
+    IncrementalRun incremental) {
+
+  GenerationSession(String scopedir, String safFilename, String versionTag, GenerationPlan plan) {
+    this(scopedir, safFilename, versionTag, plan, IncrementalRun.off());
+  }
+
+  GenerationSession(
+      String scopedir,
+      String safFilename,
+      String versionTag,
+      GenerationPlan plan,
+      IncrementalRun incremental) {
+    this(
+        scopedir,
+        safFilename,
+        versionTag,
+        plan,
+        plan.contextMap(versionTag),
+        Collections.synchronizedList(new ArrayList<>()),
+        incremental);
+  }
+
+  SAFModel saf() {
+    return plan.saf();
+  }
+
+  GeneratorContext localContext() {
+    return contextMap.get(saf().getScope().getScopetag());
+  }
+}
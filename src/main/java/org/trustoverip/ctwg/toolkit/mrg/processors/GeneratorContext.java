@@ -3,11 +3,15 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
 
 /**
+ * The directories and filters of a local or remote scope. A context is filled in while a SAF is
+ * compiled and then frozen into a {@link GenerationPlan}, after which it can no longer be changed
+ * as the plan's contexts are shared by every generation against that SAF.
+ *
  * @author sih
  */
 @Getter
@@ -19,11 +23,14 @@ public final class GeneratorContext {
 
   private final String curatedDir;
 
-  @Setter private String scopetag;
-  @Setter private String versionTag;
+  private String scopetag;
+  private String versionTag;
 
-  @Setter private List<Predicate<Term>> addFilters;
-  @Setter private List<Predicate<Term>> removeFilters;
+  private List<Predicate<Term>> addFilters;
+  private List<Predicate<Term>> removeFilters;
+
+  @Getter(AccessLevel.NONE)
+  private boolean frozen;
 
   public GeneratorContext(
       String ownerRepo,
@@ -40,4 +47,44 @@ public final class GeneratorContext {
     this.addFilters = new ArrayList<>();
     this.removeFilters = new ArrayList<>();
   }
+
+  public void setScopetag(String scopetag) {
+    checkNotFrozen();
+    this.scopetag = scopetag;
+  }
+
+  public void setVersionTag(String versionTag) {
+    checkNotFrozen();
+    this.versionTag = versionTag;
+  }
+
+  public void setAddFilters(List<Predicate<Term>> addFilters) {
+    checkNotFrozen();
+    this.addFilters = addFilters;
+  }
+
+  public void setRemoveFilters(List<Predicate<Term>> removeFilters) {
+    checkNotFrozen();
+    this.removeFilters = removeFilters;
+  }
+
+  /*
+   A copy that can't be changed, with unmodifiable copies of the filter lists, so changing this
+   context afterwards doesn't reach the copy either
+  */
+  GeneratorContext frozenCopy() {
+    GeneratorContext copy =
+        new GeneratorContext(ownerRepo, absoluteRepo, safDirectory, versionTag, curatedDir);
+    copy.scopetag = scopetag;
+    copy.addFilters = List.copyOf(addFilters);
+    copy.removeFilters = List.copyOf(removeFilters);
+    copy.frozen = true;
+    return copy;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new UnsupportedOperationException("The context of " + scopetag + " is part of a plan");
+    }
+  }
 }
@@ -0,0 +1,145 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
+
+/**
+ * The part of a generation session that lets it reuse the MRG generated before it. When that MRG was
+ * generated from the same SAF, its entries for term files and remote MRGs whose fingerprints haven't
+ * changed are carried over and only the rest are parsed again. The fingerprints of this generation
+ * are collected as it goes, to be written next to the new MRG for the next one.
+ *
+ * @author sih
+ */
+final class IncrementalRun {
+
+  private static final IncrementalRun OFF = new IncrementalRun(false, null, null);
+
+  private final boolean enabled;
+  // both null when there is nothing usable to start from
+  private final MRGFingerprints previous;
+  private final Map<String, List<MRGEntry>> previousEntriesByScopetag = new HashMap<>();
+
+  private volatile Map<String, String> termFiles;
+  private volatile List<String> selectedTermFiles;
+  // remote scopes are resolved on other threads and only count once their entries are in the MRG
+  private final Map<String, String> resolvedRemoteScopes = new ConcurrentHashMap<>();
+  private final Map<String, String> includedRemoteScopes = new ConcurrentHashMap<>();
+
+  private IncrementalRun(boolean enabled, MRGFingerprints previous, MRGModel previousMrg) {
+    this.enabled = enabled;
+    this.previous = previous;
+    if (previousMrg != null && previousMrg.entries() != null) {
+      for (MRGEntry entry : previousMrg.entries()) {
+        previousEntriesByScopetag
+            .computeIfAbsent(String.valueOf(entry.getScopetag()), k -> new ArrayList<>())
+            .add(entry);
+      }
+    }
+  }
+
+  /*
+   Generates everything and writes no fingerprints
+  */
+  static IncrementalRun off() {
+    return OFF;
+  }
+
+  /*
+   Generates everything but writes fingerprints for the next generation
+  */
+  static IncrementalRun fresh() {
+    return new IncrementalRun(true, null, null);
+  }
+
+  static IncrementalRun from(MRGFingerprints previous, MRGModel previousMrg) {
+    return new IncrementalRun(true, previous, previousMrg);
+  }
+
+  boolean enabled() {
+    return enabled;
+  }
+
+  boolean hasPrevious() {
+    return previous != null;
+  }
+
+  Map<String, String> previousTermFiles() {
+    return (null == previous || null == previous.termFiles()) ? Map.of() : previous.termFiles();
+  }
+
+  Set<String> previousSelectedTermFiles() {
+    return (null == previous || null == previous.selectedTermFiles())
+        ? Set.of()
+        : new HashSet<>(previous.selectedTermFiles());
+  }
+
+  /**
+   * @return the previous MRG's entries for the scope keyed by locator, i.e. the term file they were
+   *     parsed from
+   */
+  Map<String, MRGEntry> previousEntriesByLocator(String scopetag) {
+    Map<String, MRGEntry> entries = new HashMap<>();
+    for (MRGEntry entry :
+        previousEntriesByScopetag.getOrDefault(String.valueOf(scopetag), List.of())) {
+      entries.putIfAbsent(entry.getLocator(), entry);
+    }
+    return entries;
+  }
+
+  /**
+   * @param fingerprint the remote MRG as it is now, null when it couldn't be fingerprinted
+   * @return the previous MRG's entries for the remote scope when the remote MRG hasn't changed,
+   *     otherwise empty and the scope has to be resolved again
+   */
+  Optional<List<MRGEntry>> unchangedRemoteEntries(String scopetag, String fingerprint) {
+    if (null == previous
+        || null == fingerprint
+        || null == previous.remoteScopes()
+        || !fingerprint.equals(previous.remoteScopes().get(scopetag))) {
+      return Optional.empty();
+    }
+    return Optional.of(new ArrayList<>(previousEntriesByScopetag.getOrDefault(scopetag, List.of())));
+  }
+
+  void localScope(Map<String, String> termFiles, List<String> selectedTermFiles) {
+    this.termFiles = new LinkedHashMap<>(termFiles);
+    this.selectedTermFiles = List.copyOf(selectedTermFiles);
+  }
+
+  void remoteScopeResolved(String scopetag, String fingerprint) {
+    if (fingerprint != null) {
+      resolvedRemoteScopes.put(scopetag, fingerprint);
+    }
+  }
+
+  /*
+   A scope that failed or timed out is left out, so it is resolved again next time
+  */
+  void remoteScopeIncluded(String scopetag) {
+    String fingerprint = resolvedRemoteScopes.get(scopetag);
+    if (fingerprint != null) {
+      includedRemoteScopes.put(scopetag, fingerprint);
+    }
+  }
+
+  /**
+   * @return the fingerprints of this generation, or null when the local scope wasn't generated
+   */
+  MRGFingerprints fingerprints(String safSha) {
+    if (null == termFiles) {
+      return null;
+    }
+    return new MRGFingerprints(safSha, termFiles, selectedTermFiles, new TreeMap<>(includedRemoteScopes));
+  }
+}
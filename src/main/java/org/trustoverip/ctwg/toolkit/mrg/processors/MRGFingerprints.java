@@ -0,0 +1,21 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Written next to an MRG when it is generated incrementally, so the next generation of the same
+ * version can tell which of its inputs have changed since. See {@link IncrementalRun}.
+ *
+ * @param safSha the Git blob SHA of the SAF the MRG was generated from
+ * @param termFiles the fingerprint of every file in the local curated dir, keyed by filename
+ * @param selectedTermFiles the term files whose terms were selected for the MRG
+ * @param remoteScopes the path and fingerprint of the MRG each remote scope was read from, keyed by
+ *     scopetag
+ * @author sih
+ */
+record MRGFingerprints(
+    String safSha,
+    Map<String, String> termFiles,
+    List<String> selectedTermFiles,
+    Map<String, String> remoteScopes) {}
@@ -28,6 +28,14 @@ public class MRGGenerationException extends RuntimeException {
       "Generation failed: No version with version tag (vsntag) of %s found in SAF";
   public static final String CANNOT_WRITE_MRG =
       "Generation failed: Unable to write MRG to location %s";
+  public static final String CANNOT_STREAM_MRG =
+      "Generation failed: Unable to write MRG entries to the output stream";
+  public static final String CANNOT_WRITE_FINGERPRINTS =
+      "Unable to write the MRG fingerprints to location %s";
+  public static final String UNABLE_TO_READ_FINGERPRINTS =
+      "Unable to read the MRG fingerprints at location %s";
+  public static final String DUPLICATE_ENTRY =
+      "Generation failed: The term %s appears more than once in scope %s";
   public static final String CANNOT_PARSE_TERM = "Could not create term from input string of:\n%s";
 
   public static final String CANNOT_CREATE_GLOSSARY_DIR = "Could not create glossary dir at %s";
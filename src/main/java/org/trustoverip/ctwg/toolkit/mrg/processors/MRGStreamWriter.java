@@ -0,0 +1,76 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_STREAM_MRG;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
+
+/**
+ * Writes an MRG a batch of entries at a time rather than from a complete {@link
+ * org.trustoverip.ctwg.toolkit.mrg.model.MRGModel}. The {@code terminology} and {@code scopes}
+ * sections are written when the writer is opened, every call to {@link #write(List)} appends to the
+ * {@code entries} section and {@link #close()} ends the document. The output is the same as
+ * serialising the whole model in one go.
+ *
+ * <p>Each batch is flushed once it has been written so that a reader at the other end of the
+ * stream sees entries as they are produced. The target stream is left open.
+ *
+ * @author sih
+ */
+final class MRGStreamWriter implements Closeable {
+
+  private final JsonGenerator generator;
+  private final ObjectWriter entryWriter;
+  private int entriesWritten;
+
+  MRGStreamWriter(
+      JsonGenerator generator,
+      ObjectWriter terminologyWriter,
+      ObjectWriter scopesWriter,
+      ObjectWriter entryWriter,
+      Terminology terminology,
+      List<ScopeRef> scopes)
+      throws IOException {
+    this.generator = generator;
+    this.entryWriter = entryWriter;
+    generator.writeStartObject();
+    generator.writeFieldName("terminology");
+    terminologyWriter.writeValue(generator, terminology);
+    generator.writeFieldName("scopes");
+    scopesWriter.writeValue(generator, scopes);
+    generator.writeFieldName("entries");
+    generator.writeStartArray();
+  }
+
+  void write(List<MRGEntry> entries) throws MRGGenerationException {
+    try {
+      for (MRGEntry entry : entries) {
+        entryWriter.writeValue(generator, entry);
+      }
+      generator.flush();
+      entriesWritten += entries.size();
+    } catch (IOException ioe) {
+      throw new MRGGenerationException(CANNOT_STREAM_MRG, ioe);
+    }
+  }
+
+  int entriesWritten() {
+    return entriesWritten;
+  }
+
+  @Override
+  public void close() throws MRGGenerationException {
+    try (generator) {
+      generator.writeEndArray();
+      generator.writeEndObject();
+    } catch (IOException ioe) {
+      throw new MRGGenerationException(CANNOT_STREAM_MRG, ioe);
+    }
+  }
+}
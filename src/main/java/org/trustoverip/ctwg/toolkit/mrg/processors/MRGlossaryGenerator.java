@@ -3,23 +3,39 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.NO_GLOSSARY_DIR;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.NO_SUCH_VERSION;
 
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import lombok.AccessLevel;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections.ListUtils;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.trustoverip.ctwg.toolkit.mrg.connectors.GithubConnector;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry.Source;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.LocalFSConnector;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.MRGConnector;
 import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
@@ -29,6 +45,10 @@ import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
 import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
 import org.trustoverip.ctwg.toolkit.mrg.model.Version;
+import org.trustoverip.ctwg.toolkit.mrg.processors.EntryMerger.DuplicatePolicy;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationEvents.Generation;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationEvents.RemoteScope;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationMetrics.Stage;
 
 /**
  * @author sih
@@ -44,29 +64,57 @@ public class MRGlossaryGenerator {
 
   private static final int PARAMS_EXPECTED = 2;
 
-  @Setter(AccessLevel.PRIVATE)
-  private Map<String, GeneratorContext> contextMap;
-
   private static final int LOCAL_PARAMS_EXPECTED = 3;
   private static final int SCOPEDIR_INDEX = 0;
 
-  private final List<String> remoteErrorCollector = new ArrayList<>(); // collect errors rather than fail fast
+  // number of remote scopes resolved at the same time, and how long to wait for any one of them
+  private static final String REMOTE_CONCURRENCY = "mrg_remote_concurrency";
+  private static final String REMOTE_TIMEOUT = "mrg_remote_timeout_seconds";
+  private static final int DEFAULT_REMOTE_CONCURRENCY = 4;
+  private static final int DEFAULT_REMOTE_TIMEOUT_SECONDS = 60;
+  // what to do when a term appears more than once in the same scope
+  private static final String DUPLICATE_ENTRIES = "mrg_duplicate_entries";
+  // reuse what hasn't changed since the MRG was last generated
+  private static final String INCREMENTAL = "mrg_incremental";
+
+  // shared by every generation; anything specific to one request lives in its GenerationSession
+  private final ConnectorRegistry registry;
+  private final ExecutorService remoteExecutor;
+  private final Duration remoteTimeout;
+  private final DuplicatePolicy duplicatePolicy;
+  private final Map<MRGConnector, ModelWrangler> remoteWranglers = new ConcurrentHashMap<>();
+  private final GenerationMetrics metrics = GenerationMetrics.global();
+
   @Autowired
-  public MRGlossaryGenerator(ModelWrangler wrangler) {
-    this.wrangler = wrangler;
+  public MRGlossaryGenerator(ModelWrangler wrangler, ConnectorRegistry registry) {
+    this(
+        wrangler,
+        registry,
+        NumberUtils.toInt(System.getenv(REMOTE_CONCURRENCY), DEFAULT_REMOTE_CONCURRENCY),
+        Duration.ofSeconds(
+            NumberUtils.toInt(System.getenv(REMOTE_TIMEOUT), DEFAULT_REMOTE_TIMEOUT_SECONDS)),
+        DuplicatePolicy.of(System.getenv(DUPLICATE_ENTRIES)));
   }
 
-  private Version getVersion(SAFModel saf, String versionTag) throws MRGGenerationException {
-    List<Version> versions = saf.getVersions();
-    Optional<Version> version = Optional.empty();
-    for (Version v : versions) {
-      if (v.getVsntag().equals(versionTag)) {
-        version = Optional.of(v);
-        break;
-      }
-    }
-    return version.orElseThrow(
-        () -> new MRGGenerationException(String.format(NO_SUCH_VERSION, versionTag)));
+  MRGlossaryGenerator(
+      ModelWrangler wrangler,
+      ConnectorRegistry registry,
+      int remoteConcurrency,
+      Duration remoteTimeout) {
+    this(wrangler, registry, remoteConcurrency, remoteTimeout, DuplicatePolicy.KEEP_ALL);
+  }
+
+  MRGlossaryGenerator(
+      ModelWrangler wrangler,
+      ConnectorRegistry registry,
+      int remoteConcurrency,
+      Duration remoteTimeout,
+      DuplicatePolicy duplicatePolicy) {
+    this.wrangler = wrangler;
+    this.registry = registry;
+    this.remoteTimeout = remoteTimeout;
+    this.duplicatePolicy = duplicatePolicy;
+    this.remoteExecutor = remoteExecutor(remoteConcurrency);
   }
 
   private static final int VERSIONTAG_INDEX = 1;
@@ -80,6 +128,9 @@ public class MRGlossaryGenerator {
         
       To run remotely: mrg-generator <scopedir> <version tag> -DGH_NAME=<github username> -DGH_TOKEN=<github access token>
         e.g. mrg-generator https://github.com/essif-lab/framework/tree/master/docs/tev2 mrgtest foo abc123
+
+      To run remotely reading each repository from a single archive download rather than file by file:
+        mrg-generator <scopedir> <version tag> archive
       
       """;
   private static final String UNEXPECTED_ERROR = """
@@ -94,8 +145,17 @@ public class MRGlossaryGenerator {
     Use this when running locally for development or test purposes
    */
   public MRGlossaryGenerator(boolean runLocal) {
-    MRGConnector connector = runLocal ? new LocalFSConnector() : new GithubConnector();
-    wrangler = new ModelWrangler(new YamlWrangler(), connector);
+    this(new ConnectorRegistry(Source.GITHUB), runLocal ? Source.LOCAL : Source.GITHUB);
+  }
+
+  private MRGlossaryGenerator(ConnectorRegistry registry, Source source) {
+    this(new ModelWrangler(new YamlWrangler(), registry.get(source)), registry);
+  }
+
+  private static ExecutorService remoteExecutor(int remoteConcurrency) {
+    return Executors.newFixedThreadPool(
+        Math.max(1, remoteConcurrency),
+        new BasicThreadFactory.Builder().namingPattern("mrg-remote-%d").daemon(true).build());
   }
 
   public static void main(String[] args) {
@@ -104,13 +164,18 @@ public class MRGlossaryGenerator {
       System.exit(1);
     }
     boolean isLocal = (args.length == LOCAL_PARAMS_EXPECTED && args[LOCAL_PARAMS_EXPECTED-1].equalsIgnoreCase("local"));
+    boolean isArchive = (args.length == LOCAL_PARAMS_EXPECTED && args[LOCAL_PARAMS_EXPECTED-1].equalsIgnoreCase("archive"));
     String scopedir = args[SCOPEDIR_INDEX];
     String versionTag = args[VERSIONTAG_INDEX];
-    MRGlossaryGenerator generator = new MRGlossaryGenerator(isLocal);
+    MRGlossaryGenerator generator =
+        isArchive
+            ? new MRGlossaryGenerator(new ConnectorRegistry(Source.ARCHIVE), Source.ARCHIVE)
+            : new MRGlossaryGenerator(isLocal);
     log.info("***** Starting generation *****");
     log.info("Creating an MRG from scopedir {} and version tag {}", scopedir, versionTag);
     try {
-      generator.generate(scopedir, DEFAULT_SAF_FILENAME, versionTag);
+      generator.generateToFile(
+          scopedir, DEFAULT_SAF_FILENAME, versionTag, BooleanUtils.toBoolean(System.getenv(INCREMENTAL)));
       log.info("***** Completed: Successfully generated MRG *****");
     } catch (MRGGenerationException mrge) {
       log.error(mrge.getMessage());
@@ -123,15 +188,66 @@ public class MRGlossaryGenerator {
   /*
    Local entries are selected from the curatedDir
   */
-  private List<MRGEntry> currentTerms(GeneratorContext generatorContext, Version currentVersion) {
+  private List<MRGEntry> currentTerms(GeneratorContext generatorContext) {
     List<Term> currentTerms = wrangler.fetchTerms(generatorContext, generatorContext.getAddFilters(), generatorContext.getRemoveFilters());
     return currentTerms.stream().map(MRGEntry::new).collect(Collectors.toList());
   }
 
+  /*
+   When incremental, only the term files added or changed since the previous MRG are parsed. The
+   entries of the others are taken from that MRG, and a file whose term was selected but isn't there
+   (dropped as a duplicate) is parsed again to be sure. Entries stay in curated dir order
+  */
+  private List<MRGEntry> currentTerms(GenerationSession session) {
+    GeneratorContext generatorContext = session.localContext();
+    IncrementalRun run = session.incremental();
+    if (!run.enabled()) {
+      return currentTerms(generatorContext);
+    }
+    Map<String, String> termFiles = wrangler.termFileFingerprints(generatorContext);
+    List<MRGEntry> entries;
+    if (!run.hasPrevious()) {
+      entries = currentTerms(generatorContext);
+    } else {
+      Map<String, String> previousTermFiles = run.previousTermFiles();
+      Set<String> previouslySelected = run.previousSelectedTermFiles();
+      Map<String, MRGEntry> previousEntries = run.previousEntriesByLocator(generatorContext.getScopetag());
+      Set<String> changed = new HashSet<>();
+      for (Entry<String, String> termFile : termFiles.entrySet()) {
+        String filename = termFile.getKey();
+        if (!termFile.getValue().equals(previousTermFiles.get(filename))
+            || (previouslySelected.contains(filename) && !previousEntries.containsKey(filename))) {
+          changed.add(filename);
+        }
+      }
+      long removed = previousTermFiles.keySet().stream().filter(f -> !termFiles.containsKey(f)).count();
+      log.info("... {} of {} term files added or changed and {} removed since the previous MRG", changed.size(), termFiles.size(), removed);
+      Map<String, MRGEntry> changedEntries = new HashMap<>();
+      if (!changed.isEmpty()) {
+        for (Term term : wrangler.fetchTerms(generatorContext, generatorContext.getAddFilters(), generatorContext.getRemoveFilters(), changed)) {
+          MRGEntry entry = new MRGEntry(term);
+          changedEntries.put(entry.getLocator(), entry);
+        }
+      }
+      entries = new ArrayList<>();
+      for (String filename : termFiles.keySet()) {
+        MRGEntry entry =
+            changed.contains(filename)
+                ? changedEntries.get(filename)
+                : (previouslySelected.contains(filename) ? previousEntries.get(filename) : null);
+        if (entry != null) {
+          entries.add(entry);
+        }
+      }
+    }
+    run.localScope(termFiles, entries.stream().map(MRGEntry::getLocator).collect(Collectors.toList()));
+    return entries;
+  }
+
   /*
    Remote entries are selected from the mrg
   */
-  private List<MRGEntry> remoteTerms(String scopetag, GeneratorContext remoteContext) {
+  private List<MRGEntry> remoteTerms(GenerationSession session, String scopetag, GeneratorContext remoteContext) {
     log.info("... Fetching terms for scopetag {} from scopedir {} with version {}", scopetag, remoteContext.getSafDirectory(), remoteContext.getVersionTag());
     List<MRGEntry> remoteEntries = new ArrayList<>();
     /*
@@ -144,26 +260,34 @@ public class MRGlossaryGenerator {
       5. Match terms
       - WARN if no matches found in remote MRG
      */
-    // remote SAFs are always remote - i.e. obtained via GitHub
-    if (wrangler.getConnector() instanceof LocalFSConnector) {
-      wrangler.setConnector(new GithubConnector());
-    }
+    ModelWrangler remoteWrangler = remoteWrangler(remoteContext.getAbsoluteRepo());
     // 1. Get remote SAF
-    SAFModel remoteSaf = wrangler.getSaf(remoteContext.getAbsoluteRepo(), DEFAULT_SAF_FILENAME);
+    SAFModel remoteSaf = remoteWrangler.getSaf(remoteContext.getAbsoluteRepo(), DEFAULT_SAF_FILENAME);
     if (remoteSaf != null) {
       String glossaryDir = remoteSaf.getScope().getGlossarydir();
       Optional<Version> versionOfInterest = remoteSaf.getVersions().stream().filter(v -> v.getVsntag().equals(remoteContext.getVersionTag())).findFirst();
       if (versionOfInterest.isPresent()) {
-        MRGModel remoteMrg = wrangler.getMrg(remoteContext, remoteSaf.getScope().getGlossarydir(), versionOfInterest.get().getAltvsntags());
+        IncrementalRun run = session.incremental();
+        String mrgFingerprint = null;
+        if (run.enabled()) {
+          mrgFingerprint = remoteWrangler.mrgFingerprint(remoteContext, glossaryDir, versionOfInterest.get().getAltvsntags());
+          Optional<List<MRGEntry>> unchanged = run.unchangedRemoteEntries(scopetag, mrgFingerprint);
+          if (unchanged.isPresent()) {
+            log.info("... The MRG of scopetag {} hasn't changed so reusing its {} entries", scopetag, unchanged.get().size());
+            run.remoteScopeResolved(scopetag, mrgFingerprint);
+            return unchanged.get();
+          }
+        }
+        Predicate<Term> consolidatedFilter = CompiledTermsFilter.compile(remoteContext.getAddFilters(), List.of());
+        // entries are filtered as the remote MRG is parsed rather than once it has all been read
+        MRGModel remoteMrg = remoteWrangler.getMrg(remoteContext, remoteSaf.getScope().getGlossarydir(), versionOfInterest.get().getAltvsntags(), consolidatedFilter);
         if (remoteMrg != null) {
-          List<MRGEntry> mrgEntries = remoteMrg.entries();
-          List<Predicate<Term>> filters = remoteContext.getAddFilters();
-          Predicate<Term> consolidatedFilter = filters.stream().reduce(Predicate::or).orElse(TermsFilter.all());
-          remoteEntries = mrgEntries.stream().filter(consolidatedFilter).collect(Collectors.toList());
+          remoteEntries = remoteMrg.entries();
           for (MRGEntry e: remoteEntries) {
             e.setScopetag(scopetag);
             log.info("... Copying remote term {} ...", e.getTerm());
           }
+          run.remoteScopeResolved(scopetag, mrgFingerprint);
         } else {
           log.warn("No MRG found in glossary directory {} of remote dir {}",remoteContext.getSafDirectory(), glossaryDir);
         }
@@ -172,45 +296,373 @@ public class MRGlossaryGenerator {
       }
 
     } else {
-      this.remoteErrorCollector.add(String.format("There was an error with remote scopetag %s. Could not find the %s at %s", scopetag, DEFAULT_SAF_FILENAME, remoteContext.getSafDirectory()));
+      session.remoteErrors().add(String.format("There was an error with remote scopetag %s. Could not find the %s at %s", scopetag, DEFAULT_SAF_FILENAME, remoteContext.getSafDirectory()));
     }
     return remoteEntries;
   }
 
+  /*
+   When the local scope is read from the file system, remote scopes are read through whichever shared
+   connector the registry routes their scopedir to. A separate wrangler is used for them so the local
+   parse, which runs at the same time, keeps reading from the local connector
+  */
+  private ModelWrangler remoteWrangler(String remoteScopedir) {
+    if (!(wrangler.getConnector() instanceof LocalFSConnector)) {
+      return wrangler;
+    }
+    MRGConnector connector = registry.forScopedir(remoteScopedir);
+    return (connector == wrangler.getConnector())
+        ? wrangler
+        : remoteWranglers.computeIfAbsent(connector, wrangler::withConnector);
+  }
+
+  /*
+   Every remote scope is submitted before the local terms are parsed so the network round trips
+   overlap with the local work. Results are collected in contextMap order, and a scope that fails or
+   isn't done within the timeout of starting is reported in the session's remote errors rather than
+   failing the MRG
+  */
+  private Map<String, RemoteTerms> submitRemoteTerms(GenerationSession session) {
+    Map<String, RemoteTerms> remoteTermsByScopetag = new LinkedHashMap<>();
+    Set<Entry<String, GeneratorContext>> contextsByScopetag = session.contextMap().entrySet();
+    for (Entry<String, GeneratorContext> e : contextsByScopetag) {
+      if (!e.getValue().getAddFilters().isEmpty()) {
+        CompletableFuture<Long> started = new CompletableFuture<>();
+        Future<List<MRGEntry>> entries =
+            remoteExecutor.submit(
+                () -> {
+                  started.complete(System.nanoTime());
+                  return measuredRemoteTerms(session, e.getKey(), e.getValue());
+                });
+        remoteTermsByScopetag.put(e.getKey(), new RemoteTerms(started, entries));
+      }
+    }
+    return remoteTermsByScopetag;
+  }
+
+  /**
+   * A remote scope submitted to the shared executor.
+   *
+   * @param started completed with the {@link System#nanoTime()} its task started running at, so the
+   *     time it spent queued behind other scopes and other generations isn't counted against it
+   */
+  private record RemoteTerms(CompletableFuture<Long> started, Future<List<MRGEntry>> entries) {}
+
+  private List<MRGEntry> measuredRemoteTerms(GenerationSession session, String scopetag, GeneratorContext remoteContext) {
+    RemoteScope event = new RemoteScope();
+    event.begin();
+    long start = System.nanoTime();
+    String outcome = GenerationMetrics.FAILURE;
+    List<MRGEntry> entries = List.of();
+    try {
+      entries = remoteTerms(session, scopetag, remoteContext);
+      outcome = GenerationMetrics.SUCCESS;
+      return entries;
+    } finally {
+      metrics.remoteScope(scopetag, outcome, start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.scopetag = scopetag;
+        event.scopedir = remoteContext.getAbsoluteRepo();
+        event.versionTag = remoteContext.getVersionTag();
+        event.entries = entries.size();
+        event.outcome = outcome;
+        event.commit();
+      }
+    }
+  }
+
+  /*
+   Each scope gets the whole timeout from when its task starts running. One that is still queued is
+   waited for until it starts, as a scope ahead of it frees its thread by finishing or timing out
+  */
+  private List<MRGEntry> awaitRemoteTerms(GenerationSession session, String scopetag, RemoteTerms remoteTerms) {
+    String error;
+    try {
+      long deadline = remoteTerms.started().get() + remoteTimeout.toNanos();
+      long timeLeft = Math.max(0, deadline - System.nanoTime());
+      List<MRGEntry> entries = remoteTerms.entries().get(timeLeft, TimeUnit.NANOSECONDS);
+      session.incremental().remoteScopeIncluded(scopetag);
+      return entries;
+    } catch (TimeoutException te) {
+      remoteTerms.entries().cancel(true);
+      metrics.remoteScopeTimedOut(scopetag);
+      error = String.format("There was an error with remote scopetag %s. Timed out after %s", scopetag, remoteTimeout);
+    } catch (ExecutionException ee) {
+      error = String.format("There was an error with remote scopetag %s. %s", scopetag, ee.getCause().getMessage());
+    } catch (InterruptedException ie) {
+      remoteTerms.entries().cancel(true);
+      Thread.currentThread().interrupt();
+      throw new MRGGenerationException(ie);
+    }
+    log.warn(error);
+    session.remoteErrors().add(error);
+    return new ArrayList<>();
+  }
+
   public MRGModel generate(final String scopedir, final String safFilename, final String versionTag)
       throws MRGGenerationException {
+    return generate(scopedir, safFilename, versionTag, false);
+  }
+
+  /**
+   * @param incremental true to only parse the term files and remote MRGs that have changed since the
+   *     MRG was last generated incrementally, reusing the entries of that MRG for the rest
+   */
+  public MRGModel generate(
+      final String scopedir, final String safFilename, final String versionTag, boolean incremental)
+      throws MRGGenerationException {
+    return measured(
+        "model",
+        scopedir,
+        versionTag,
+        event -> {
+          MRGModel mrg = generate(openSession(scopedir, safFilename, versionTag, incremental));
+          event.entries = mrg.entries().size();
+          return mrg;
+        });
+  }
+
+  GenerationSession openSession(
+      final String scopedir, final String safFilename, final String versionTag)
+      throws MRGGenerationException {
+    return openSession(scopedir, safFilename, versionTag, false);
+  }
+
+  GenerationSession openSession(
+      final String scopedir, final String safFilename, final String versionTag, boolean incremental)
+      throws MRGGenerationException {
     log.info("Step 1/6: Parsing Scope Administration File (SAF) from location {}", safFilename);
-    SAFModel saf = wrangler.getSaf(scopedir, safFilename);
+    GenerationPlan plan = wrangler.plan(scopedir, safFilename);
     log.info("Step 2/6: Resolving local and remote scopes defined in the SAF");
-    this.setContextMap(wrangler.buildContextMap(scopedir, saf, versionTag));
+    String glossaryDir = plan.saf().getScope().getGlossarydir();
+    IncrementalRun run =
+        (!incremental)
+            ? IncrementalRun.off()
+            : StringUtils.isEmpty(glossaryDir)
+                ? IncrementalRun.fresh()
+                : wrangler.previousRun(glossaryDir, versionTag, plan.safSha());
+    return new GenerationSession(scopedir, safFilename, versionTag, plan, run);
+  }
+
+  MRGModel generate(GenerationSession session) throws MRGGenerationException {
+    Terminology terminology = terminology(session);
+    List<ScopeRef> scopes = new ArrayList<>(session.saf().getScopes());
+    List<MRGEntry> entries = new ArrayList<>();
+    produceEntries(session, entries::addAll);
+    MRGModel mrg = new MRGModel(terminology, scopes, entries);
+    long start = System.nanoTime();
+    String mrgFilename = wrangler.writeMrgToFile(mrg, session.saf().getScope().getGlossarydir(), session.versionTag());
+    metrics.record(Stage.WRITE, start);
+    log.info("Step 6/6: Written generated MRG to file: {}", mrgFilename);
+    writeFingerprints(session);
+    return mrg;
+  }
+
+  /**
+   * Generates the MRG straight to its file, writing the entries of each scope as soon as that scope
+   * is done, so only one scope's entries are held in memory at a time.
+   *
+   * @return the name of the MRG file
+   */
+  public String generateToFile(final String scopedir, final String safFilename, final String versionTag)
+      throws MRGGenerationException {
+    return generateToFile(scopedir, safFilename, versionTag, false);
+  }
+
+  /**
+   * As {@link #generateToFile(String, String, String)}, incrementally when asked, see {@link
+   * #generate(String, String, String, boolean)}.
+   */
+  public String generateToFile(
+      final String scopedir, final String safFilename, final String versionTag, boolean incremental)
+      throws MRGGenerationException {
+    return measured(
+        "file",
+        scopedir,
+        versionTag,
+        event -> {
+          GenerationSession session = openSession(scopedir, safFilename, versionTag, incremental);
+          Terminology terminology = terminology(session);
+          String mrgFilename =
+              wrangler.writeMrgToFile(
+                  session.saf().getScope().getGlossarydir(),
+                  session.versionTag(),
+                  terminology,
+                  new ArrayList<>(session.saf().getScopes()),
+                  writer -> {
+                    produceEntries(session, written(writer::write));
+                    event.entries = writer.entriesWritten();
+                  });
+          log.info("Step 6/6: Written generated MRG to file: {}", mrgFilename);
+          writeFingerprints(session);
+          return mrgFilename;
+        });
+  }
+
+  /**
+   * Generates the MRG as YAML to the stream, writing the entries of each scope as soon as that scope
+   * is done. Nothing is written to the glossary dir and the stream is left open.
+   */
+  public void generate(
+      final String scopedir, final String safFilename, final String versionTag, OutputStream out)
+      throws MRGGenerationException {
+    prepare(scopedir, safFilename, versionTag).writeTo(out);
+  }
+
+  /**
+   * Reads the SAF, compiles its plan and checks the version before anything is written, so a missing
+   * SAF or an unknown version is thrown from here. The entries are only generated once the returned
+   * writer is given a stream, for a caller that has to commit to a response first.
+   */
+  public MRGWriter prepare(final String scopedir, final String safFilename, final String versionTag)
+      throws MRGGenerationException {
+    Measurement measurement = new Measurement("stream", scopedir, versionTag);
+    GenerationSession session;
+    Terminology terminology;
+    try {
+      session = openSession(scopedir, safFilename, versionTag);
+      terminology = terminology(session);
+    } catch (RuntimeException e) {
+      measurement.done(GenerationMetrics.FAILURE);
+      throw e;
+    }
+    return out -> {
+      String outcome = GenerationMetrics.FAILURE;
+      try {
+        try (MRGStreamWriter writer =
+            wrangler.openMrg(out, terminology, new ArrayList<>(session.saf().getScopes()))) {
+          produceEntries(session, written(writer::write));
+          measurement.event.entries = writer.entriesWritten();
+          log.info("Step 6/6: Streamed {} MRG entries", writer.entriesWritten());
+        }
+        outcome = GenerationMetrics.SUCCESS;
+      } finally {
+        measurement.done(outcome);
+      }
+    };
+  }
+
+  /** Writes the entries of a generation {@link #prepare prepared} earlier. */
+  @FunctionalInterface
+  public interface MRGWriter {
+    void writeTo(OutputStream out) throws MRGGenerationException;
+  }
+
+  /*
+   Times the generation for the metrics and records it as a flight recorder event, which the
+   generation fills in with the number of entries written
+  */
+  private <T> T measured(String output, String scopedir, String versionTag, Function<Generation, T> generation) {
+    Measurement measurement = new Measurement(output, scopedir, versionTag);
+    String outcome = GenerationMetrics.FAILURE;
+    try {
+      T result = generation.apply(measurement.event);
+      outcome = GenerationMetrics.SUCCESS;
+      return result;
+    } finally {
+      measurement.done(outcome);
+    }
+  }
+
+  /*
+   A generation being timed, which a streamed generation carries from preparing it to writing it
+  */
+  private final class Measurement {
+    private final String output;
+    private final String scopedir;
+    private final String versionTag;
+    private final Generation event = new Generation();
+    private final long start;
+
+    private Measurement(String output, String scopedir, String versionTag) {
+      this.output = output;
+      this.scopedir = scopedir;
+      this.versionTag = versionTag;
+      event.begin();
+      start = System.nanoTime();
+    }
+
+    private void done(String outcome) {
+      metrics.generation(output, outcome, start);
+      event.end();
+      if (event.shouldCommit()) {
+        event.scopedir = scopedir;
+        event.versionTag = versionTag;
+        event.output = output;
+        event.outcome = outcome;
+        event.commit();
+      }
+    }
+  }
+
+  private void writeFingerprints(GenerationSession session) {
+    MRGFingerprints fingerprints = session.incremental().fingerprints(session.plan().safSha());
+    if (fingerprints != null) {
+      wrangler.writeFingerprints(session.saf().getScope().getGlossarydir(), session.versionTag(), fingerprints);
+    }
+  }
+
+  private Terminology terminology(GenerationSession session) throws MRGGenerationException {
+    SAFModel saf = session.saf();
+    String versionTag = session.versionTag();
     String glossaryDir = saf.getScope().getGlossarydir();
     if (StringUtils.isEmpty(glossaryDir)) {
       throw new MRGGenerationException(NO_GLOSSARY_DIR);
     }
-    Version localVersion = getVersion(saf, versionTag);
+    Version localVersion =
+        session.plan().version(versionTag)
+            .orElseThrow(() -> new MRGGenerationException(String.format(NO_SUCH_VERSION, versionTag)));
     // construct the parts of the MRG Model
     log.info("Step 3/6: Creating the <terminology> section of the MRG");
     Terminology terminology =
         new Terminology(saf.getScope().getScopetag(), saf.getScope().getScopedir(), saf.getScope().getCuratedir(), versionTag);
     terminology.setLicense(saf.getScope().getLicense());
     terminology.setAltvsntags(localVersion.getAltvsntags());
-    List<ScopeRef> scopes = new ArrayList<>(saf.getScopes());
-    log.info("Step 4/6: Parsing local terms (terms in this scopedir) to create MRG entries:");
-    List<MRGEntry> entries =
-        currentTerms(contextMap.get(saf.getScope().getScopetag()), localVersion);
-    log.info("Step 5/6: Parsing remote terms (terms from the scopedirs in the scopes section) to create MRG entries:");
-    Set<Entry<String, GeneratorContext>> contextsByScopetag = this.contextMap.entrySet();
-    for (Entry<String, GeneratorContext> e : contextsByScopetag ) {
-      if (! e.getValue().getAddFilters().isEmpty()) {
-        entries = ListUtils.union(entries, remoteTerms(e.getKey(), e.getValue()));
+    return terminology;
+  }
+
+  /*
+   Hands the entries of the local scope and then of each remote scope, in contextMap order, to the
+   consumer as soon as that scope is done, less any duplicates the policy drops. Remote scopes still
+   being resolved are cancelled if the local parse, the merge or the consumer fails
+  */
+  private void produceEntries(GenerationSession session, Consumer<List<MRGEntry>> batches) {
+    EntryMerger merger = new EntryMerger(duplicatePolicy);
+    Map<String, RemoteTerms> remoteTermsByScopetag = submitRemoteTerms(session);
+    try {
+      log.info("Step 4/6: Parsing local terms (terms in this scopedir) to create MRG entries:");
+      String localScopetag = session.saf().getScope().getScopetag();
+      accept(batches, "local", merger.merge(localScopetag, currentTerms(session)));
+      log.info("Step 5/6: Parsing remote terms (terms from the scopedirs in the scopes section) to create MRG entries:");
+      for (Entry<String, RemoteTerms> e : remoteTermsByScopetag.entrySet()) {
+        long start = System.nanoTime();
+        List<MRGEntry> remoteEntries = awaitRemoteTerms(session, e.getKey(), e.getValue());
+        metrics.record(Stage.REMOTE_WAIT, start);
+        accept(batches, "remote", merger.merge(e.getKey(), remoteEntries));
       }
+      if (merger.duplicates() > 0) {
+        log.warn("{} duplicate terms found, handled with duplicate policy {}", merger.duplicates(), duplicatePolicy);
+      }
+    } catch (RuntimeException e) {
+      remoteTermsByScopetag.values().forEach(remoteTerms -> remoteTerms.entries().cancel(true));
+      throw e;
     }
-    MRGModel mrg = new MRGModel(terminology, scopes, entries);
-    String mrgFilename = wrangler.writeMrgToFile(mrg, saf.getScope().getGlossarydir(), versionTag);
-    log.info("Step 6/6: Written generated MRG to file: {}", mrgFilename);
-
-    return mrg;
   }
 
+  private void accept(Consumer<List<MRGEntry>> batches, String source, List<MRGEntry> batch) {
+    metrics.entries(source, batch.size());
+    batches.accept(batch);
+  }
 
+  /*
+   Times each batch as it is serialised to a file or stream; the model is only timed once it is
+   written to its file as a whole
+  */
+  private Consumer<List<MRGEntry>> written(Consumer<List<MRGEntry>> write) {
+    return batch -> metrics.time(Stage.WRITE, () -> {
+      write.accept(batch);
+      return null;
+    });
+  }
 }
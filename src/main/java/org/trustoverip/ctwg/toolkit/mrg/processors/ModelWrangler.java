@@ -1,39 +1,60 @@
 package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_CREATE_GLOSSARY_DIR;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_WRITE_MRG;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.NO_SAF;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_MRG;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGlossaryGenerator.DEFAULT_MRG_FILENAME;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.ALL_TAGS;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.LocalFSConnector;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.MRGConnector;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.TermFileScanner;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
 import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
 import org.trustoverip.ctwg.toolkit.mrg.model.Version;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationEvents.ConnectorCall;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationEvents.TermParse;
+import org.trustoverip.ctwg.toolkit.mrg.processors.GenerationMetrics.Stage;
 import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
 
 /**
@@ -46,8 +67,6 @@ import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
 @Service
 class ModelWrangler {
 
-  private static final String TERM_HORIZONTAL_RULE = "---";
-  private static final String MARKDOWN_HEADING = "#";
   private static final String HTTPS = "https://";
   private static final String TREE = "tree";
   private static final int OWNER_PART_INDEX = 1;
@@ -56,6 +75,7 @@ class ModelWrangler {
   private static final String GENERIC_FRONT_MATTER = "generic front-matter";
 
   private static final String GLOSSARY_VIRTUAL_PATH = "/glossaries";
+  private static final String FINGERPRINTS_SUFFIX = ".fingerprints.yaml";
 
   /*
     private static final Pattern TERM_EXPRESSION_MATCHER =
@@ -69,16 +89,84 @@ class ModelWrangler {
   private static final int MATCH_VALS_GROUP = 3;
   private static final int MATCH_SCOPETAG_GROUP = 4;
   private static final int MATCH_VERSION_GROUP = 5;
+  // upper bound on the heap used to keep parsed terms between generations (0 = don't cache)
+  private static final String TERM_CACHE_SIZE_MB = "mrg_term_cache_size_mb";
+  private static final int DEFAULT_TERM_CACHE_SIZE_MB = 64;
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+  // number of term files parsed at the same time (1 = one after another on the calling thread)
+  private static final String PARSE_PARALLELISM = "mrg_parse_parallelism";
+  private static final int CHUNKS_PER_WORKER = 4;
   private final YamlWrangler yamlWrangler;
-  @Getter @Setter private MRGConnector connector;
+  private final TermCache termCache =
+      new TermCache(
+          NumberUtils.toLong(System.getenv(TERM_CACHE_SIZE_MB), DEFAULT_TERM_CACHE_SIZE_MB)
+              * BYTES_PER_MB);
+  // the most recently used term indexes, keyed by owner/repo and curated dir
+  private static final int MAX_TERM_INDEXES = 16;
+  private final Map<String, TermIndex> termIndexes =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(MAX_TERM_INDEXES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TermIndex> eldest) {
+              return size() > MAX_TERM_INDEXES;
+            }
+          });
+  // the most recently used generation plans, keyed by scopedir and SAF filename
+  private static final int MAX_PLANS = 16;
+  private final Map<String, GenerationPlan> plans =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(MAX_PLANS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, GenerationPlan> eldest) {
+              return size() > MAX_PLANS;
+            }
+          });
+  // fixed for the life of the wrangler so it can be shared by simultaneous generations
+  @Getter private final MRGConnector connector;
 
-  @Setter(AccessLevel.NONE) // as we derive this from what type of connector has been passed
-  private boolean local;
+  // as we derive this from what type of connector has been passed
+  private final boolean local;
+  // null when term files are parsed sequentially
+  private final ForkJoinPool parsePool;
+  private final GenerationMetrics metrics = GenerationMetrics.global();
 
+  @Autowired
   ModelWrangler(YamlWrangler yamlWrangler, MRGConnector connector) {
+    this(
+        yamlWrangler,
+        connector,
+        NumberUtils.toInt(System.getenv(PARSE_PARALLELISM), Runtime.getRuntime().availableProcessors()));
+  }
+
+  ModelWrangler(YamlWrangler yamlWrangler, MRGConnector connector, int parseParallelism) {
+    this(yamlWrangler, connector, (parseParallelism > 1) ? parsePool(parseParallelism) : null);
+  }
+
+  private ModelWrangler(YamlWrangler yamlWrangler, MRGConnector connector, ForkJoinPool parsePool) {
     this.yamlWrangler = yamlWrangler;
     this.connector = connector;
+    this.parsePool = parsePool;
     local = (connector instanceof LocalFSConnector);
+    metrics.termCache(termCache);
+  }
+
+  /*
+   Same parsing and caching set-up but reading through a different connector
+  */
+  ModelWrangler withConnector(MRGConnector otherConnector) {
+    return new ModelWrangler(yamlWrangler, otherConnector, parsePool);
+  }
+
+  private static ForkJoinPool parsePool(int parallelism) {
+    return new ForkJoinPool(
+        parallelism,
+        pool -> {
+          ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          worker.setName("mrg-parse-" + worker.getPoolIndex());
+          return worker;
+        },
+        null,
+        false);
   }
 
   SAFModel getSaf(String scopedir, String safFilename) throws MRGGenerationException {
@@ -89,12 +177,41 @@ class ModelWrangler {
     return yamlWrangler.parseSaf(safAsString);
   }
 
+  /**
+   * The SAF is still read on every call but it is only parsed and compiled when its content differs
+   * from the last time the same scopedir and SAF were planned.
+   *
+   * @return the SAF of the scopedir compiled into a plan shared by every caller
+   */
+  GenerationPlan plan(String scopedir, String safFilename) throws MRGGenerationException {
+    long start = System.nanoTime();
+    String safAsString = this.getSafAsString(scopedir, safFilename);
+    metrics.record(Stage.SAF_FETCH, start);
+    if (null == safAsString) {
+      throw new MRGGenerationException(String.format(NO_SAF, scopedir));
+    }
+    String safSha = FileContent.blobSha(safAsString);
+    String key = String.join("/", scopedir, String.valueOf(safFilename));
+    GenerationPlan plan = plans.get(key);
+    if (plan != null && plan.safSha().equals(safSha)) {
+      return plan;
+    }
+    start = System.nanoTime();
+    SAFModel saf = yamlWrangler.parseSaf(safAsString);
+    metrics.record(Stage.SAF_PARSE, start);
+    start = System.nanoTime();
+    plan = new GenerationPlan(safSha, saf, version -> buildContextMap(scopedir, saf, version));
+    metrics.record(Stage.CONTEXT, start);
+    plans.put(key, plan);
+    return plan;
+  }
+
   String getSafAsString(String scopedir, String safFilename) throws MRGGenerationException {
     String ownerRepo = getOwnerRepo(scopedir);
     String saf = (null == safFilename) ? MRGlossaryGenerator.DEFAULT_SAF_FILENAME : safFilename;
     String safFilepath = String.join("/", getRootPath(scopedir), saf);
     try {
-      return connector.getContent(ownerRepo, safFilepath);
+      return content(ownerRepo, safFilepath);
     } catch (Exception e) {
       throw new MRGGenerationException(
         String.format(MRGGenerationException.NOT_FOUND, String.join("/", scopedir, safFilename)),
@@ -113,21 +230,31 @@ class ModelWrangler {
    *     value holding the key directory locations and filters for each of the scopes
    */
   Map<String, GeneratorContext> buildContextMap(String scopedir, SAFModel saf, String versionTag) {
-    Map<String, GeneratorContext> contextMap = new HashMap<>();
+    Optional<Version> optionalVersion = saf.getVersions().stream().filter(v -> v.getVsntag().equals(versionTag)).findFirst();
+    Map<String, GeneratorContext> contextMap = buildContextMap(scopedir, saf, optionalVersion.orElse(null));
+    // the local scope keeps the requested version even when the SAF doesn't have it
+    contextMap.get(saf.getScope().getScopetag()).setVersionTag(versionTag);
+    return contextMap;
+  }
+
+  /*
+   Same as above for a version already looked up; null when the SAF has no such version
+  */
+  Map<String, GeneratorContext> buildContextMap(String scopedir, SAFModel saf, Version versionOfInterest) {
+    String versionTag = (null == versionOfInterest) ? null : versionOfInterest.getVsntag();
+    // keeps the SAF order, which is the order scopes are merged into the MRG
+    Map<String, GeneratorContext> contextMap = new LinkedHashMap<>();
     // create context for local scope
     String localScope = saf.getScope().getScopetag();
     GeneratorContext localContext = createSkeletonContext(scopedir, saf.getScope().getCuratedir(), versionTag);
     localContext.setScopetag(localScope);
     contextMap.put(localScope, localContext);
-    // get local version we are building MRG for
-    Optional<Version> optionalVersion = saf.getVersions().stream().filter(v -> v.getVsntag().equals(versionTag)).findFirst();
     // will contain the versions for each of the remote scopes
     Map<String, String> versionsByScopetag = new HashMap<>();
     // will contain the filters (term selection criteria) for each of the remote scopes
     Map<String, List<Predicate<Term>>> addFiltersByScopetag = new HashMap<>();
     Map<String, List<Predicate<Term>>> removeFiltersByScopetag = new HashMap<>();
-    if (optionalVersion.isPresent()) {
-      Version versionOfInterest = optionalVersion.get();
+    if (versionOfInterest != null) {
       List<String> termExpressions = versionOfInterest.getTermselcrit();
       for (String expression : termExpressions) {
         Matcher m = TERM_EXPRESSION_MATCHER.matcher(expression);
@@ -210,34 +337,139 @@ class ModelWrangler {
    [grouptag]@scopetag:version
   */
 
+  /*
+   The remote MRG is streamed from the connector and only the entries accepted by the filter are kept,
+   so importing a few terms from a large glossary doesn't mean holding all of it
+  */
   MRGModel getMrg(
-    GeneratorContext context, String glossaryDir, List<String> alternativeVersionTags) {
+    GeneratorContext context,
+    String glossaryDir,
+    List<String> alternativeVersionTags,
+    Predicate<? super MRGEntry> entryFilter) {
       String mrgPath = constructMrgFilepath(glossaryDir, context.getVersionTag());
-      String mrgAsYaml = connector.getContent(context.getOwnerRepo(), mrgPath);
-      int indexToAlts = 0;
+      InputStream mrgStream = contentAsStream(context.getOwnerRepo(), mrgPath);
       // if no match and alternative version tags exist then try them
-      if (null == mrgAsYaml && alternativeVersionTags != null) {
+      if (null == mrgStream && alternativeVersionTags != null) {
         for (String nextAlternative : alternativeVersionTags) {
           mrgPath = constructMrgFilepath(glossaryDir, nextAlternative);
-          mrgAsYaml = connector.getContent(context.getOwnerRepo(), mrgPath);
+          mrgStream = contentAsStream(context.getOwnerRepo(), mrgPath);
+          if (mrgStream != null) {
+            break;
+          }
         }
       }
-      return (null == mrgAsYaml) ? null : yamlWrangler.parseMrg(mrgAsYaml);
+      if (null == mrgStream) {
+        return null;
+      }
+      try (InputStream in = mrgStream) {
+        return yamlWrangler.parseMrg(in, entryFilter);
+      } catch (IOException e) {
+        throw new MRGGenerationException(UNABLE_TO_PARSE_MRG, e);
+      }
     }
 
     String writeMrgToFile(MRGModel mrg, String glossaryDir, String versionTag)
     throws MRGGenerationException {
-      String pathStr = constructMrgFilepath(GLOSSARY_VIRTUAL_PATH, versionTag);
-      log.debug(String.format("MRG filename to be generated is: %s", pathStr)); // TODO The expression inside debug will be computed even if the log level is not high enough for the message to be logged. This will slow the application down in vain. Consider checking the log level before evaluating the expression.
+      Path mrgFilepath = mrgFilepath(glossaryDir, versionTag);
+      deleteFingerprints(mrgFilepath);
+      yamlWrangler.writeMrg(mrgFilepath, mrg);
+      return mrgFilepath.toString();
+    }
+
+    /*
+     Entries are handed to the writer as they are produced so the whole MRG is never held in memory
+    */
+    String writeMrgToFile(
+        String glossaryDir,
+        String versionTag,
+        Terminology terminology,
+        List<ScopeRef> scopes,
+        Consumer<MRGStreamWriter> entries)
+    throws MRGGenerationException {
+      Path mrgFilepath = mrgFilepath(glossaryDir, versionTag);
+      deleteFingerprints(mrgFilepath);
+      yamlWrangler.writeMrg(mrgFilepath, terminology, scopes, entries);
+      return mrgFilepath.toString();
+    }
+
+    MRGStreamWriter openMrg(OutputStream out, Terminology terminology, List<ScopeRef> scopes)
+    throws MRGGenerationException {
+      return yamlWrangler.openMrg(out, terminology, scopes);
+    }
+
+    private Path mrgFilepath(String glossaryDir, String versionTag) throws MRGGenerationException {
+      Path mrgFile = mrgFile(glossaryDir, versionTag);
+      log.debug("MRG filename to be generated is: {}", mrgFile);
       Path glossaryPath = Paths.get(glossaryDir);
       try {
         Files.createDirectories(glossaryPath);
       } catch (IOException ioe) {
         throw new MRGGenerationException(String.format(CANNOT_CREATE_GLOSSARY_DIR, glossaryPath.toAbsolutePath()));
       }
-      Path mrgFilepath = Path.of(pathStr);
-      yamlWrangler.writeMrg(mrgFilepath, mrg);
-      return mrgFilepath.toString();
+      return mrgFile;
+    }
+
+    /*
+     Where the MRG of the version is written, whether or not it has been yet
+    */
+    Path mrgFile(String glossaryDir, String versionTag) {
+      return Path.of(constructMrgFilepath(GLOSSARY_VIRTUAL_PATH, versionTag));
+    }
+
+    /**
+     * @return the MRG previously generated for the version with the fingerprints written next to it,
+     *     when both can be read and the MRG was generated from the same SAF; otherwise a run that
+     *     generates everything
+     */
+    IncrementalRun previousRun(String glossaryDir, String versionTag, String safSha) {
+      Path mrgFile = mrgFile(glossaryDir, versionTag);
+      Path fingerprintsFile = fingerprintsFile(mrgFile);
+      if (!Files.isRegularFile(mrgFile) || !Files.isRegularFile(fingerprintsFile)) {
+        log.info("No previous MRG with fingerprints at {} so generating all of it", mrgFile);
+        return IncrementalRun.fresh();
+      }
+      try {
+        MRGFingerprints fingerprints = yamlWrangler.readFingerprints(fingerprintsFile);
+        if (!safSha.equals(fingerprints.safSha())) {
+          log.info("The SAF has changed since {} was generated so generating all of it", mrgFile);
+          return IncrementalRun.fresh();
+        }
+        try (InputStream in = Files.newInputStream(mrgFile)) {
+          return IncrementalRun.from(fingerprints, yamlWrangler.parseMrg(in));
+        }
+      } catch (IOException | MRGGenerationException e) {
+        log.warn("Could not read the previous MRG at {} so generating all of it: {}", mrgFile, e.getMessage());
+        return IncrementalRun.fresh();
+      }
+    }
+
+    /*
+     Failing to write the fingerprints only means the next generation can't be incremental
+    */
+    void writeFingerprints(String glossaryDir, String versionTag, MRGFingerprints fingerprints) {
+      Path fingerprintsFile = fingerprintsFile(mrgFile(glossaryDir, versionTag));
+      try {
+        yamlWrangler.writeFingerprints(fingerprintsFile, fingerprints);
+      } catch (MRGGenerationException e) {
+        log.warn(e.getMessage());
+      }
+    }
+
+    /*
+     Fingerprints describe the MRG they were written with, so they go as soon as it is replaced
+    */
+    private void deleteFingerprints(Path mrgFile) throws MRGGenerationException {
+      Path fingerprintsFile = fingerprintsFile(mrgFile);
+      try {
+        Files.deleteIfExists(fingerprintsFile);
+      } catch (IOException e) {
+        throw new MRGGenerationException(String.format(CANNOT_WRITE_MRG, fingerprintsFile.toAbsolutePath()), e);
+      }
+    }
+
+    private static Path fingerprintsFile(Path mrgFile) {
+      String mrgFilename = mrgFile.getFileName().toString();
+      return mrgFile.resolveSibling(StringUtils.removeEnd(mrgFilename, ".yaml") + FINGERPRINTS_SUFFIX);
     }
 
   List<Term> fetchTerms(
@@ -245,107 +477,379 @@ class ModelWrangler {
     List<Predicate<Term>> addFilters,
     List<Predicate<Term>> removeFilters
   ) {
-    Predicate<Term> consolidatedAddFilter = consolidateAdd(addFilters);
-    Predicate<Term> consolidateRemoveFilter = consolidateRemove(removeFilters);
-    List<Term> terms = new ArrayList<>();
+    Predicate<Term> selected = CompiledTermsFilter.compile(addFilters, removeFilters);
+    String ownerRepo = currentContext.getOwnerRepo();
     String curatedPath = String.join("/", currentContext.getSafDirectory(), currentContext.getCuratedDir());
-    List<FileContent> directoryContent = connector.getDirectoryContent(currentContext.getOwnerRepo(), curatedPath);
-    if (!directoryContent.isEmpty()) {
-      terms =
-          directoryContent.stream()
-              .map(this::cleanTermFile)
-              .map(this::toYaml)
-              .filter(Objects::nonNull)
-              .map(
-                  t -> {
-                    t.setScopetag(currentContext.getScopetag());
-                    t.setVsntag(currentContext.getVersionTag());
-                    return t;
-                  })
-              .filter(consolidatedAddFilter)
-              .filter(consolidateRemoveFilter)
-              .collect(Collectors.toList());
+    Set<String> termIds = selectedTermIds(addFilters);
+    Set<String> seenTermIds = new HashSet<>();
+    Map<String, Term> termsByFilename = new LinkedHashMap<>();
+    if (!termIds.isEmpty()) {
+      // only fetch the files named after the selected terms...
+      Set<String> filenameStems = termIds.stream().map(id -> id.replace(' ', '-')).collect(Collectors.toSet());
+      Predicate<String> namedAfterTerm = filename -> filenameStems.contains(filenameStem(filename));
+      selectTerms(currentContext, frontMatter(ownerRepo, curatedPath, namedAfterTerm, true), selected, seenTermIds, termsByFilename);
+      // ...unless a term lives in a file with a different name, in which case look in the rest too
+      if (!seenTermIds.containsAll(termIds)) {
+        log.debug("Not every selected term has a file named after it so fetching the rest of {}", curatedPath);
+        selectTerms(currentContext, frontMatter(ownerRepo, curatedPath, namedAfterTerm.negate(), true), selected, seenTermIds, termsByFilename);
+      }
+    } else if (selectsEverything(addFilters, removeFilters)) {
+      selectTerms(currentContext, frontMatter(ownerRepo, curatedPath, filename -> true, true), selected, seenTermIds, termsByFilename);
+    } else {
+      // every file is read once, with its headings, and the headings are only scanned for kept terms
+      List<FileContent> curatedDir = frontMatter(ownerRepo, curatedPath, filename -> true, true);
+      TermIndex index = termIndex(currentContext, ownerRepo + "/" + curatedPath, curatedDir);
+      long start = System.nanoTime();
+      BitSet selection = index.select(addFilters, removeFilters);
+      metrics.record(Stage.LOCAL_FILTER, start);
+      for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+        Term term = new Term(index.term(i));
+        term.setScopetag(currentContext.getScopetag());
+        term.setVsntag(currentContext.getVersionTag());
+        termsByFilename.put(index.filename(i), term);
+      }
+      for (FileContent fileContent : curatedDir) {
+        Term term = termsByFilename.get(fileContent.filename());
+        if (term != null) {
+          term.addHeadings(bodyHeadings(fileContent));
+        }
+      }
+    }
+    List<Term> terms = new ArrayList<>(termsByFilename.values());
+    if (log.isDebugEnabled()) {
+      TermCache.Stats stats = termCache.stats();
+      log.debug("Term cache: hit ratio {}, {} terms, ~{} bytes", stats.hitRatio(), stats.entries(), stats.bytesHeld());
     }
     return terms;
   }
 
-  private Predicate<Term> consolidateAdd(List<Predicate<Term>> addFilters) {
-    if (null == addFilters || addFilters.isEmpty()) {
-      return TermsFilter.all();
-    } else {
-      return addFilters.stream().reduce(Predicate::or).get();
-      // TODO check if this is a better return statement.
-      // Optional<Predicate<Term>> optionalPredicate = addFilters.stream().reduce(Predicate::or);
-      // return optionalPredicate.isPresent() ? optionalPredicate.get() : TermsFilter.all();
+  /*
+   Only the named term files are read, for when the rest are known not to have changed
+  */
+  List<Term> fetchTerms(
+    GeneratorContext currentContext,
+    List<Predicate<Term>> addFilters,
+    List<Predicate<Term>> removeFilters,
+    Set<String> filenames
+  ) {
+    String curatedPath = String.join("/", currentContext.getSafDirectory(), currentContext.getCuratedDir());
+    Map<String, Term> termsByFilename = new LinkedHashMap<>();
+    selectTerms(
+      currentContext,
+      frontMatter(currentContext.getOwnerRepo(), curatedPath, filenames::contains, true),
+      CompiledTermsFilter.compile(addFilters, removeFilters),
+      new HashSet<>(),
+      termsByFilename);
+    return new ArrayList<>(termsByFilename.values());
+  }
+
+  private List<FileContent> frontMatter(
+    String ownerRepo, String curatedPath, Predicate<String> filenameFilter, boolean withHeadings) {
+    long start = System.nanoTime();
+    ConnectorCall event = ConnectorCall.start(connector, "getDirectoryFrontMatter", ownerRepo, curatedPath);
+    List<FileContent> frontMatter = List.of();
+    try {
+      frontMatter = connector.getDirectoryFrontMatter(ownerRepo, curatedPath, filenameFilter, withHeadings);
+      return frontMatter;
+    } finally {
+      event.done(frontMatter);
+      metrics.record(Stage.LOCAL_FETCH, start);
     }
   }
 
-  private Predicate<Term> consolidateRemove(List<Predicate<Term>> removeFilters) {
-    if (null == removeFilters || removeFilters.isEmpty()) {
-      return TermsFilter.all();
-    } else {
-      return removeFilters.stream().reduce(Predicate::and).get().negate();
-      // TODO check if this is a better statement.
-      // Optional<Predicate<Term>> optionalPredicate = removeFilters.stream().reduce(Predicate::and);
-      // return optionalPredicate.isPresent() ? optionalPredicate.get().negate() : TermsFilter.all();
-    }
-  }
-
-  private FileContent cleanTermFile(FileContent dirtyContent) {
-    StringBuilder cleanYaml = new StringBuilder();
-    String[] parts = dirtyContent.content().split("---");
-    String partWithYaml = parts[1];
-    String[] restOfFile = parts[2].split("\n");
-    String[] lines = partWithYaml.split("\n");
-    List<String> headings = new ArrayList<>();
-    for (String line : lines) {
-      if (isClean(line)) {
-        log.debug("Found something of interest in file: {}\nline: {}", dirtyContent.filename(), line);
-        cleanYaml.append(line);
-        cleanYaml.append("\n");
+  private String content(String ownerRepo, String path) {
+    ConnectorCall event = ConnectorCall.start(connector, "getContent", ownerRepo, path);
+    String content = null;
+    try {
+      content = connector.getContent(ownerRepo, path);
+      return content;
+    } finally {
+      event.done((null == content) ? 0 : 1, (null == content) ? 0 : content.length());
+    }
+  }
+
+  private InputStream contentAsStream(String ownerRepo, String path) {
+    ConnectorCall event = ConnectorCall.start(connector, "getContentAsStream", ownerRepo, path);
+    InputStream in = null;
+    try {
+      in = connector.getContentAsStream(ownerRepo, path);
+    } finally {
+      if (null == in) {
+        event.done(0, 0);
+      }
+    }
+    return (null == in) ? null : event.doneOnClose(in);
+  }
+
+  /**
+   * @return the fingerprint of every file in the curated dir keyed by filename, in the order the
+   *     terms are fetched
+   */
+  Map<String, String> termFileFingerprints(GeneratorContext currentContext) {
+    String curatedPath = String.join("/", currentContext.getSafDirectory(), currentContext.getCuratedDir());
+    ConnectorCall event =
+      ConnectorCall.start(connector, "getDirectoryFingerprints", currentContext.getOwnerRepo(), curatedPath);
+    Map<String, String> fingerprints = Map.of();
+    try {
+      fingerprints = connector.getDirectoryFingerprints(currentContext.getOwnerRepo(), curatedPath);
+      return fingerprints;
+    } finally {
+      event.done(fingerprints.size(), 0);
+    }
+  }
+
+  /**
+   * @return the path and fingerprint of the remote MRG {@link #getMrg} would read, or null when
+   *     there isn't one
+   */
+  String mrgFingerprint(GeneratorContext context, String glossaryDir, List<String> alternativeVersionTags) {
+    List<String> versionTags = new ArrayList<>();
+    versionTags.add(context.getVersionTag());
+    if (alternativeVersionTags != null) {
+      versionTags.addAll(alternativeVersionTags);
+    }
+    for (String versionTag : versionTags) {
+      String mrgPath = constructMrgFilepath(glossaryDir, versionTag);
+      ConnectorCall event = ConnectorCall.start(connector, "getFingerprint", context.getOwnerRepo(), mrgPath);
+      String fingerprint = null;
+      try {
+        fingerprint = connector.getFingerprint(context.getOwnerRepo(), mrgPath);
+      } finally {
+        event.done((null == fingerprint) ? 0 : 1, 0);
+      }
+      if (fingerprint != null) {
+        return String.join(":", mrgPath, fingerprint);
+      }
+    }
+    return null;
+  }
+
+  /*
+   The index of a curated dir is kept while the dir is unchanged, so generating another version of
+   the same scope selects from it straight away rather than parsing and indexing every term again
+  */
+  private TermIndex termIndex(GeneratorContext currentContext, String curatedDirKey, List<FileContent> frontMatter) {
+    List<String> fingerprint = new ArrayList<>(frontMatter.size());
+    for (FileContent fc : frontMatter) {
+      fingerprint.add(fc.filename() + ":" + fc.contentSha());
+    }
+    TermIndex index = termIndexes.get(curatedDirKey);
+    if (index != null && index.fingerprint().equals(fingerprint)) {
+      log.debug("Reusing the term index of {}", curatedDirKey);
+      return index;
+    }
+    // nothing is selected at this point, every term that parses goes in the index
+    List<Selection> selections = selections(currentContext, frontMatter, term -> false);
+    Map<String, Term> parsed = new LinkedHashMap<>();
+    for (int i = 0; i < selections.size(); i++) {
+      if (selections.get(i) != null) {
+        parsed.put(frontMatter.get(i).filename(), selections.get(i).term());
+      }
+    }
+    index = new TermIndex(fingerprint, parsed);
+    termIndexes.put(curatedDirKey, index);
+    return index;
+  }
+
+  /*
+   Selection is decided on the front matter alone; the rest of the file is only scanned for headings
+   once a term is known to be kept
+  */
+  private void selectTerms(
+    GeneratorContext currentContext,
+    List<FileContent> directoryContent,
+    Predicate<Term> selected,
+    Set<String> seenTermIds,
+    Map<String, Term> termsByFilename
+  ) {
+    List<Selection> selections = selections(currentContext, directoryContent, selected);
+    // merged in directory order so the output doesn't depend on which file was parsed first
+    for (int i = 0; i < selections.size(); i++) {
+      Selection selection = selections.get(i);
+      if (null == selection) {
+        continue;
+      }
+      seenTermIds.add(normaliseTermId(selection.term().getTerm()));
+      if (selection.selected()) {
+        termsByFilename.put(directoryContent.get(i).filename(), selection.term());
+      }
+    }
+  }
+
+  /*
+   Files are handed to the pool in contiguous chunks and the chunks are collected in order
+  */
+  private List<Selection> selectInParallel(
+    GeneratorContext currentContext,
+    List<FileContent> directoryContent,
+    Predicate<Term> selected
+  ) {
+    int chunks = parsePool.getParallelism() * CHUNKS_PER_WORKER;
+    int chunkSize = Math.max(1, (directoryContent.size() + chunks - 1) / chunks);
+    List<Callable<List<Selection>>> tasks = new ArrayList<>();
+    for (int from = 0; from < directoryContent.size(); from += chunkSize) {
+      List<FileContent> chunk = directoryContent.subList(from, Math.min(from + chunkSize, directoryContent.size()));
+      tasks.add(() -> chunk.stream().map(fc -> select(currentContext, fc, selected)).collect(Collectors.toList()));
+    }
+    List<Selection> selections = new ArrayList<>(directoryContent.size());
+    try {
+      for (Future<List<Selection>> f : parsePool.invokeAll(tasks)) {
+        selections.addAll(f.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MRGGenerationException("Interrupted whilst parsing term files", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new MRGGenerationException("Couldn't parse term files", e.getCause());
+    }
+    return selections;
+  }
+
+  private List<Selection> selections(
+    GeneratorContext currentContext, List<FileContent> directoryContent, Predicate<Term> selected) {
+    return (null == parsePool || directoryContent.size() < 2)
+      ? directoryContent.stream().map(fc -> select(currentContext, fc, selected)).collect(Collectors.toList())
+      : selectInParallel(currentContext, directoryContent, selected);
+  }
+
+  /*
+   A file that can't be parsed is left out (null) rather than failing the whole generation
+  */
+  private Selection select(GeneratorContext currentContext, FileContent fileContent, Predicate<Term> selected) {
+    Term term;
+    try {
+      term = toTerm(fileContent);
+    } catch (RuntimeException e) {
+      metrics.termFileSkipped();
+      log.warn("Skipping term file {}: {}", fileContent.filename(), e.getMessage());
+      log.debug("Term file {} could not be parsed", fileContent.filename(), e);
+      return null;
+    }
+    term.setScopetag(currentContext.getScopetag());
+    term.setVsntag(currentContext.getVersionTag());
+    long start = System.nanoTime();
+    boolean isSelected = selected.test(term);
+    metrics.record(Stage.LOCAL_FILTER, start);
+    if (isSelected) {
+      term.addHeadings(bodyHeadings(fileContent));
+    }
+    return new Selection(term, isSelected);
+  }
+
+  private record Selection(Term term, boolean selected) {}
+
+  /*
+   Nothing to choose between so every file can be read with its headings in one go
+  */
+  private boolean selectsEverything(List<Predicate<Term>> addFilters, List<Predicate<Term>> removeFilters) {
+    boolean addsAll = null == addFilters || addFilters.isEmpty()
+      || addFilters.stream().anyMatch(f -> f instanceof TermsFilter tf && tf.getFilterType() == TermsFilterType.all);
+    return addsAll && (null == removeFilters || removeFilters.isEmpty());
+  }
+
+  /*
+   When every add filter selects by term id the ids tell us which files to fetch. Any other filter
+   (or none) can match any file so the result is empty, meaning fetch everything
+  */
+  private Set<String> selectedTermIds(List<Predicate<Term>> addFilters) {
+    Set<String> termIds = new HashSet<>();
+    if (null == addFilters) {
+      return termIds;
+    }
+    for (Predicate<Term> filter : addFilters) {
+      if (filter instanceof TermsFilter tf && tf.getFilterType() == TermsFilterType.terms) {
+        termIds.addAll(tf.getNormalisedValues());
       } else {
-        if (line.startsWith(MARKDOWN_HEADING)) {
-          headings.add(line);
-        }
+        return new HashSet<>();
       }
     }
-    // extract headings from rest of file
-    for (String line : restOfFile) {
-      if (line.startsWith(MARKDOWN_HEADING)) {
-        headings.add(line);
+    return termIds;
+  }
+
+  private static String filenameStem(String filename) {
+    String name = filename.substring(filename.lastIndexOf('/') + 1);
+    int extension = name.lastIndexOf('.');
+    return normaliseTermId((extension == -1) ? name : name.substring(0, extension));
+  }
+
+  static String normaliseTermId(String termId) {
+    return StringUtils.lowerCase(StringUtils.trim(termId), Locale.ROOT);
+  }
+
+  TermCache.Stats termCacheStats() {
+    return termCache.stats();
+  }
+
+  /*
+   Unchanged term files are served from the cache; the location-specific fields are always taken from
+   the file we were given as identical content can live in more than one place
+  */
+  private Term toTerm(FileContent fileContent) {
+    TermParse event = new TermParse();
+    event.begin();
+    Term term;
+    try {
+      term = termCache.get(fileContent, this::cleanFrontMatter, cleaned -> {
+        event.cached = false;
+        return toYaml(cleaned);
+      });
+    } catch (RuntimeException e) {
+      event.skipped = true;
+      throw e;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.filename = fileContent.filename();
+        event.bytes = (null == fileContent.content()) ? 0 : fileContent.content().length();
+        event.commit();
       }
     }
+    term.setFilename(fileContent.filename());
+    term.setNavurl(fileContent.htmlLink());
+    return term;
+  }
+
+
+
+  private FileContent cleanFrontMatter(FileContent dirtyContent) {
+    long start = System.nanoTime();
+    TermFileScanner.FrontMatter frontMatter = TermFileScanner.frontMatter(dirtyContent.content());
+    metrics.record(Stage.LOCAL_CLEAN, start);
     return new FileContent(
-        dirtyContent.filename(), cleanYaml.toString(), dirtyContent.htmlLink(), headings);
+        dirtyContent.filename(), frontMatter.yaml(), dirtyContent.htmlLink(), frontMatter.headings());
+  }
+
+  /*
+   Headings from the rest of file, i.e. after the front matter
+  */
+  private List<String> bodyHeadings(FileContent dirtyContent) {
+    return TermFileScanner.bodyHeadings(dirtyContent.content());
   }
 
   private Term toYaml(FileContent fileContent) {
     Term term = null;
+    long start = System.nanoTime();
     try {
       term = yamlWrangler.parseTerm(fileContent.content());
       term.setFilename(fileContent.filename());
       term.setHeadings(fileContent.headings());
       term.setNavurl(fileContent.htmlLink());
-      log.info("... Creating entry from term with id = {} ...", term.getTerm());
+      log.debug("... Creating entry from term with id = {} ...", term.getTerm());
     } catch (Exception e) {
-      log.info("exception:", e);
       throw new MRGGenerationException(
-        String.format("Couldn't read or parse the following term file: ", fileContent.filename()),
+        String.format("Couldn't read or parse the following term file: %s", fileContent.filename()),
         e
       );
+    } finally {
+      metrics.record(Stage.LOCAL_PARSE, start);
     }
+    metrics.termFileParsed();
     return term;
   }
 
-  /*
-    Used to filter out headings and other human-style clutter
-  */
-  private boolean isClean(String line) {
-    return !StringUtils.isEmpty(line)
-      && !line.startsWith(TERM_HORIZONTAL_RULE)
-      && !line.startsWith(MARKDOWN_HEADING);
-  }
-
   private GeneratorContext createSkeletonContext(String scopedir, String curatedDir, String versionTag) {
     String ownerRepo = getOwnerRepo(scopedir);
     String rootPath = getRootPath(scopedir);
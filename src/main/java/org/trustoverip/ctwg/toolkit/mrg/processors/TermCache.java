@@ -0,0 +1,111 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * Holds parsed terms keyed by the Git blob SHA of the term file they were parsed from, so a file that
+ * hasn't changed since an earlier generation is not cleaned and parsed again. When a connector
+ * doesn't supply the SHA it is computed from the content in the same way Git does.
+ *
+ * <p>The cache is bounded by an approximate number of bytes and evicts the least recently used
+ * terms first. Callers always get their own copy of a cached term.
+ *
+ * @author sih
+ */
+final class TermCache {
+
+  // rough allowance for the Term object, its fields and the map entry on top of the character data
+  private static final int ENTRY_OVERHEAD_BYTES = 512;
+
+  private final long maxBytes;
+  private final Map<String, Cached> terms = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytesHeld;
+  private long hits;
+  private long misses;
+
+  TermCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @param fileContent the raw term file
+   * @param cleaner extracts the front matter; only called when the content isn't cached
+   * @param parser turns cleaned content into a term; only called when the content isn't cached
+   * @return a copy of the parsed term that the caller is free to change
+   */
+  Term get(
+      FileContent fileContent,
+      Function<FileContent, FileContent> cleaner,
+      Function<FileContent, Term> parser) {
+    if (maxBytes <= 0) {
+      return parser.apply(cleaner.apply(fileContent));
+    }
+    String key = fileContent.contentSha();
+    Cached cached;
+    synchronized (this) {
+      cached = terms.get(key);
+      if (cached != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    if (cached != null) {
+      return new Term(cached.term());
+    }
+    // clean and parse outside the lock
+    FileContent cleaned = cleaner.apply(fileContent);
+    Term parsed = parser.apply(cleaned);
+    put(key, new Cached(new Term(parsed), estimateBytes(cleaned)));
+    return parsed;
+  }
+
+  synchronized Stats stats() {
+    return new Stats(hits, misses, terms.size(), bytesHeld);
+  }
+
+  private synchronized void put(String key, Cached cached) {
+    if (cached.bytes() > maxBytes) {
+      return;
+    }
+    Cached previous = terms.put(key, cached);
+    bytesHeld += cached.bytes() - ((null == previous) ? 0 : previous.bytes());
+    Iterator<Cached> lru = terms.values().iterator();
+    while (bytesHeld > maxBytes && lru.hasNext()) {
+      bytesHeld -= lru.next().bytes();
+      lru.remove();
+    }
+  }
+
+  /*
+   The parsed term holds roughly the same characters as the cleaned front matter and headings
+  */
+  private static long estimateBytes(FileContent cleaned) {
+    long chars = cleaned.content().length();
+    for (String heading : cleaned.headings()) {
+      chars += heading.length();
+    }
+    return ENTRY_OVERHEAD_BYTES + 2 * chars;
+  }
+
+  /**
+   * @param hits lookups answered from the cache
+   * @param misses lookups that had to clean and parse the term file
+   * @param entries number of terms currently held
+   * @param bytesHeld approximate heap used by the terms currently held
+   */
+  record Stats(long hits, long misses, int entries, long bytesHeld) {
+
+    double hitRatio() {
+      long lookups = hits + misses;
+      return (lookups == 0) ? 0.0 : (double) hits / lookups;
+    }
+  }
+
+  private record Cached(Term term, long bytes) {}
+}
@@ -0,0 +1,131 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * The terms of a curated dir numbered in directory order, with an inverted index from each
+ * normalised term id and grouptag to the numbers of the terms that have it. Term selection criteria
+ * are then evaluated as set operations on {@link BitSet}s: the add filters are a union, the remove
+ * filters an intersection and the selection is the difference of the two. This gives the same terms
+ * as {@link CompiledTermsFilter} without testing every term against the criteria.
+ *
+ * <p>The index only depends on the content of the curated dir, not on the version being generated,
+ * so it is built once and reused for as long as the dir is unchanged, see {@link #fingerprint()}.
+ * Its terms are templates that must be copied before they are changed.
+ *
+ * @author sih
+ */
+final class TermIndex {
+
+  private final List<String> fingerprint;
+  private final List<String> filenames;
+  private final List<Term> terms;
+  private final Map<String, BitSet> byTermId = new HashMap<>();
+  private final Map<String, BitSet> byGrouptag = new HashMap<>();
+
+  /**
+   * @param fingerprint identifies the content the index was built from
+   * @param termsByFilename the parsed terms, in directory order
+   */
+  TermIndex(List<String> fingerprint, Map<String, Term> termsByFilename) {
+    this.fingerprint = List.copyOf(fingerprint);
+    this.filenames = new ArrayList<>(termsByFilename.keySet());
+    this.terms = new ArrayList<>(termsByFilename.values());
+    for (int i = 0; i < terms.size(); i++) {
+      Term term = terms.get(i);
+      String termId = ModelWrangler.normaliseTermId(term.getTerm());
+      if (termId != null) {
+        byTermId.computeIfAbsent(termId, k -> new BitSet()).set(i);
+      }
+      for (String grouptag : TermsFilter.splitAndNormalise(term.getGrouptags())) {
+        byGrouptag.computeIfAbsent(grouptag, k -> new BitSet()).set(i);
+      }
+    }
+  }
+
+  List<String> fingerprint() {
+    return fingerprint;
+  }
+
+  int size() {
+    return terms.size();
+  }
+
+  String filename(int termNumber) {
+    return filenames.get(termNumber);
+  }
+
+  /**
+   * @return the term as parsed, shared by every user of the index
+   */
+  Term term(int termNumber) {
+    return terms.get(termNumber);
+  }
+
+  /**
+   * @param addFilters a term must match at least one of these, all terms match when there are none
+   * @param removeFilters a term that matches every one of these is not selected, none are removed
+   *     when there are none
+   * @return the numbers of the selected terms
+   */
+  BitSet select(List<Predicate<Term>> addFilters, List<Predicate<Term>> removeFilters) {
+    BitSet selected;
+    if (null == addFilters || addFilters.isEmpty()) {
+      selected = all();
+    } else {
+      selected = new BitSet(terms.size());
+      for (Predicate<Term> filter : addFilters) {
+        selected.or(matching(filter));
+      }
+    }
+    if (removeFilters != null && !removeFilters.isEmpty() && !selected.isEmpty()) {
+      BitSet removed = all();
+      for (Predicate<Term> filter : removeFilters) {
+        removed.and(matching(filter));
+      }
+      selected.andNot(removed);
+    }
+    return selected;
+  }
+
+  private BitSet matching(Predicate<Term> filter) {
+    if (filter instanceof TermsFilter tf) {
+      return switch (tf.getFilterType()) {
+        case all -> all();
+        case terms -> union(byTermId, tf.getNormalisedValues());
+        case tags -> union(byGrouptag, tf.getNormalisedValues());
+      };
+    }
+    // anything else can only be answered by the term itself
+    BitSet matching = new BitSet(terms.size());
+    for (int i = 0; i < terms.size(); i++) {
+      if (filter.test(terms.get(i))) {
+        matching.set(i);
+      }
+    }
+    return matching;
+  }
+
+  private BitSet union(Map<String, BitSet> index, List<String> values) {
+    BitSet union = new BitSet(terms.size());
+    for (String value : values) {
+      BitSet termNumbers = index.get(value);
+      if (termNumbers != null) {
+        union.or(termNumbers);
+      }
+    }
+    return union;
+  }
+
+  private BitSet all() {
+    BitSet all = new BitSet(terms.size());
+    all.set(0, terms.size());
+    return all;
+  }
+}
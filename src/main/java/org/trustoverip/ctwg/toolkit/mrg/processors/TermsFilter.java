@@ -2,12 +2,16 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
 
@@ -21,11 +25,15 @@ public class TermsFilter implements Predicate<Term> {
   private static final String DELIMITER = ",";
 
   @EqualsAndHashCode.Include
+  @Getter(AccessLevel.PACKAGE)
   private final List<String> normalisedValues;
 
   @EqualsAndHashCode.Include
+  @Getter(AccessLevel.PACKAGE)
   private final TermsFilterType filterType;
 
+  // the values again, for constant-time lookups
+  private final Set<String> valueSet;
 
   private TermsFilter(TermsFilterType filterType, String delimitedValues) {
     this.filterType = filterType;
@@ -34,6 +42,7 @@ public class TermsFilter implements Predicate<Term> {
     } else {
       normalisedValues = new ArrayList<>();
     }
+    valueSet = new HashSet<>(normalisedValues);
   }
 
   public static TermsFilter of(TermsFilterType filterType, String delimitedValues) {
@@ -56,18 +65,20 @@ public class TermsFilter implements Predicate<Term> {
       case all -> true;
       case terms -> {
         String normalisedTermid = StringUtils.trim(term.getTerm()).toLowerCase(Locale.ROOT);
-        yield normalisedValues.contains(normalisedTermid);
+        yield valueSet.contains(normalisedTermid);
       }
       case tags -> {
         List<String> normalisedGrouptags = splitAndNormalise(term.getGrouptags());
         if (normalisedGrouptags.isEmpty()) { yield false;}
-        else {yield normalisedGrouptags.stream().anyMatch(normalisedValues::contains);}
+        else {yield normalisedGrouptags.stream().anyMatch(valueSet::contains);}
       }
     };
   }
 
-
-  private List<String> splitAndNormalise(String delimitedValues) {
+  /*
+   Used for filter values and for a term's grouptags alike, so that both are normalised the same way
+  */
+  static List<String> splitAndNormalise(String delimitedValues) {
     String[] vals = (null == delimitedValues) ? new String[0] : delimitedValues.split(DELIMITER);
     return switch (vals.length) {
       case 0 -> new ArrayList<>();
@@ -1,23 +1,47 @@
 package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_PARSE_TERM;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_STREAM_MRG;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_WRITE_FINGERPRINTS;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.CANNOT_WRITE_MRG;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_MRG;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_SAF;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_READ_FINGERPRINTS;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.BooleanUtils;
 import org.springframework.stereotype.Service;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
 import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
+import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -28,25 +52,104 @@ import lombok.extern.slf4j.Slf4j;
 
 public final class YamlWrangler {
 
+  // generates accessors with LambdaMetafactory rather than calling them reflectively
+  private static final String JACKSON_BLACKBIRD = "mrg_jackson_blackbird";
+  // flat term front matter is parsed by hand, falling back to Jackson for anything else
+  private static final String TERM_FAST_PATH = "mrg_term_fast_path";
+
   private final ObjectMapper yamlMapper;
+  // readers and writers are immutable and thread-safe, so the type lookups are done once up front
+  private final ObjectReader safReader;
+  private final ObjectReader termReader;
+  private final ObjectReader mrgReader;
+  // the parts of an MRG read one at a time so that entries can be filtered as they are parsed
+  private final ObjectReader terminologyReader;
+  private final ObjectReader scopesReader;
+  private final ObjectReader entryReader;
+  private final ObjectWriter mrgWriter;
+  private final ObjectWriter prettyMrgWriter;
+  // the parts of an MRG written one at a time by an MRGStreamWriter, which flushes per batch instead
+  private final ObjectWriter terminologyWriter;
+  private final ObjectWriter scopesWriter;
+  private final ObjectWriter entryWriter;
+  private final ObjectReader fingerprintsReader;
+  private final ObjectWriter fingerprintsWriter;
+  private final boolean termFastPath;
 
   YamlWrangler() {
+    this(
+        BooleanUtils.toBoolean(System.getenv(JACKSON_BLACKBIRD)),
+        BooleanUtils.toBooleanDefaultIfNull(BooleanUtils.toBooleanObject(System.getenv(TERM_FAST_PATH)), true));
+  }
+
+  YamlWrangler(boolean blackbird) {
+    this(blackbird, true);
+  }
+
+  YamlWrangler(boolean blackbird, boolean termFastPath) {
+    this.termFastPath = termFastPath;
     yamlMapper = new ObjectMapper(new YAMLFactory().enable(Feature.INDENT_ARRAYS));
     yamlMapper.findAndRegisterModules();
+    if (blackbird) {
+      log.info("Registering the Jackson Blackbird module");
+      yamlMapper.registerModule(new BlackbirdModule());
+    }
+    safReader = yamlMapper.readerFor(SAFModel.class);
+    termReader = yamlMapper.readerFor(Term.class);
+    mrgReader = yamlMapper.readerFor(MRGModel.class);
+    terminologyReader = yamlMapper.readerFor(Terminology.class);
+    scopesReader = yamlMapper.readerFor(new TypeReference<List<ScopeRef>>() {});
+    entryReader = yamlMapper.readerFor(MRGEntry.class);
+    mrgWriter = yamlMapper.writerFor(MRGModel.class);
+    prettyMrgWriter = mrgWriter.withDefaultPrettyPrinter();
+    terminologyWriter = partWriter(Terminology.class);
+    scopesWriter = yamlMapper.writerFor(new TypeReference<List<ScopeRef>>() {})
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    entryWriter = partWriter(MRGEntry.class);
+    fingerprintsReader = yamlMapper.readerFor(MRGFingerprints.class);
+    fingerprintsWriter = yamlMapper.writerFor(MRGFingerprints.class);
+  }
+
+  private ObjectWriter partWriter(Class<?> type) {
+    return yamlMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
   }
 
   SAFModel parseSaf(String safAsString) throws MRGGenerationException {
     try {
-      log.debug(String.format("SAF As String: %s", safAsString));
-      return yamlMapper.readValue(safAsString, SAFModel.class);
+      log.debug("SAF As String: {}", safAsString);
+      return safReader.readValue(safAsString);
     } catch (Exception e) {
       throw new MRGGenerationException(UNABLE_TO_PARSE_SAF, e);
     }
   }
 
   Term parseTerm(String termString) throws MRGGenerationException {
+    Term term = termFastPath ? FlatTermParser.parse(termString) : null;
+    if (term != null) {
+      return term;
+    }
+    try {
+      return termReader.readValue(termString);
+    } catch (Exception e) {
+      throw new MRGGenerationException(CANNOT_PARSE_TERM, e);
+    }
+  }
+
+  /*
+   UTF-8 bytes straight from a connector or cache, without decoding them to a String first. Jackson
+   reads them as they are, the flat term parser only works on decoded text so isn't tried
+  */
+  Term parseTerm(byte[] termBytes) throws MRGGenerationException {
     try {
-      return yamlMapper.readValue(termString, Term.class);
+      return termReader.readValue(termBytes);
+    } catch (Exception e) {
+      throw new MRGGenerationException(CANNOT_PARSE_TERM, e);
+    }
+  }
+
+  Term parseTerm(InputStream termStream) throws MRGGenerationException {
+    try {
+      return termReader.readValue(termStream);
     } catch (Exception e) {
       throw new MRGGenerationException(CANNOT_PARSE_TERM, e);
     }
@@ -54,24 +157,162 @@ public final class YamlWrangler {
 
   MRGModel parseMrg(String mrgAsString) throws MRGGenerationException {
     try {
-      log.debug(String.format("MRG As String: %s", mrgAsString));
-      return yamlMapper.readValue(mrgAsString, MRGModel.class);
+      log.debug("MRG As String: {}", mrgAsString);
+      return mrgReader.readValue(mrgAsString);
+    } catch (Exception e) {
+      throw new MRGGenerationException(UNABLE_TO_PARSE_MRG, e);
+    }
+  }
+
+  MRGModel parseMrg(InputStream mrgStream) throws MRGGenerationException {
+    try {
+      return mrgReader.readValue(mrgStream);
+    } catch (Exception e) {
+      throw new MRGGenerationException(UNABLE_TO_PARSE_MRG, e);
+    }
+  }
+
+  /*
+   Entries are bound one at a time as the parser reaches them and any the filter rejects are dropped
+   straight away, so however large the MRG only the kept entries are held in memory
+  */
+  MRGModel parseMrg(InputStream mrgStream, Predicate<? super MRGEntry> entryFilter)
+      throws MRGGenerationException {
+    try (JsonParser parser = mrgReader.createParser(mrgStream)) {
+      Terminology terminology = null;
+      List<ScopeRef> scopes = null;
+      List<MRGEntry> entries = new ArrayList<>();
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw MismatchedInputException.from(parser, MRGModel.class, "An MRG should be a mapping");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "terminology" -> terminology = terminologyReader.readValue(parser);
+          case "scopes" -> scopes = scopesReader.readValue(parser);
+          case "entries" -> readEntries(parser, entryFilter, entries);
+          default -> throw UnrecognizedPropertyException.from(parser, MRGModel.class, field, null);
+        }
+      }
+      return new MRGModel(terminology, scopes, entries);
     } catch (Exception e) {
       throw new MRGGenerationException(UNABLE_TO_PARSE_MRG, e);
     }
   }
 
+  private void readEntries(
+      JsonParser parser, Predicate<? super MRGEntry> entryFilter, List<MRGEntry> entries)
+      throws IOException {
+    if (parser.currentToken() == JsonToken.VALUE_NULL) {
+      return;
+    }
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      throw MismatchedInputException.from(parser, MRGModel.class, "The MRG entries should be a list");
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      MRGEntry entry = entryReader.readValue(parser);
+      if (entryFilter.test(entry)) {
+        entries.add(entry);
+      }
+    }
+  }
+
+  /*
+   Written to a temporary file that is then moved into place, so simultaneous generations of the same
+   version never interleave their output and readers never see a half-written MRG
+  */
   void writeMrg(Path location, MRGModel mrg) throws MRGGenerationException {
-    try (OutputStream fos = Files.newOutputStream(location)) {
-      yamlMapper.writeValue(fos, mrg);
+    writeMrg(location, mrg.terminology(), mrg.scopes(), writer -> writer.write(mrg.entries()));
+  }
+
+  /*
+   As above, with the entries handed to the writer by the caller as they are produced. The MRG is
+   only moved into place once every entry has been written
+  */
+  void writeMrg(
+      Path location, Terminology terminology, List<ScopeRef> scopes, Consumer<MRGStreamWriter> entries)
+      throws MRGGenerationException {
+    Path tmp = null;
+    try {
+      Path dir = location.toAbsolutePath().getParent();
+      tmp = Files.createTempFile(dir, location.getFileName().toString(), ".tmp");
+      try (OutputStream fos = Files.newOutputStream(tmp);
+          MRGStreamWriter writer = openMrg(fos, terminology, scopes)) {
+        entries.accept(writer);
+      }
+      moveIntoPlace(tmp, location);
     } catch (IOException ioException) {
+      deleteQuietly(tmp);
       throw new MRGGenerationException(String.format(CANNOT_WRITE_MRG, location.toAbsolutePath()), ioException);
+    } catch (RuntimeException e) {
+      // producing or writing the entries failed part way through
+      deleteQuietly(tmp);
+      throw e;
+    }
+  }
+
+  MRGFingerprints readFingerprints(Path location) throws MRGGenerationException {
+    try (InputStream in = Files.newInputStream(location)) {
+      return fingerprintsReader.readValue(in);
+    } catch (Exception e) {
+      throw new MRGGenerationException(String.format(UNABLE_TO_READ_FINGERPRINTS, location.toAbsolutePath()), e);
+    }
+  }
+
+  /*
+   Moved into place like the MRG so a reader never sees half of it
+  */
+  void writeFingerprints(Path location, MRGFingerprints fingerprints) throws MRGGenerationException {
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(location.toAbsolutePath().getParent(), location.getFileName().toString(), ".tmp");
+      try (OutputStream fos = Files.newOutputStream(tmp)) {
+        fingerprintsWriter.writeValue(fos, fingerprints);
+      }
+      moveIntoPlace(tmp, location);
+    } catch (IOException ioException) {
+      deleteQuietly(tmp);
+      throw new MRGGenerationException(String.format(CANNOT_WRITE_FINGERPRINTS, location.toAbsolutePath()), ioException);
+    }
+  }
+
+  private static void moveIntoPlace(Path tmp, Path location) throws IOException {
+    try {
+      Files.move(tmp, location, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, location, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Writes the {@code terminology} and {@code scopes} of an MRG to the stream and returns a writer
+   * for its entries. Closing the writer ends the MRG but leaves the stream open.
+   */
+  MRGStreamWriter openMrg(OutputStream out, Terminology terminology, List<ScopeRef> scopes)
+      throws MRGGenerationException {
+    try {
+      JsonGenerator generator = mrgWriter.createGenerator(out);
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      return new MRGStreamWriter(generator, terminologyWriter, scopesWriter, entryWriter, terminology, scopes);
+    } catch (IOException ioe) {
+      throw new MRGGenerationException(CANNOT_STREAM_MRG, ioe);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      if (path != null) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException e) {
+      log.debug("Could not delete {}", path);
     }
   }
 
   public String asYamlString(MRGModel model) throws MRGGenerationException {
     try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      yamlMapper.writerWithDefaultPrettyPrinter().writeValue(baos, model);
+      prettyMrgWriter.writeValue(baos, model);
       return baos.toString(StandardCharsets.UTF_8);
     } catch (IOException ioe) {
       throw new MRGGenerationException("Cannot convert MRG to YAML", ioe);
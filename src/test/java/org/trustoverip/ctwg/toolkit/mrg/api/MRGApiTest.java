@@ -0,0 +1,88 @@
+package org.trustoverip.ctwg.toolkit.mrg.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.trustoverip.ctwg.toolkit.mrg.processors.MRGlossaryGenerator;
+import org.trustoverip.ctwg.toolkit.mrg.processors.YamlWrangler;
+
+/**
+ * @author sih
+ */
+@WebMvcTest(MRGApi.class)
+@Import(YamlWrangler.class)
+class MRGApiTest {
+
+  private static final String SCOPEDIR = "https://github.com/essif-lab/framework/tree/master/docs/tev2";
+  private static final String SAF_FILENAME = "saf.yaml";
+  private static final String VERSION_TAG = "mrgtest";
+  // the generator's default for mrg_remote_timeout_seconds
+  private static final Duration REMOTE_TIMEOUT = Duration.ofSeconds(60);
+  private static final Duration SLOW_GENERATION = Duration.ofSeconds(1);
+
+  @Autowired private MockMvc mvc;
+  @MockBean private MRGlossaryGenerator generator;
+
+  @Test
+  @DisplayName("""
+      Given a generation that takes a while to write its entries
+      When the MRG is streamed
+      Then the request outlives a remote scope timing out and gets the whole MRG
+      """)
+  void given_slow_generation_when_stream_then_request_does_not_time_out() throws Exception {
+    when(generator.prepare(SCOPEDIR, SAF_FILENAME, VERSION_TAG))
+        .thenReturn(
+            out -> {
+              write(out, "terminology:\n");
+              sleep(SLOW_GENERATION);
+              write(out, "entries: []\n");
+            });
+
+    MvcResult result =
+        mvc.perform(
+                post("/ctwg/mrg/yaml")
+                    .param("scopedir", SCOPEDIR)
+                    .param("safFilename", SAF_FILENAME)
+                    .param("versionTag", VERSION_TAG))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    assertThat(result.getRequest().getAsyncContext().getTimeout())
+        .isGreaterThan(REMOTE_TIMEOUT.toMillis());
+    result.getAsyncResult();
+    assertThat(result.getResponse().getStatus()).isEqualTo(200);
+    assertThat(result.getResponse().getContentAsString())
+        .isEqualTo("terminology:\nentries: []\n");
+  }
+
+  private static void write(OutputStream out, String yaml) {
+    try {
+      out.write(yaml.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GitHub;
+
+/**
+ * @author sih
+ */
+class ArchiveConnectorTest {
+
+  private static final String OWNER_REPO = "essif-lab/framework";
+  private static final String SAF_PATH = "docs/tev2/saf.yaml";
+  private static final String CURATED_DIR = "docs/tev2/terms";
+  private static final String SAF_CONTENT = "scope:\n  scopetag: tev2\n";
+
+  private StubGithubServer stub;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub =
+        new StubGithubServer()
+            .withFile(OWNER_REPO, SAF_PATH, SAF_CONTENT)
+            .withFile(OWNER_REPO, CURATED_DIR + "/term.md", "term: term")
+            .withFile(OWNER_REPO, CURATED_DIR + "/scope.md", "term: scope")
+            .withFile(OWNER_REPO, CURATED_DIR + "/nested/other.md", "term: other")
+            .withFile(OWNER_REPO, "docs/tev2/glossaries/mrg.mrgtest.yaml", "entries: []");
+  }
+
+  @AfterEach
+  void tearDown() {
+    stub.close();
+  }
+
+  @Test
+  @DisplayName("""
+      Given a repository
+      When content and directory lookups are made
+      Then they are all answered from a single archive download
+      """)
+  void testLookupsServedFromOneSnapshot() throws Exception {
+    ArchiveConnector connector = new ArchiveConnector(stub.client(), Duration.ofMinutes(5));
+    assertThat(connector.getContent(OWNER_REPO, SAF_PATH)).isEqualTo(SAF_CONTENT);
+    List<FileContent> terms = connector.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    assertThat(terms.stream().map(FileContent::filename).collect(Collectors.toList()))
+        .containsExactly("scope.md", "term.md");
+    assertThat(terms.get(1).content()).isEqualTo("term: term");
+    assertThat(terms.get(1).htmlLink())
+        .isEqualTo("https://github.com/essif-lab/framework/blob/main/docs/tev2/terms/term.md");
+    assertThat(connector.getContent(OWNER_REPO, "docs/tev2/glossaries/mrg.mrgtest.yaml"))
+        .isNotNull();
+    int expectedRequests = 2; // repository lookup + archive
+    assertThat(stub.requestCount()).isEqualTo(expectedRequests);
+  }
+
+  @Test
+  @DisplayName("Given the SAF is at the root of the repo when getContent then leading slashes are ignored")
+  void testRootPaths() throws Exception {
+    stub.withFile(OWNER_REPO, "saf.yaml", SAF_CONTENT);
+    ArchiveConnector connector = new ArchiveConnector(stub.client(), Duration.ofMinutes(5));
+    assertThat(connector.getContent(OWNER_REPO, "/saf.yaml")).isEqualTo(SAF_CONTENT);
+  }
+
+  @Test
+  @DisplayName("Given an expired snapshot when content is requested then the archive is downloaded again")
+  void testSnapshotExpiry() throws Exception {
+    ArchiveConnector connector = new ArchiveConnector(stub.client(), Duration.ZERO);
+    connector.getContent(OWNER_REPO, SAF_PATH);
+    connector.getContent(OWNER_REPO, SAF_PATH);
+    int expectedRequests = 4;
+    assertThat(stub.requestCount()).isEqualTo(expectedRequests);
+  }
+
+  @Test
+  @DisplayName("""
+      Given lookups for the same repository at the same time
+      When the snapshot is being downloaded
+      Then they all wait for the one download
+      """)
+  void testConcurrentLookupsShareOneDownload() throws Exception {
+    stub.withLatency(Duration.ofMillis(200));
+    ArchiveConnector connector = new ArchiveConnector(stub.client(), Duration.ofMinutes(5));
+    ExecutorService lookups = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> safs = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        safs.add(lookups.submit(() -> connector.getContent(OWNER_REPO, SAF_PATH)));
+      }
+      for (Future<String> saf : safs) {
+        assertThat(saf.get()).isEqualTo(SAF_CONTENT);
+      }
+    } finally {
+      lookups.shutdownNow();
+    }
+    int expectedRequests = 2; // repository lookup + archive
+    assertThat(stub.requestCount()).isEqualTo(expectedRequests);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a download that fails with an Error
+      When the repository is looked up again
+      Then it is downloaded again rather than waiting on the failed download
+      """)
+  void testDownloadErrorNotKept() throws Exception {
+    GitHub gh = spy(stub.client());
+    doThrow(new StackOverflowError()).doCallRealMethod().when(gh).getRepository(OWNER_REPO);
+    ArchiveConnector connector = new ArchiveConnector(gh, Duration.ofMinutes(5));
+    assertThatThrownBy(() -> connector.getContent(OWNER_REPO, SAF_PATH))
+        .isInstanceOf(StackOverflowError.class);
+    String saf = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> connector.getContent(OWNER_REPO, SAF_PATH));
+    assertThat(saf).isEqualTo(SAF_CONTENT);
+  }
+
+  @Test
+  @DisplayName("""
+      Given snapshots of two repositories that don't both fit
+      When they are read in turn
+      Then the least recently used is dropped and downloaded again
+      """)
+  void testSnapshotEviction() throws Exception {
+    String firstRepo = "trustoverip/first";
+    String secondRepo = "trustoverip/second";
+    stub.withFile(firstRepo, SAF_PATH, SAF_CONTENT).withFile(secondRepo, SAF_PATH, SAF_CONTENT);
+    ArchiveConnector connector =
+        new ArchiveConnector(stub.client(), Duration.ofMinutes(5), SAF_CONTENT.length());
+    connector.getContent(firstRepo, SAF_PATH);
+    connector.getContent(firstRepo, SAF_PATH);
+    assertThat(stub.requestCount()).isEqualTo(2);
+    connector.getContent(secondRepo, SAF_PATH);
+    connector.getContent(firstRepo, SAF_PATH);
+    int expectedRequests = 6; // the first repo was dropped to make room for the second
+    assertThat(stub.requestCount()).isEqualTo(expectedRequests);
+  }
+
+  @Test
+  @DisplayName("Given missing content or repositories then return null or empty like GithubConnector")
+  void testMissingContent() throws Exception {
+    ArchiveConnector connector = new ArchiveConnector(stub.client(), Duration.ofMinutes(5));
+    assertThat(connector.getContent(OWNER_REPO, "docs/foo.yaml")).isNull();
+    assertThat(connector.getDirectoryContent(OWNER_REPO, "foo")).isEmpty();
+    assertThat(connector.getContent("trustoverip/ctwg", "saf.yaml")).isNull();
+    assertThat(connector.getDirectoryContent("trustoverip/ctwg", "terms")).isEmpty();
+  }
+}
@@ -0,0 +1,58 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry.Source;
+
+/**
+ * @author sih
+ */
+class ConnectorRegistryTest {
+
+  private static final String GITHUB_SCOPEDIR =
+      "https://github.com/essif-lab/framework/tree/master/docs/tev2";
+  private static final String LOCAL_SCOPEDIR = "./src/test/resources/essif-lab-skeleton/tev2";
+
+  @Test
+  @DisplayName("""
+      Given a registry
+      When connectors are asked for by scopedir
+      Then local paths and URLs are routed to one shared instance each
+      """)
+  void testRoutingToSharedInstances() {
+    ConnectorRegistry registry = new ConnectorRegistry(Source.GITHUB);
+    MRGConnector remote = registry.forScopedir(GITHUB_SCOPEDIR);
+    MRGConnector local = registry.forScopedir(LOCAL_SCOPEDIR);
+    assertThat(remote).isInstanceOf(GithubConnector.class);
+    assertThat(local).isInstanceOf(LocalFSConnector.class);
+    assertThat(registry.forScopedir("https://github.com/trustoverip/ctwg")).isSameAs(remote);
+    assertThat(registry.get(Source.GITHUB)).isSameAs(remote);
+    assertThat(registry.forScopedir("/tmp/other-scope")).isSameAs(local);
+  }
+
+  @Test
+  @DisplayName("""
+      Given archives are preferred
+      When a URL is routed
+      Then the archive connector is used and it shares the GitHub client
+      """)
+  void testArchiveSharesClient() {
+    GithubConnector github = new GithubConnector(null, 1, 1);
+    ConnectorRegistry registry = new ConnectorRegistry(github);
+    assertThat(registry.getRemoteSource()).isEqualTo(Source.GITHUB);
+    assertThat(registry.get(Source.GITHUB)).isSameAs(github);
+
+    ConnectorRegistry archiveRegistry = new ConnectorRegistry(Source.ARCHIVE);
+    MRGConnector archive = archiveRegistry.forScopedir(GITHUB_SCOPEDIR);
+    assertThat(archive).isInstanceOf(ArchiveConnector.class).isSameAs(archiveRegistry.get(Source.ARCHIVE));
+  }
+
+  @Test
+  @DisplayName("Remote scopedirs can't be routed to the local file system")
+  void testLocalIsNotARemoteSource() {
+    assertThatIllegalArgumentException().isThrownBy(() -> new ConnectorRegistry(Source.LOCAL));
+  }
+}
@@ -0,0 +1,382 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import okhttp3.Cache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.kohsuke.github.GHTreeEntry;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.RateLimitHandler;
+
+/**
+ * @author sih
+ */
+class GithubConnectorTest {
+
+  private static final String OWNER_REPO = "essif-lab/framework";
+  private static final String CURATED_DIR = "docs/tev2/terms";
+  private static final int NUMBER_OF_FILES = 24;
+  private static final Duration LATENCY = Duration.ofMillis(100);
+  private static final int CONCURRENCY = 8;
+
+  private StubGithubServer stub;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubGithubServer().withLatency(LATENCY);
+    for (int i = 0; i < NUMBER_OF_FILES; i++) {
+      stub.withFile(OWNER_REPO, String.format("%s/term-%02d.md", CURATED_DIR, i), "term: term-" + i);
+    }
+  }
+
+  @AfterEach
+  void tearDown() {
+    stub.close();
+  }
+
+  @Test
+  @DisplayName("""
+      Given a curated dir served with latency
+      When getDirectoryContent with concurrency
+      Then wall-clock time drops roughly by the concurrency factor and order is preserved
+      """)
+  void testConcurrentDirectoryFetch() throws Exception {
+    GithubConnector sequential = new GithubConnector(stub.client(), 1, 1);
+    GithubConnector concurrent = new GithubConnector(stub.client(), CONCURRENCY, CONCURRENCY);
+
+    long start = System.nanoTime();
+    List<FileContent> sequentialContents = sequential.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    Duration sequentialTime = Duration.ofNanos(System.nanoTime() - start);
+    start = System.nanoTime();
+    List<FileContent> concurrentContents = concurrent.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    Duration concurrentTime = Duration.ofNanos(System.nanoTime() - start);
+
+    assertThat(concurrentContents).hasSize(NUMBER_OF_FILES).isEqualTo(sequentialContents);
+    assertThat(concurrentContents.stream().map(FileContent::filename).collect(Collectors.toList()))
+        .isSorted();
+    // 24 files at concurrency 8 is 3 rounds rather than 24; allow generous slack for slow hosts
+    assertThat(concurrentTime.multipliedBy(CONCURRENCY / 2)).isLessThan(sequentialTime);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a per-host limit lower than the overall concurrency
+      When getDirectoryContent
+      Then no more than the per-host limit of requests are in flight at once
+      """)
+  void testPerHostLimit() throws Exception {
+    int perHost = 2;
+    GithubConnector connector = new GithubConnector(stub.client(), CONCURRENCY, perHost);
+    List<FileContent> contents = connector.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    assertThat(contents).hasSize(NUMBER_OF_FILES);
+    assertThat(stub.maxInFlight()).isLessThanOrEqualTo(perHost);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a connector that has been closed
+      When getDirectoryContent with concurrency
+      Then no more files are fetched on its threads
+      """)
+  void testClosedConnector() throws Exception {
+    GithubConnector connector = new GithubConnector(stub.client(), CONCURRENCY, CONCURRENCY);
+    assertThat(connector.getDirectoryContent(OWNER_REPO, CURATED_DIR)).hasSize(NUMBER_OF_FILES);
+    connector.close();
+    assertThatThrownBy(() -> connector.getDirectoryContent(OWNER_REPO, CURATED_DIR))
+        .isInstanceOf(RejectedExecutionException.class);
+  }
+
+  @Test
+  @DisplayName("When reading a non-existent directory getDirectoryContent should return an empty list")
+  void testMissingDirectory() throws Exception {
+    GithubConnector connector = new GithubConnector(stub.client(), CONCURRENCY, CONCURRENCY);
+    assertThat(connector.getDirectoryContent(OWNER_REPO, "foo")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("""
+      Given a response cache
+      When the same directory is read twice
+      Then the second read is revalidated with conditional requests rather than downloaded again
+      """)
+  void testConditionalRequestsServedFromCache(@TempDir Path cacheDir) throws Exception {
+    stub.withLatency(Duration.ZERO);
+    long maxSize = 1024L * 1024L;
+    Cache cache = new Cache(cacheDir.toFile(), maxSize);
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    ConnectorMetrics.httpCache(meters, cache);
+    GithubConnector connector =
+        new GithubConnector(
+            GithubConnector.withHttpCache(new GitHubBuilder().withEndpoint(stub.endpoint()), cache)
+                .build(),
+            cache,
+            CONCURRENCY,
+            CONCURRENCY);
+    List<FileContent> first = connector.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    assertThat(stub.notModifiedCount()).isZero();
+    List<FileContent> second = connector.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    assertThat(second).isEqualTo(first);
+    // the repository handle is reused; the listing and every file come back as 304s
+    assertThat(stub.notModifiedCount()).isEqualTo(NUMBER_OF_FILES + 1);
+    assertThat(meters.get(ConnectorMetrics.CACHE_REQUESTS).tag("result", "hit").functionCounter().count())
+        .isEqualTo(NUMBER_OF_FILES + 1);
+    assertThat(meters.get(ConnectorMetrics.CACHE_REQUESTS).tag("result", "miss").functionCounter().count())
+        .isPositive();
+    assertThat(meters.get(ConnectorMetrics.CACHE_BYTES).gauge().value()).isPositive().isLessThanOrEqualTo(maxSize);
+  }
+
+  @Test
+  @DisplayName("""
+      Given several lookups in the same repository
+      When getContent and getDirectoryContent
+      Then the repository itself is only looked up once
+      """)
+  void testRepositoryLookedUpOnce() throws Exception {
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/saf.yaml", "scope:");
+    GithubConnector connector = new GithubConnector(stub.client(), CONCURRENCY, CONCURRENCY);
+    connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml");
+    connector.getDirectoryContent(OWNER_REPO, CURATED_DIR);
+    connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml");
+    assertThat(stub.requestCount("/repos/" + OWNER_REPO)).isEqualTo(1);
+    // a missing repository isn't remembered so it is looked up each time
+    connector.getContent("trustoverip/ctwg", "saf.yaml");
+    int missingRepoLookups = stub.requestCount("/repos/trustoverip/ctwg");
+    connector.getContent("trustoverip/ctwg", "saf.yaml");
+    assertThat(stub.requestCount("/repos/trustoverip/ctwg")).isEqualTo(2 * missingRepoLookups);
+  }
+
+  @Test
+  @DisplayName("""
+      Given term files with long bodies
+      When getDirectoryFrontMatter without headings
+      Then only the first range of each file is downloaded
+      """)
+  void testFrontMatterReadWithRange() throws Exception {
+    String frontMatter = "---\nterm: long\ngrouptags: a\n---\n";
+    String body = "# Long\n" + "Lorem ipsum dolor sit amet.\n".repeat(1000) + "## Notes\n";
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/long/long.md", frontMatter + body);
+    GithubConnector connector = new GithubConnector(stub.client(), null, 1, 1, 64);
+
+    List<FileContent> frontMatterOnly =
+        connector.getDirectoryFrontMatter(OWNER_REPO, "docs/tev2/long", filename -> true, false);
+    assertThat(frontMatterOnly).extracting(FileContent::content).containsExactly(frontMatter);
+    assertThat(stub.rawBytesServed()).isEqualTo(64);
+
+    List<FileContent> withHeadings =
+        connector.getDirectoryFrontMatter(OWNER_REPO, "docs/tev2/long", filename -> true, true);
+    assertThat(withHeadings)
+        .extracting(FileContent::content)
+        .containsExactly(frontMatter + "# Long\n## Notes\n");
+  }
+
+  @Test
+  @DisplayName("""
+      Given front matter longer than the first range
+      When getDirectoryFrontMatter
+      Then the rest of the file is asked for and the front matter is complete
+      """)
+  void testFrontMatterPastFirstRange() throws Exception {
+    String frontMatter = "---\nterm: long\ndescription: " + "x".repeat(200) + "\n---\n";
+    String content = frontMatter + "# Long\nbody\n";
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/long/long.md", content);
+    GithubConnector connector = new GithubConnector(stub.client(), null, 1, 1, 64);
+    List<FileContent> contents =
+        connector.getDirectoryFrontMatter(OWNER_REPO, "docs/tev2/long", filename -> true, false);
+    assertThat(contents).extracting(FileContent::content).containsExactly(frontMatter);
+    assertThat(stub.requestCount("/raw/" + OWNER_REPO + "/main/docs/tev2/long/long.md"))
+        .isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a large file
+      When getContentAsStream
+      Then it is read once, from the raw download, rather than also inlined by the contents API
+      """)
+  void testContentAsStream() throws Exception {
+    String mrg = "entries:\n" + "  - term: term\n".repeat(1000);
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/glossaries/mrg.v1.yaml", mrg);
+    GithubConnector connector = new GithubConnector(stub.client(), null, 1, 1, 64);
+
+    try (InputStream in = connector.getContentAsStream(OWNER_REPO, "docs/tev2/glossaries/mrg.v1.yaml")) {
+      assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(mrg);
+    }
+    assertThat(stub.rawBytesServed()).isEqualTo(mrg.length());
+    assertThat(stub.requestCount("/repos/" + OWNER_REPO + "/contents/docs/tev2/glossaries/mrg.v1.yaml"))
+        .isZero();
+    assertThat(connector.getContentAsStream(OWNER_REPO, "docs/tev2/glossaries/mrg.v2.yaml")).isNull();
+  }
+
+  @Test
+  @DisplayName("""
+      Given a file in a curated dir
+      When getFingerprint
+      Then its Git blob SHA is read from the directory listing without the file being downloaded
+      """)
+  void testFingerprintFromListing() throws Exception {
+    stub.withLatency(Duration.ZERO);
+    GithubConnector connector = new GithubConnector(stub.client(), 1, 1);
+    String path = CURATED_DIR + "/term-03.md";
+
+    assertThat(connector.getFingerprint(OWNER_REPO, path))
+        .isEqualTo(FileContent.blobSha("term: term-3"))
+        .isEqualTo(connector.getDirectoryFingerprints(OWNER_REPO, CURATED_DIR).get("term-03.md"));
+    assertThat(stub.requestCount("/repos/" + OWNER_REPO + "/contents/" + path)).isZero();
+    assertThat(stub.rawBytesServed()).isZero();
+    assertThat(connector.getFingerprint(OWNER_REPO, CURATED_DIR + "/missing.md")).isNull();
+  }
+
+  @Test
+  @DisplayName("""
+      Given repositories laid out in a directory as owner/repo/path
+      When served by the stub
+      Then their files, directory listings and git trees are read from it
+      """)
+  void testServedFromDirectory(@TempDir Path root) throws Exception {
+    Path scope = Files.createDirectories(root.resolve(OWNER_REPO).resolve("docs/fromdisk/terms"));
+    Files.writeString(scope.getParent().resolve("saf.yaml"), "scope:");
+    Files.writeString(scope.resolve("a.md"), "term: a");
+    Files.writeString(scope.resolve("b.md"), "term: b");
+    stub.withLatency(Duration.ZERO).withDirectory(root);
+    GitHub gh = stub.client();
+    GithubConnector connector = new GithubConnector(gh, CONCURRENCY, CONCURRENCY);
+
+    assertThat(connector.getContent(OWNER_REPO, "docs/fromdisk/saf.yaml")).isEqualTo("scope:");
+    assertThat(connector.getDirectoryContent(OWNER_REPO, "docs/fromdisk/terms"))
+        .extracting(FileContent::content)
+        .containsExactly("term: a", "term: b");
+    assertThat(gh.getRepository(OWNER_REPO).getTreeRecursive("main", 1).getTree())
+        .extracting(GHTreeEntry::getPath)
+        .contains("docs", "docs/fromdisk", "docs/fromdisk/saf.yaml", "docs/fromdisk/terms/a.md");
+  }
+
+  @Test
+  @DisplayName("""
+      Given a rate limit on the REST API
+      When more requests are made than it allows
+      Then the rate limit headers count down and the request over the limit is refused
+      """)
+  void testRateLimit() throws Exception {
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/saf.yaml", "scope:").withRateLimit(3, Duration.ofMinutes(1));
+    // the default handler would wait for the limit to reset
+    GitHub gh = new GitHubBuilder().withEndpoint(stub.endpoint()).withRateLimitHandler(RateLimitHandler.FAIL).build();
+    GithubConnector connector = new GithubConnector(gh, CONCURRENCY, CONCURRENCY);
+
+    connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml"); // the repository and the file
+    assertThat(gh.lastRateLimit().getCore().getRemaining()).isEqualTo(1);
+    // the listing is the last request allowed, the raw downloads of the term files aren't limited
+    assertThat(connector.getDirectoryFrontMatter(OWNER_REPO, CURATED_DIR, filename -> true, true)).hasSize(NUMBER_OF_FILES);
+    assertThat(gh.lastRateLimit().getCore().getRemaining()).isZero();
+
+    assertThatThrownBy(() -> connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml"))
+        .isInstanceOf(RuntimeException.class);
+    assertThat(stub.rateLimitedCount()).isPositive();
+  }
+
+  @Test
+  @DisplayName("""
+      Given every request fails with a server error
+      When getContent
+      Then the error is raised rather than the file being reported missing, and reads work again once the errors stop
+      """)
+  void testInjectedErrors() throws Exception {
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/saf.yaml", "scope:").withErrors(1.0, 502);
+    GithubConnector connector = new GithubConnector(stub.client(), CONCURRENCY, CONCURRENCY);
+
+    assertThatThrownBy(() -> connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml"))
+        .isInstanceOf(RuntimeException.class);
+    assertThat(stub.injectedErrorCount()).isPositive();
+
+    stub.withErrors(0, 502);
+    assertThat(connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml")).isEqualTo("scope:");
+  }
+
+  @Test
+  @DisplayName("""
+      Given a client built with the HTTP set-up of the connector
+      When files are read, one of which is missing
+      Then every request is timed by kind and status, and the missing one is counted as not found
+      """)
+  void testRequestsMeasured() throws Exception {
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/saf.yaml", "scope:");
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    Metrics.addRegistry(meters);
+    try {
+      GithubConnector connector =
+          new GithubConnector(
+              GithubConnector.withHttpCache(new GitHubBuilder().withEndpoint(stub.endpoint()), null).build(),
+              1,
+              1);
+
+      connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml");
+      assertThat(connector.getContent(OWNER_REPO, "docs/tev2/missing.yaml")).isNull();
+      connector.getDirectoryFrontMatter(OWNER_REPO, CURATED_DIR, filename -> true, true);
+
+      assertThat(meters.get(ConnectorMetrics.REQUESTS).tags("client", "api", "operation", "repository", "status", "200").timer().count())
+          .isEqualTo(1);
+      assertThat(meters.get(ConnectorMetrics.REQUESTS).tags("client", "raw", "operation", "download", "status", "200").timer().count())
+          .isEqualTo(NUMBER_OF_FILES);
+      // the client asks again for a resource that isn't found in case the first answer was stale
+      assertThat(meters.get(ConnectorMetrics.NOT_FOUND).tags("client", "api", "operation", "contents").counter().count())
+          .isPositive()
+          .isEqualTo(stub.requestCount("/repos/" + OWNER_REPO + "/contents/docs/tev2/missing.yaml"));
+      assertThat(meters.get(ConnectorMetrics.RESPONSE_BYTES).tags("client", "raw").summary().totalAmount())
+          .isEqualTo(stub.rawBytesServed());
+    } finally {
+      Metrics.removeRegistry(meters);
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given a response cache and a flight recording
+      When the same file is read twice
+      Then a GitHub request event is recorded for each request, the second revalidated from the cache
+      """)
+  void testRequestEventsRecorded(@TempDir Path dir) throws Exception {
+    stub.withLatency(Duration.ZERO).withFile(OWNER_REPO, "docs/tev2/saf.yaml", "scope:");
+    Cache cache = new Cache(dir.resolve("cache").toFile(), 1024L * 1024L);
+    GithubConnector connector =
+        new GithubConnector(
+            GithubConnector.withHttpCache(new GitHubBuilder().withEndpoint(stub.endpoint()), cache).build(),
+            cache,
+            1,
+            1);
+    Path recordingFile = dir.resolve("github.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("org.trustoverip.mrg.GithubRequest");
+      recording.start();
+      connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml");
+      connector.getContent(OWNER_REPO, "docs/tev2/saf.yaml");
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+
+    List<RecordedEvent> contents =
+        RecordingFile.readAllEvents(recordingFile).stream()
+            .filter(e -> e.getEventType().getName().equals("org.trustoverip.mrg.GithubRequest"))
+            .filter(e -> e.getString("path").endsWith("/contents/docs/tev2/saf.yaml"))
+            .collect(Collectors.toList());
+    assertThat(contents).extracting(e -> e.getInt("status")).containsExactly(200, 200);
+    assertThat(contents).extracting(e -> e.getBoolean("revalidated")).containsExactly(false, true);
+  }
+}
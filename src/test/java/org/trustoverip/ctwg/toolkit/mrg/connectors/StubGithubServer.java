@@ -0,0 +1,496 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+
+/**
+ * A small, in-process stand-in for the parts of the GitHub REST API that {@link GithubConnector}
+ * uses, so connector behaviour can be tested without credentials or network access.
+ *
+ * <p>It serves repositories, the contents API, git trees, zipballs and raw downloads from files added
+ * one at a time or loaded from a directory, and can make itself slower and less reliable for testing
+ * the connector under load: a fixed latency plus random jitter, a primary rate limit on the REST API
+ * with GitHub's {@code X-RateLimit-*} headers, and a share of requests failing with an error status.
+ * The jitter and failures are drawn from a seeded random so the same requests in the same order get
+ * the same delays and errors.
+ *
+ * @author sih
+ */
+class StubGithubServer implements AutoCloseable {
+
+  private static final String REPOS = "/repos/";
+  private static final String RAW = "/raw/";
+  private static final String CONTENTS = "/contents";
+  private static final String ZIPBALL = "zipball";
+  private static final String TREES = "git/trees/";
+  private static final String DEFAULT_BRANCH = "main";
+  private static final long SEED = 42L;
+
+  static {
+    // otherwise every response waits out the client's delayed ACK, some 40ms, whatever the latency
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final ObjectMapper jsonMapper = new ObjectMapper();
+  // ownerRepo -> path -> content
+  private final Map<String, Map<String, byte[]>> repositories = new ConcurrentHashMap<>();
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final Map<String, AtomicInteger> requestCountByPath = new ConcurrentHashMap<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final AtomicInteger notModifiedCount = new AtomicInteger();
+  private final AtomicLong rawBytesServed = new AtomicLong();
+  private final AtomicInteger rateLimitedCount = new AtomicInteger();
+  private final AtomicInteger injectedErrorCount = new AtomicInteger();
+  private final Random random = new Random(SEED);
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private volatile Duration latency = Duration.ZERO;
+  private volatile Duration jitter = Duration.ZERO;
+  private volatile double errorRate;
+  private volatile int errorStatus;
+  // 0 for no rate limit
+  private int rateLimit;
+  private Duration rateLimitWindow;
+  private int rateLimitUsed;
+  private Instant rateLimitReset;
+
+  StubGithubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  String endpoint() {
+    return String.format("http://%s:%d", server.getAddress().getHostString(), server.getAddress().getPort());
+  }
+
+  GitHub client() throws IOException {
+    return new GitHubBuilder().withEndpoint(endpoint()).build();
+  }
+
+  StubGithubServer withFile(String ownerRepo, String path, String content) {
+    return withFile(ownerRepo, path, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private StubGithubServer withFile(String ownerRepo, String path, byte[] content) {
+    repositories.computeIfAbsent(ownerRepo, r -> new ConcurrentHashMap<>()).put(path, content);
+    return this;
+  }
+
+  /**
+   * Serves every file under the directory, which holds one dir per owner with one dir per repository
+   * in it: {@code root/<owner>/<repo>/<path>}. The files are read when this is called.
+   */
+  StubGithubServer withDirectory(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path file : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        Path relative = root.relativize(file);
+        if (relative.getNameCount() > 2) {
+          withFile(
+              relative.getName(0) + "/" + relative.getName(1),
+              relative.subpath(2, relative.getNameCount()).toString(),
+              Files.readAllBytes(file));
+        }
+      }
+    }
+    return this;
+  }
+
+  StubGithubServer withLatency(Duration latency) {
+    return withLatency(latency, Duration.ZERO);
+  }
+
+  /**
+   * @param jitter every request is delayed by the latency plus up to this much more
+   */
+  StubGithubServer withLatency(Duration latency, Duration jitter) {
+    this.latency = latency;
+    this.jitter = jitter;
+    return this;
+  }
+
+  /**
+   * @param limit how many REST API requests are allowed per window, raw downloads aren't limited
+   * @param window how long until the count is reset, counted from the first request in the window
+   */
+  synchronized StubGithubServer withRateLimit(int limit, Duration window) {
+    this.rateLimit = limit;
+    this.rateLimitWindow = window;
+    this.rateLimitUsed = 0;
+    this.rateLimitReset = null;
+    return this;
+  }
+
+  /**
+   * @param rate the share of requests, from 0 to 1, that fail
+   * @param status the HTTP status they fail with
+   */
+  StubGithubServer withErrors(double rate, int status) {
+    this.errorRate = rate;
+    this.errorStatus = status;
+    return this;
+  }
+
+  int requestCount() {
+    return requestCount.get();
+  }
+
+  int requestCount(String path) {
+    AtomicInteger count = requestCountByPath.get(path);
+    return (null == count) ? 0 : count.get();
+  }
+
+  int maxInFlight() {
+    return maxInFlight.get();
+  }
+
+  int notModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  long rawBytesServed() {
+    return rawBytesServed.get();
+  }
+
+  int rateLimitedCount() {
+    return rateLimitedCount.get();
+  }
+
+  int injectedErrorCount() {
+    return injectedErrorCount.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+    requestCountByPath
+        .computeIfAbsent(exchange.getRequestURI().getPath(), p -> new AtomicInteger())
+        .incrementAndGet();
+    // in flight while the latency is served, the client may see the response before close returns
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try {
+      sleep(latency.plus(randomJitter()));
+    } finally {
+      inFlight.decrementAndGet();
+    }
+    try {
+      if (injectError()) {
+        injectedErrorCount.incrementAndGet();
+        json(exchange, errorStatus, Map.of("message", "Injected error"));
+      } else if (!exchange.getRequestURI().getPath().startsWith(RAW) && !withinRateLimit(exchange)) {
+        rateLimitedCount.incrementAndGet();
+        json(exchange, 403, Map.of("message", "API rate limit exceeded", "documentation_url", "https://docs.github.com/rest/overview/resources-in-the-rest-api#rate-limiting"));
+      } else {
+        route(exchange);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void route(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    if (path.startsWith(RAW)) {
+      raw(exchange, path.substring(RAW.length()));
+      return;
+    }
+    if (!path.startsWith(REPOS)) {
+      notFound(exchange);
+      return;
+    }
+    String[] parts = path.substring(REPOS.length()).split("/", 3);
+    if (parts.length < 2) {
+      notFound(exchange);
+      return;
+    }
+    String ownerRepo = String.join("/", parts[0], parts[1]);
+    Map<String, byte[]> files = repositories.get(ownerRepo);
+    if (null == files) {
+      notFound(exchange);
+    } else if (parts.length == 2) {
+      json(exchange, 200, repository(ownerRepo));
+    } else if (parts[2].startsWith(CONTENTS.substring(1))) {
+      String contentPath = parts[2].substring(CONTENTS.length() - 1);
+      contentPath = contentPath.startsWith("/") ? contentPath.substring(1) : contentPath;
+      contents(exchange, ownerRepo, files, contentPath);
+    } else if (parts[2].startsWith(ZIPBALL)) {
+      zipball(exchange, ownerRepo, files);
+    } else if (parts[2].startsWith(TREES)) {
+      tree(exchange, ownerRepo, files, exchange.getRequestURI().getQuery());
+    } else {
+      notFound(exchange);
+    }
+  }
+
+  private void zipball(HttpExchange exchange, String ownerRepo, Map<String, byte[]> files)
+      throws IOException {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    String root = ownerRepo.replace('/', '-') + "-0123abc/";
+    try (ZipOutputStream zos = new ZipOutputStream(archive)) {
+      zos.putNextEntry(new ZipEntry(root));
+      for (Map.Entry<String, byte[]> file : new TreeMap<>(files).entrySet()) {
+        zos.putNextEntry(new ZipEntry(root + file.getKey()));
+        zos.write(file.getValue());
+      }
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/zip");
+    exchange.sendResponseHeaders(200, archive.size());
+    try (OutputStream os = exchange.getResponseBody()) {
+      archive.writeTo(os);
+    }
+  }
+
+  /*
+   The whole repository as one tree, listing its subdirectories and, when asked for recursively, every
+   file in them
+  */
+  private void tree(HttpExchange exchange, String ownerRepo, Map<String, byte[]> files, String query)
+      throws IOException {
+    boolean recursive = query != null && query.contains("recursive=");
+    Map<String, Map<String, Object>> entries = new TreeMap<>();
+    files.forEach(
+        (path, bytes) -> {
+          String[] segments = path.split("/");
+          int depth = recursive ? segments.length : 1;
+          for (int i = 1; i < depth; i++) {
+            String dir = String.join("/", Arrays.copyOfRange(segments, 0, i));
+            entries.computeIfAbsent(dir, d -> treeEntry(ownerRepo, d, "tree", blobSha(d.getBytes(StandardCharsets.UTF_8)), null));
+          }
+          if (recursive || segments.length == 1) {
+            entries.put(path, treeEntry(ownerRepo, path, "blob", blobSha(bytes), bytes.length));
+          }
+        });
+    Map<String, Object> tree = new LinkedHashMap<>();
+    tree.put("sha", blobSha(ownerRepo.getBytes(StandardCharsets.UTF_8)));
+    tree.put("url", endpoint() + REPOS + ownerRepo + "/" + TREES + DEFAULT_BRANCH);
+    tree.put("tree", new ArrayList<>(entries.values()));
+    tree.put("truncated", false);
+    json(exchange, 200, tree);
+  }
+
+  private Map<String, Object> treeEntry(String ownerRepo, String path, String type, String sha, Integer size) {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("path", path);
+    entry.put("mode", "blob".equals(type) ? "100644" : "040000");
+    entry.put("type", type);
+    entry.put("sha", sha);
+    if (size != null) {
+      entry.put("size", size);
+    }
+    entry.put("url", endpoint() + REPOS + ownerRepo + "/git/" + type + "s/" + sha);
+    return entry;
+  }
+
+  private void contents(
+      HttpExchange exchange, String ownerRepo, Map<String, byte[]> files, String contentPath)
+      throws IOException {
+    byte[] file = files.get(contentPath);
+    if (file != null) {
+      Map<String, Object> entry = entry(ownerRepo, contentPath, file);
+      entry.put("encoding", "base64");
+      entry.put("content", Base64.getMimeEncoder().encodeToString(file));
+      json(exchange, 200, entry);
+      return;
+    }
+    String prefix = contentPath.isEmpty() ? "" : contentPath + "/";
+    List<Map<String, Object>> listing = new ArrayList<>();
+    new TreeMap<>(files)
+        .forEach(
+            (p, bytes) -> {
+              if (p.startsWith(prefix) && p.indexOf('/', prefix.length()) == -1) {
+                listing.add(entry(ownerRepo, p, bytes));
+              }
+            });
+    if (listing.isEmpty()) {
+      notFound(exchange);
+    } else {
+      json(exchange, 200, listing);
+    }
+  }
+
+  /*
+   Like raw.githubusercontent.com: /owner/repo/branch/path, honouring a single byte range
+  */
+  private void raw(HttpExchange exchange, String rawPath) throws IOException {
+    String[] parts = rawPath.split("/", 4);
+    Map<String, byte[]> files =
+        (parts.length < 4) ? null : repositories.get(String.join("/", parts[0], parts[1]));
+    byte[] file = (null == files) ? null : files.get(parts[3]);
+    if (null == file) {
+      notFound(exchange);
+      return;
+    }
+    int status = 200;
+    int start = 0;
+    int end = file.length - 1;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (range != null && range.startsWith("bytes=")) {
+      String[] bounds = range.substring("bytes=".length()).split("-", -1);
+      start = Integer.parseInt(bounds[0]);
+      if (!bounds[1].isEmpty()) {
+        end = Math.min(end, Integer.parseInt(bounds[1]));
+      }
+      if (start >= file.length) {
+        exchange.getResponseHeaders().add("Content-Range", "bytes */" + file.length);
+        exchange.sendResponseHeaders(416, -1);
+        return;
+      }
+      status = 206;
+      exchange
+          .getResponseHeaders()
+          .add("Content-Range", String.format("bytes %d-%d/%d", start, end, file.length));
+    }
+    int length = end - start + 1;
+    exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+    rawBytesServed.addAndGet(length);
+    exchange.sendResponseHeaders(status, length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(file, start, length);
+    }
+  }
+
+  private Map<String, Object> repository(String ownerRepo) {
+    Map<String, Object> repo = new LinkedHashMap<>();
+    repo.put("name", ownerRepo.substring(ownerRepo.indexOf('/') + 1));
+    repo.put("full_name", ownerRepo);
+    repo.put("owner", Map.of("login", ownerRepo.substring(0, ownerRepo.indexOf('/'))));
+    repo.put("url", endpoint() + REPOS + ownerRepo);
+    repo.put("html_url", "https://github.com/" + ownerRepo);
+    repo.put("default_branch", DEFAULT_BRANCH);
+    return repo;
+  }
+
+  private Map<String, Object> entry(String ownerRepo, String path, byte[] content) {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("type", "file");
+    entry.put("name", path.substring(path.lastIndexOf('/') + 1));
+    entry.put("path", path);
+    entry.put("sha", blobSha(content));
+    entry.put("size", content.length);
+    entry.put("url", endpoint() + REPOS + ownerRepo + CONTENTS + "/" + path);
+    entry.put("download_url", endpoint() + RAW + String.join("/", ownerRepo, DEFAULT_BRANCH, path));
+    entry.put(
+        "html_url", String.join("/", "https://github.com", ownerRepo, "blob", DEFAULT_BRANCH, path));
+    return entry;
+  }
+
+  private static String blobSha(byte[] content) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+      return HexFormat.of().formatHex(sha1.digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /*
+   Like GitHub, every response carries an ETag and a conditional request for an unchanged resource
+   gets an empty 304. max-age=0 makes clients revalidate on every use.
+  */
+  private void json(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] bytes = jsonMapper.writeValueAsBytes(body);
+    String etag = "\"" + blobSha(bytes) + "\"";
+    exchange.getResponseHeaders().add("ETag", etag);
+    exchange.getResponseHeaders().add("Cache-Control", "private, max-age=0");
+    if (status == 200 && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModifiedCount.incrementAndGet();
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(bytes);
+    }
+  }
+
+  /*
+   Counts the request against the rate limit and adds the headers GitHub sends with every API response
+  */
+  private synchronized boolean withinRateLimit(HttpExchange exchange) {
+    if (rateLimit == 0) {
+      return true;
+    }
+    Instant now = Instant.now();
+    if (null == rateLimitReset || !now.isBefore(rateLimitReset)) {
+      rateLimitReset = now.plus(rateLimitWindow);
+      rateLimitUsed = 0;
+    }
+    boolean allowed = rateLimitUsed < rateLimit;
+    if (allowed) {
+      rateLimitUsed++;
+    }
+    exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(rateLimit));
+    exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(rateLimit - rateLimitUsed));
+    exchange.getResponseHeaders().add("X-RateLimit-Used", String.valueOf(rateLimitUsed));
+    // GitHub gives the reset in epoch seconds, rounded up here so a client never retries too early
+    exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(rateLimitReset.plusMillis(999).getEpochSecond()));
+    exchange.getResponseHeaders().add("X-RateLimit-Resource", "core");
+    return allowed;
+  }
+
+  private synchronized Duration randomJitter() {
+    return jitter.isZero() ? Duration.ZERO : Duration.ofMillis((long) (random.nextDouble() * jitter.toMillis()));
+  }
+
+  private synchronized boolean injectError() {
+    return errorRate > 0 && random.nextDouble() < errorRate;
+  }
+
+  private void notFound(HttpExchange exchange) throws IOException {
+    json(exchange, 404, Map.of("message", "Not Found"));
+  }
+
+  private static void sleep(Duration duration) {
+    if (duration.isZero()) {
+      return;
+    }
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
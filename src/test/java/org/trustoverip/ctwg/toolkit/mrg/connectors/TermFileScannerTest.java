@@ -0,0 +1,119 @@
+package org.trustoverip.ctwg.toolkit.mrg.connectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.TermFileScanner.FrontMatter;
+
+/**
+ * @author sih
+ */
+class TermFileScannerTest {
+
+  private static final String TERM_FILE =
+      """
+      ---
+      # TEv2 Curated Text Header
+
+      term: term
+      grouptags: tev2
+      ---
+
+      # Term
+
+      Some text --- with a dash rule in it.
+
+      ---
+
+      ## Summary
+      #### Notes
+      """;
+  private static final String FRONT_MATTER =
+      """
+      ---
+      # TEv2 Curated Text Header
+
+      term: term
+      grouptags: tev2
+      ---
+      """;
+
+  @Test
+  @DisplayName("Given a term file when scanned then the front matter yaml and headings are separated")
+  void testFrontMatter() {
+    FrontMatter frontMatter = TermFileScanner.frontMatter(TERM_FILE);
+    assertThat(frontMatter.yaml()).isEqualTo("term: term\ngrouptags: tev2\n");
+    assertThat(frontMatter.headings()).containsExactly("# TEv2 Curated Text Header");
+  }
+
+  @Test
+  @DisplayName("Given rules in the body when scanned then headings after every rule are found")
+  void testBodyHeadingsPastRules() {
+    assertThat(TermFileScanner.bodyHeadings(TERM_FILE))
+        .containsExactly("# Term", "## Summary", "#### Notes");
+  }
+
+  @Test
+  @DisplayName("Given CRLF line endings when scanned then no carriage returns are kept")
+  void testCrlf() {
+    String crlf = TERM_FILE.replace("\n", "\r\n");
+    FrontMatter frontMatter = TermFileScanner.frontMatter(crlf);
+    assertThat(frontMatter.yaml()).isEqualTo("term: term\ngrouptags: tev2\n");
+    assertThat(frontMatter.headings()).containsExactly("# TEv2 Curated Text Header");
+    assertThat(TermFileScanner.bodyHeadings(crlf))
+        .containsExactly("# Term", "## Summary", "#### Notes");
+  }
+
+  @Test
+  @DisplayName("Given the sample term file when scanned then the yaml keeps every front matter field")
+  void testSampleTermFile() throws Exception {
+    String content = Files.readString(Path.of("./src/test/resources/terms/term.md"));
+    FrontMatter frontMatter = TermFileScanner.frontMatter(content);
+    assertThat(frontMatter.yaml()).startsWith("term: term\n").doesNotContain("---", "\r");
+    assertThat(frontMatter.headings()).startsWith("# TEv2 Curated Text Header", "# Curation status");
+    assertThat(TermFileScanner.bodyHeadings(content)).contains("# Term", "## Summary");
+  }
+
+  @Test
+  @DisplayName("Given a term file when read without headings then stop once the front matter is closed")
+  void testReadFrontMatterOnly() throws Exception {
+    InputStream in = new ByteArrayInputStream((TERM_FILE.repeat(1000)).getBytes(StandardCharsets.UTF_8));
+    assertThat(TermFileScanner.read(in, false)).isEqualTo(FRONT_MATTER);
+    // most of the body was left unread
+    assertThat(in.readAllBytes()).isNotEmpty();
+    assertThat(TermFileScanner.read(TERM_FILE, false)).isEqualTo(FRONT_MATTER);
+  }
+
+  @Test
+  @DisplayName("Given a term file when read with headings then keep the front matter and the body headings")
+  void testReadWithHeadings() throws Exception {
+    String expected = FRONT_MATTER + "# Term\n## Summary\n#### Notes\n";
+    InputStream in = new ByteArrayInputStream(TERM_FILE.getBytes(StandardCharsets.UTF_8));
+    assertThat(TermFileScanner.read(in, true)).isEqualTo(expected);
+    assertThat(TermFileScanner.read(TERM_FILE, true)).isEqualTo(expected);
+  }
+
+  @Test
+  @DisplayName("Given CRLF line endings and no final newline when read then only newlines are kept")
+  void testReadCrlf() throws Exception {
+    String crlf = TERM_FILE.stripTrailing().replace("\n", "\r\n");
+    String expected = FRONT_MATTER + "# Term\n## Summary\n#### Notes\n";
+    InputStream in = new ByteArrayInputStream(crlf.getBytes(StandardCharsets.UTF_8));
+    assertThat(TermFileScanner.read(in, true)).isEqualTo(expected);
+    assertThat(TermFileScanner.read(crlf, true)).isEqualTo(expected);
+  }
+
+  @Test
+  @DisplayName("Given multi-byte characters split across reads when read then they are decoded intact")
+  void testReadMultiByte() throws Exception {
+    String content = "---\nterm: " + "é".repeat(10_000) + "\n---\n# Überblick\n";
+    InputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    assertThat(TermFileScanner.read(in, true)).isEqualTo(content);
+  }
+}
@@ -0,0 +1,118 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
+
+/**
+ * @author sih
+ */
+class CompiledTermsFilterTest {
+
+  private static final int TAGS = 8;
+  private static final int TERMS = 40;
+
+  @Test
+  @DisplayName("""
+      Given random add and remove filters over random terms
+      When compiled
+      Then every term is selected exactly as by the add filters chained with or and the remove filters with and, negated
+      """)
+  void testSameSelectionAsChainedFilters() {
+    Random random = new Random(17);
+    List<Term> terms = new ArrayList<>();
+    for (int i = 0; i < TERMS; i++) {
+      terms.add(term(" Term-" + i, randomTags(random)));
+    }
+    terms.add(term("untagged", null));
+    for (int round = 0; round < 200; round++) {
+      List<Predicate<Term>> addFilters = randomFilters(random, random.nextInt(4));
+      List<Predicate<Term>> removeFilters = randomFilters(random, random.nextInt(3));
+      Predicate<Term> chained = chained(addFilters, removeFilters);
+      CompiledTermsFilter compiled = CompiledTermsFilter.compile(addFilters, removeFilters);
+      for (Term term : terms) {
+        assertThat(compiled.test(term))
+            .as("%s with add %s and remove %s", term.getTerm(), addFilters, removeFilters)
+            .isEqualTo(chained.test(term));
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given filters that are plain predicates rather than TermsFilters
+      When compiled
+      Then they are still applied
+      """)
+  void testOtherPredicates() {
+    Predicate<Term> glossaryText = t -> t.getGlossaryText() != null;
+    Term withText = term("with", "a");
+    withText.setGlossaryText("text");
+    Term withoutText = term("without", "a");
+
+    CompiledTermsFilter add = CompiledTermsFilter.compile(List.of(glossaryText), null);
+    assertThat(add.test(withText)).isTrue();
+    assertThat(add.test(withoutText)).isFalse();
+
+    CompiledTermsFilter remove =
+        CompiledTermsFilter.compile(
+            List.of(TermsFilter.of(TermsFilterType.tags, "a")), List.of(glossaryText));
+    assertThat(remove.test(withText)).isFalse();
+    assertThat(remove.test(withoutText)).isTrue();
+  }
+
+  @Test
+  void testNoFiltersSelectEverything() {
+    assertThat(CompiledTermsFilter.compile(null, null).test(term("any", null))).isTrue();
+    assertThat(CompiledTermsFilter.compile(List.of(), List.of()).test(term("any", "a"))).isTrue();
+  }
+
+  private static Predicate<Term> chained(
+      List<Predicate<Term>> addFilters, List<Predicate<Term>> removeFilters) {
+    Predicate<Term> add = addFilters.stream().reduce(Predicate::or).orElse(TermsFilter.all());
+    Predicate<Term> remove =
+        removeFilters.stream().reduce(Predicate::and).map(Predicate::negate).orElse(TermsFilter.all());
+    return add.and(remove);
+  }
+
+  private static List<Predicate<Term>> randomFilters(Random random, int count) {
+    List<Predicate<Term>> filters = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int kind = random.nextInt(10);
+      if (kind == 0) {
+        filters.add(TermsFilter.all());
+      } else if (kind < 6) {
+        filters.add(TermsFilter.of(TermsFilterType.tags, randomTags(random)));
+      } else {
+        StringBuilder ids = new StringBuilder();
+        for (int j = 0; j <= random.nextInt(5); j++) {
+          ids.append(j == 0 ? "" : ", ").append("TERM-").append(random.nextInt(TERMS));
+        }
+        filters.add(TermsFilter.of(TermsFilterType.terms, ids.toString()));
+      }
+    }
+    return filters;
+  }
+
+  private static String randomTags(Random random) {
+    StringBuilder tags = new StringBuilder();
+    for (int j = 0; j <= random.nextInt(3); j++) {
+      tags.append(j == 0 ? "" : ",").append(random.nextBoolean() ? " Tag-" : "tag-").append(random.nextInt(TAGS));
+    }
+    return tags.toString();
+  }
+
+  private static Term term(String id, String grouptags) {
+    Term term = new Term();
+    term.setTerm(id);
+    term.setGrouptags(grouptags);
+    return term;
+  }
+}
@@ -0,0 +1,100 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.processors.EntryMerger.DuplicatePolicy;
+
+/**
+ * @author sih
+ */
+class EntryMergerTest {
+
+  @Test
+  @DisplayName("""
+      Given the same term in two scopes and twice in one of them
+      When merge keeping all entries
+      Then every entry is kept and only the repeat within the scope is counted as a duplicate
+      """)
+  void testKeepAll() {
+    EntryMerger merger = new EntryMerger(DuplicatePolicy.KEEP_ALL);
+    List<MRGEntry> local = entries("term-a", "term-b", "Term-A ");
+    assertThat(merger.merge("local", local)).isSameAs(local);
+    assertThat(merger.merge("remote", entries("term-a"))).hasSize(1);
+    assertThat(merger.duplicates()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("""
+      Given duplicates in a scope
+      When merge keeping the first
+      Then later duplicates are dropped and the order of the rest is kept
+      """)
+  void testKeepFirst() {
+    EntryMerger merger = new EntryMerger(DuplicatePolicy.KEEP_FIRST);
+    List<MRGEntry> local = entries("term-a", "term-b");
+    assertThat(merger.merge("local", local)).isSameAs(local);
+    List<MRGEntry> kept = merger.merge("local", entries("term-c", "term-a", "term-d", "term-b"));
+    assertThat(kept).extracting(MRGEntry::getTerm).containsExactly("term-c", "term-d");
+    assertThat(merger.duplicates()).isEqualTo(2);
+  }
+
+  @Test
+  void testFail() {
+    EntryMerger merger = new EntryMerger(DuplicatePolicy.FAIL);
+    merger.merge("remote", entries("term-a"));
+    assertThatExceptionOfType(MRGGenerationException.class)
+        .isThrownBy(() -> merger.merge("remote", entries("term-a")))
+        .withMessageContaining("term-a")
+        .withMessageContaining("remote");
+  }
+
+  @Test
+  @DisplayName("""
+      Given 100,000 entries across 20 scopes, one in ten repeated within its scope
+      When merge keeping the first
+      Then exactly the repeats are dropped
+      """)
+  void testManyScopes() {
+    EntryMerger merger = new EntryMerger(DuplicatePolicy.KEEP_FIRST);
+    int scopes = 20;
+    int perScope = 5_000;
+    int merged = 0;
+    for (int s = 0; s < scopes; s++) {
+      List<MRGEntry> batch = new ArrayList<>(perScope);
+      for (int i = 0; i < perScope; i++) {
+        batch.add(entry("term-" + ((i % 10 == 9) ? i - 1 : i)));
+      }
+      merged += merger.merge("scope-" + s, batch).size();
+    }
+    assertThat(merged).isEqualTo(scopes * perScope * 9 / 10);
+    assertThat(merger.duplicates()).isEqualTo(scopes * perScope / 10);
+  }
+
+  @Test
+  void testPolicyFromSetting() {
+    assertThat(DuplicatePolicy.of(null)).isEqualTo(DuplicatePolicy.KEEP_ALL);
+    assertThat(DuplicatePolicy.of(" keep_first ")).isEqualTo(DuplicatePolicy.KEEP_FIRST);
+    assertThat(DuplicatePolicy.of("FAIL")).isEqualTo(DuplicatePolicy.FAIL);
+    assertThat(DuplicatePolicy.of("nonsense")).isEqualTo(DuplicatePolicy.KEEP_ALL);
+  }
+
+  private static List<MRGEntry> entries(String... terms) {
+    List<MRGEntry> entries = new ArrayList<>();
+    for (String term : terms) {
+      entries.add(entry(term));
+    }
+    return entries;
+  }
+
+  private static MRGEntry entry(String term) {
+    MRGEntry entry = new MRGEntry();
+    entry.setTerm(term);
+    return entry;
+  }
+}
@@ -0,0 +1,111 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.TermFileScanner;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * Differential tests: whenever the fast path accepts front matter it must build exactly the term
+ * that Jackson builds from it.
+ *
+ * @author sih
+ */
+class FlatTermParserTest {
+
+  private static final Path TEST_RESOURCES = Path.of("./src/test/resources");
+
+  private final YamlWrangler jackson = new YamlWrangler(false, false);
+
+  @Test
+  @DisplayName("""
+      Given every term file in the test resources
+      When parsed by the fast path
+      Then the term is the same as the one Jackson parses or the file is left to Jackson
+      """)
+  void testAgreesWithJacksonOnTermFiles() throws Exception {
+    List<Path> termFiles;
+    try (Stream<Path> paths = Files.walk(TEST_RESOURCES)) {
+      termFiles = paths.filter(p -> p.toString().endsWith(".md")).sorted().collect(Collectors.toList());
+    }
+    assertThat(termFiles).isNotEmpty();
+    int fastPathed = 0;
+    for (Path termFile : termFiles) {
+      String yaml = TermFileScanner.frontMatter(Files.readString(termFile)).yaml();
+      if (assertAgrees(yaml)) {
+        fastPathed++;
+      }
+    }
+    // the curated terms in terms/ are flat; the skeleton's use fields that Term doesn't have
+    assertThat(fastPathed).isGreaterThanOrEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("""
+      Given front matter using YAML beyond flat strings
+      When parsed by the fast path
+      Then it is left to Jackson or parsed the same way
+      """)
+  void testAgreesWithJacksonOnEdgeCases() {
+    List<String> edgeCases =
+        List.of(
+            "term: plain\nsynonyms:\ngrouptags: ~\nstatus: null\n",
+            "term: quoted\nglossaryText: \"a word: or phrase\"\nhoverText: 'it''s'\n",
+            "term: escaped\nglossaryText: \"tab\\there\"\n",
+            "term: numbers\ncreated: 20220312\nvsntag: 0.9.4\nupdated: 2022-03-12\n",
+            "term: booleans\nstatus: yes\ncommit: true\n",
+            "term: comment # trailing\n",
+            "term: folded\nglossaryText: \"first line\n  second line\"\nstatus: proposed\n",
+            "term: quoted comment\nglossaryText: \"text\" # comment\n",
+            "term: title\ntitle: not a Term field\n",
+            "term: dates\ncreated: 2022-06-06\ncommit: 0x1F\nid: 1_000\nisa: true\nscope: .5\n",
+            "term: flow\ngrouptags: [a, b]\n",
+            "term: block\nglossaryText: >\n  folded\n  text\n",
+            "term: multi\nglossaryText: first line\n  second line\n",
+            "term: unknown\nfoo: bar\n",
+            "term: twice\nterm: again\n",
+            "term: anchor\nisa: &a concept\n",
+            "term: colon\nlocator: http://example.com/term\n",
+            "term: hash\nformPhrases: term{ss}, c#\n",
+            "term:nospace\n",
+            "term: \"unterminated\n",
+            "");
+    for (String yaml : edgeCases) {
+      assertAgrees(yaml);
+    }
+    assertThat(FlatTermParser.parse("term: quoted\nglossaryText: \"a word: or phrase\"\n"))
+        .extracting(Term::getGlossaryText)
+        .isEqualTo("a word: or phrase");
+    assertThat(FlatTermParser.parse("term: flow\ngrouptags: [a, b]\n")).isNull();
+    assertThat(FlatTermParser.parse("term: folded\nglossaryText: \"first line\n  second line\"\n"))
+        .extracting(Term::getGlossaryText)
+        .isEqualTo("first line second line");
+  }
+
+  /*
+   @return true when the fast path parsed the front matter itself
+  */
+  private boolean assertAgrees(String yaml) {
+    Term fast = FlatTermParser.parse(yaml);
+    Term expected;
+    try {
+      expected = jackson.parseTerm(yaml);
+    } catch (MRGGenerationException e) {
+      // whatever Jackson rejects must not get through the fast path either
+      assertThat(fast).as(yaml).isNull();
+      return false;
+    }
+    if (null == fast) {
+      return false;
+    }
+    assertThat(fast).as(yaml).usingRecursiveComparison().isEqualTo(expected);
+    return true;
+  }
+}
@@ -0,0 +1,66 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
+
+/**
+ * @author sih
+ */
+class IncrementalRunTest {
+
+  @Test
+  @DisplayName("""
+      Given a previous MRG with entries from a remote scope
+      When the remote MRG has the same fingerprint, a different one or none
+      Then its previous entries are only reused when the fingerprint is the same
+      """)
+  void testUnchangedRemoteEntries() {
+    MRGFingerprints previous =
+        new MRGFingerprints("saf", Map.of(), List.of(), Map.of("remote", "glossary/mrg.v1.yaml:abc"));
+    MRGModel previousMrg =
+        new MRGModel(null, List.of(), List.of(entry("local", "a"), entry("remote", "b"), entry("remote", "c")));
+    IncrementalRun run = IncrementalRun.from(previous, previousMrg);
+
+    assertThat(run.unchangedRemoteEntries("remote", "glossary/mrg.v1.yaml:abc"))
+        .hasValueSatisfying(entries -> assertThat(entries).extracting(MRGEntry::getTerm).containsExactly("b", "c"));
+    assertThat(run.unchangedRemoteEntries("remote", "glossary/mrg.v1.yaml:def")).isEmpty();
+    assertThat(run.unchangedRemoteEntries("remote", null)).isEmpty();
+    assertThat(run.unchangedRemoteEntries("other", "glossary/mrg.v1.yaml:abc")).isEmpty();
+  }
+
+  @Test
+  @DisplayName("""
+      Given remote scopes that were resolved
+      When only some of them make it into the MRG
+      Then only those are fingerprinted for the next generation
+      """)
+  void testOnlyIncludedRemoteScopesFingerprinted() {
+    IncrementalRun run = IncrementalRun.fresh();
+    assertThat(run.fingerprints("saf")).isNull();
+
+    run.localScope(Map.of("a.md", "1:2"), List.of("a.md"));
+    run.remoteScopeResolved("included", "mrg.yaml:abc");
+    run.remoteScopeResolved("timed-out", "mrg.yaml:def");
+    run.remoteScopeIncluded("included");
+
+    MRGFingerprints fingerprints = run.fingerprints("saf");
+    assertThat(fingerprints.safSha()).isEqualTo("saf");
+    assertThat(fingerprints.termFiles()).containsEntry("a.md", "1:2");
+    assertThat(fingerprints.remoteScopes()).containsOnlyKeys("included");
+    assertThat(IncrementalRun.off().enabled()).isFalse();
+  }
+
+  private static MRGEntry entry(String scopetag, String term) {
+    MRGEntry entry = new MRGEntry();
+    entry.setScopetag(scopetag);
+    entry.setTerm(term);
+    entry.setLocator(term + ".md");
+    return entry;
+  }
+}
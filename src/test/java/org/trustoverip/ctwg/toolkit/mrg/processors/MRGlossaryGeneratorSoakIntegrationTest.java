@@ -0,0 +1,108 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
+import org.trustoverip.ctwg.toolkit.mrg.processors.SyntheticCorpus.Shape;
+
+/**
+ * Generates MRGs from synthetic scopes far larger than the essif-lab skeleton, see {@link
+ * SyntheticCorpus}.
+ *
+ * @author sih
+ */
+class MRGlossaryGeneratorSoakIntegrationTest {
+
+  private static final long SEED = 42L;
+
+  @TempDir Path root;
+
+  @Test
+  @DisplayName("""
+      Given a local scope of 100,000 term files
+      When the version that selects every term is generated
+      Then every term is in the MRG
+      """)
+  void testLargeCuratedDir() throws IOException {
+    String scopedir = new SyntheticCorpus(Shape.of(100_000), SEED).writeLocal(root);
+
+    MRGModel mrg = generate(scopedir, SyntheticCorpus.VERSION);
+
+    assertThat(mrg.entries()).hasSize(100_000);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a local scope that imports from 30 scopes with 1,000 entries each
+      When the version that imports by grouptag is generated
+      Then the MRG has every local term and every imported entry with one of the grouptags
+      """)
+  void testManyImportedScopes() throws IOException {
+    SyntheticCorpus corpus = new SyntheticCorpus(Shape.of(1_000).withImportedScopes(30, 1_000), SEED);
+    String scopedir = corpus.writeLocal(root);
+    YamlWrangler yamlWrangler = new YamlWrangler();
+    long imported = 0;
+    for (int n = 0; n < 30; n++) {
+      imported +=
+          yamlWrangler.parseMrg(corpus.importedMrg(n, "unused")).entries().stream()
+              .filter(e -> hasAnyGrouptag(e, "group-0", "group-1"))
+              .count();
+    }
+
+    MRGModel mrg = generate(scopedir, SyntheticCorpus.VERSION);
+
+    assertThat(mrg.entries()).hasSize(1_000 + (int) imported);
+    assertThat(mrg.entries().stream().map(MRGEntry::getScopetag).distinct()).hasSize(31);
+  }
+
+  @Test
+  @DisplayName("""
+      Given terms with 50 grouptags each out of 1,000 and a glossaryText of 10,000 characters
+      When the version that adds and removes by grouptag is generated
+      Then every term in the MRG matches the criteria and keeps all of its glossaryText
+      """)
+  void testDeepGrouptagsAndHugeGlossaryText() throws IOException {
+    SyntheticCorpus corpus =
+        new SyntheticCorpus(Shape.of(2_000).withGrouptags(1_000, 50).withGlossaryTextLength(10_000), SEED);
+    String scopedir = corpus.writeLocal(root);
+
+    MRGModel mrg = generate(scopedir, SyntheticCorpus.SELECTIVE_VERSION);
+
+    assertThat(mrg.entries()).isNotEmpty();
+    assertThat(mrg.entries())
+        .allSatisfy(
+            e -> {
+              assertThat(hasAnyGrouptag(e, "group-0", "group-1") || List.of("term-0", "term-1").contains(e.getTerm())).isTrue();
+              assertThat(hasAnyGrouptag(e, "group-2")).isFalse();
+              assertThat(e.getGlossaryText()).hasSize(10_000);
+            });
+  }
+
+  /*
+   The MRG is streamed rather than written to the glossaries mount and parsed back
+  */
+  private static MRGModel generate(String scopedir, String versionTag) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new MRGlossaryGenerator(true).generate(scopedir, MRGlossaryGenerator.DEFAULT_SAF_FILENAME, versionTag, out);
+    return new YamlWrangler().parseMrg(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static boolean hasAnyGrouptag(MRGEntry entry, String... grouptags) {
+    List<String> entryGrouptags = TermsFilter.splitAndNormalise(entry.getGrouptags());
+    for (String grouptag : grouptags) {
+      if (entryGrouptags.contains(grouptag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -2,24 +2,52 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.NO_SUCH_VERSION;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.function.Predicate;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.ConnectorRegistry;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.LocalFSConnector;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
 import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
@@ -50,6 +78,7 @@ class MRGlossaryGeneratorTest {
   @MockBean private ModelWrangler mockWrangler;
   @Autowired private ModelWrangler wrangler;
   @Autowired private MRGlossaryGenerator generator;
+  @Autowired private ConnectorRegistry registry;
   private String scopedir;
   private String safFilename;
   private String version;
@@ -79,7 +108,7 @@ class MRGlossaryGeneratorTest {
   @Test
   @DisplayName("Should throw an exception when no glossary dir")
   void given_saf_with_no_glossary_dir_when_generate_then_throw_MRGException() {
-    when(mockWrangler.getSaf(scopedir, safFilename)).thenReturn(noGlossarySaf);
+    stubPlan(noGlossarySaf, Map.of());
     assertThatExceptionOfType(MRGGenerationException.class)
         .isThrownBy(() -> generator.generate(scopedir, safFilename, version))
         .withMessage(MRGGenerationException.NO_GLOSSARY_DIR);
@@ -88,7 +117,7 @@ class MRGlossaryGeneratorTest {
   @Test
   @DisplayName("Should throw an exception when no glossary dir")
   void given_saf_with_no_such_version_tag_when_generate_then_throw_MRGException() {
-    when(mockWrangler.getSaf(scopedir, safFilename)).thenReturn(validSaf);
+    stubPlan(validSaf, Map.of());
     String badVersion = "moo";
     String expectedNoVersionMessage = String.format(NO_SUCH_VERSION, badVersion);
     assertThatExceptionOfType(MRGGenerationException.class)
@@ -96,15 +125,27 @@ class MRGlossaryGeneratorTest {
         .withMessage(expectedNoVersionMessage);
   }
 
+  @Test
+  @DisplayName("""
+      Given a SAF without the version asked for
+      When a streamed generation is prepared
+      Then it throws before the writer is returned
+      """)
+  void given_no_such_version_tag_when_prepare_then_throw_before_writing() {
+    stubPlan(validSaf, Map.of());
+    String badVersion = "moo";
+    assertThatExceptionOfType(MRGGenerationException.class)
+        .isThrownBy(() -> generator.prepare(scopedir, safFilename, badVersion))
+        .withMessage(String.format(NO_SUCH_VERSION, badVersion));
+  }
+
   @Test
   @DisplayName("Given valid input generate should create MRG")
   void given_valid_input_generate_should_create_mrg() {
     context.setAddFilters(List.of(TermsFilter.all()));
     context.setVersionTag(VERSION_TAG);
-    when(mockWrangler.getSaf(scopedir, safFilename)).thenReturn(validSaf);
-    when(mockWrangler.buildContextMap(SCOPEDIR, validSaf, VERSION_TAG))
-        .thenReturn(Map.of(validSaf.getScope().getScopetag(), context));
-    when(mockWrangler.fetchTerms(context, ADD_FILTER_TERM, new ArrayList<>()))
+    stubPlan(validSaf, Map.of(validSaf.getScope().getScopetag(), context));
+    when(mockWrangler.fetchTerms(sameScope(context), eq(ADD_FILTER_TERM), eq(new ArrayList<>())))
         .thenReturn(matchingTerms);
     MRGModel generatedMrg = generator.generate(scopedir, safFilename, VERSION_TAG);
     assertThat(generatedMrg).isNotNull();
@@ -120,4 +161,446 @@ class MRGlossaryGeneratorTest {
     // TODO entries
   }
 
+  @Test
+  @DisplayName("""
+      Given several remote scopes and a slow local curated dir
+      When generate
+      Then remote scopes are resolved concurrently with each other and with the local parse
+      """)
+  void given_remote_scopes_when_generate_then_resolve_them_concurrently() {
+    Duration latency = Duration.ofMillis(400);
+    int remoteScopes = 4;
+    Map<String, GeneratorContext> contexts = contextsWithRemoteScopes(remoteScopes);
+    stubRemoteScopes(contexts, latency);
+    when(mockWrangler.fetchTerms(sameScope(context), anyList(), anyList()))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(latency.toMillis());
+              return matchingTerms;
+            });
+    MRGlossaryGenerator concurrentGenerator =
+        new MRGlossaryGenerator(mockWrangler, registry, remoteScopes, Duration.ofSeconds(30));
+
+    GenerationSession session = concurrentGenerator.openSession(scopedir, safFilename, VERSION_TAG);
+    long start = System.nanoTime();
+    MRGModel generatedMrg = concurrentGenerator.generate(session);
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    // one round of latency rather than five; allow generous slack for slow hosts
+    assertThat(elapsed).isLessThan(latency.multipliedBy(remoteScopes + 1).dividedBy(2));
+    assertThat(generatedMrg.entries().stream().map(MRGEntry::getScopetag).collect(Collectors.toList()))
+        .containsExactly(null, "remote-0", "remote-1", "remote-2", "remote-3");
+    assertThat(session.remoteErrors()).isEmpty();
+  }
+
+  @Test
+  @DisplayName("""
+      Given one remote scope that fails and one that never answers
+      When generate
+      Then the MRG is still created and both are reported as remote errors
+      """)
+  void given_failing_remote_scopes_when_generate_then_collect_errors() {
+    Map<String, GeneratorContext> contexts = contextsWithRemoteScopes(3);
+    stubRemoteScopes(contexts, Duration.ZERO);
+    when(mockWrangler.getSaf(contexts.get("remote-0").getAbsoluteRepo(), safFilename))
+        .thenThrow(new MRGGenerationException("no SAF"));
+    when(mockWrangler.getSaf(contexts.get("remote-1").getAbsoluteRepo(), safFilename))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(Duration.ofSeconds(10).toMillis());
+              return validSaf;
+            });
+    when(mockWrangler.fetchTerms(sameScope(context), anyList(), anyList())).thenReturn(matchingTerms);
+    MRGlossaryGenerator concurrentGenerator =
+        new MRGlossaryGenerator(mockWrangler, registry, 3, Duration.ofMillis(500));
+
+    GenerationSession session = concurrentGenerator.openSession(scopedir, safFilename, VERSION_TAG);
+    MRGModel generatedMrg = concurrentGenerator.generate(session);
+
+    assertThat(generatedMrg.entries().stream().map(MRGEntry::getScopetag).collect(Collectors.toList()))
+        .containsExactly(null, "remote-2");
+    assertThat(session.remoteErrors())
+        .hasSize(2)
+        .anyMatch(error -> error.contains("remote-0") && error.contains("no SAF"))
+        .anyMatch(error -> error.contains("remote-1") && error.contains("Timed out"));
+  }
+
+  @Test
+  @DisplayName("""
+      Given several remote scopes that never answer, each resolved on its own thread
+      When generate
+      Then they all time out together after one timeout rather than one after another
+      """)
+  void given_slow_remote_scopes_when_generate_then_they_time_out_together() {
+    int remoteScopes = 4;
+    Duration timeout = Duration.ofMillis(500);
+    Map<String, GeneratorContext> contexts = contextsWithRemoteScopes(remoteScopes);
+    stubRemoteScopes(contexts, Duration.ofSeconds(10));
+    when(mockWrangler.fetchTerms(sameScope(context), anyList(), anyList())).thenReturn(matchingTerms);
+    MRGlossaryGenerator concurrentGenerator =
+        new MRGlossaryGenerator(mockWrangler, registry, remoteScopes, timeout);
+
+    GenerationSession session = concurrentGenerator.openSession(scopedir, safFilename, VERSION_TAG);
+    long start = System.nanoTime();
+    concurrentGenerator.generate(session);
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    assertThat(session.remoteErrors()).hasSize(remoteScopes).allMatch(error -> error.contains("Timed out"));
+    // waiting the timeout for each scope in turn would take four times as long
+    assertThat(elapsed).isLessThan(timeout.multipliedBy(2));
+  }
+
+  @Test
+  @DisplayName("""
+      Given more remote scopes than remote threads, each quicker than the timeout but not all together
+      When generate
+      Then none of them time out while queued behind the others
+      """)
+  void given_more_remote_scopes_than_threads_when_generate_then_queued_time_not_counted() {
+    int remoteScopes = 3;
+    Duration latency = Duration.ofMillis(300);
+    Map<String, GeneratorContext> contexts = contextsWithRemoteScopes(remoteScopes);
+    stubRemoteScopes(contexts, latency);
+    when(mockWrangler.fetchTerms(sameScope(context), anyList(), anyList())).thenReturn(matchingTerms);
+    MRGlossaryGenerator oneThreadGenerator =
+        new MRGlossaryGenerator(mockWrangler, registry, 1, latency.multipliedBy(2));
+
+    GenerationSession session = oneThreadGenerator.openSession(scopedir, safFilename, VERSION_TAG);
+    MRGModel generatedMrg = oneThreadGenerator.generate(session);
+
+    assertThat(session.remoteErrors()).isEmpty();
+    assertThat(generatedMrg.entries().stream().map(MRGEntry::getScopetag).collect(Collectors.toList()))
+        .containsExactly(null, "remote-0", "remote-1", "remote-2");
+  }
+
+  @Test
+  @DisplayName("""
+      Given one generator shared by many simultaneous requests for different scopes and versions
+      When generate
+      Then every MRG only holds the terminology and terms of its own request
+      """)
+  void given_concurrent_requests_when_generate_then_sessions_are_isolated(@TempDir Path workspace)
+      throws Exception {
+    int scopeCount = 4;
+    List<String> versions = List.of("v1", "v2");
+    int repeats = 5;
+    for (int i = 0; i < scopeCount; i++) {
+      writeScope(workspace.resolve("scope-" + i), "scope-" + i, versions, i + 3);
+    }
+    ModelWrangler localWrangler =
+        new ModelWrangler(new YamlWrangler(), new LocalFSConnector()) {
+          @Override
+          String writeMrgToFile(MRGModel mrg, String glossaryDir, String versionTag) {
+            return "not written";
+          }
+        };
+    MRGlossaryGenerator sharedGenerator =
+        new MRGlossaryGenerator(localWrangler, registry, 4, Duration.ofSeconds(30));
+    ExecutorService requests = Executors.newFixedThreadPool(16);
+    CountDownLatch startTogether = new CountDownLatch(1);
+    List<Future<?>> results = new ArrayList<>();
+    try {
+      for (int r = 0; r < repeats; r++) {
+        for (int i = 0; i < scopeCount; i++) {
+          for (String v : versions) {
+            String scopetag = "scope-" + i;
+            int expectedTerms = i + 3;
+            String scopeDir = workspace.resolve(scopetag).toString();
+            results.add(
+                requests.submit(
+                    () -> {
+                      startTogether.await();
+                      MRGModel mrg = sharedGenerator.generate(scopeDir, safFilename, v);
+                      assertThat(mrg.terminology().getScopetag()).isEqualTo(scopetag);
+                      assertThat(mrg.terminology().getVsntag()).isEqualTo(v);
+                      assertThat(mrg.entries())
+                          .hasSize(expectedTerms)
+                          .allMatch(e -> e.getTerm().startsWith(scopetag + "-"))
+                          .allMatch(e -> scopetag.equals(e.getScopetag()))
+                          .allMatch(e -> v.equals(e.getVsntag()));
+                      return null;
+                    }));
+          }
+        }
+      }
+      startTogether.countDown();
+      for (Future<?> result : results) {
+        result.get(30, TimeUnit.SECONDS); // rethrows any assertion failure from the request thread
+      }
+    } finally {
+      requests.shutdownNow();
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given a local scope
+      When generate to an output stream
+      Then the streamed MRG holds the same terminology and entries as the generated model
+      """)
+  void given_local_scope_when_generate_to_stream_then_same_as_model(@TempDir Path workspace)
+      throws Exception {
+    writeScope(workspace.resolve("scope-0"), "scope-0", List.of("v1"), 7);
+    YamlWrangler yamlWrangler = new YamlWrangler();
+    ModelWrangler localWrangler =
+        new ModelWrangler(yamlWrangler, new LocalFSConnector()) {
+          @Override
+          String writeMrgToFile(MRGModel mrg, String glossaryDir, String versionTag) {
+            return "not written";
+          }
+        };
+    MRGlossaryGenerator localGenerator =
+        new MRGlossaryGenerator(localWrangler, registry, 1, Duration.ofSeconds(30));
+    String scopeDir = workspace.resolve("scope-0").toString();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    localGenerator.generate(scopeDir, safFilename, "v1", out);
+    MRGModel streamed = yamlWrangler.parseMrg(out.toString(StandardCharsets.UTF_8));
+    MRGModel generated = localGenerator.generate(scopeDir, safFilename, "v1");
+
+    assertThat(streamed.terminology()).isEqualTo(generated.terminology());
+    assertThat(streamed.terminology().getAltvsntags()).isEqualTo(generated.terminology().getAltvsntags());
+    assertThat(streamed.entries()).hasSize(7);
+    assertThat(streamed.entries().stream().map(MRGEntry::getTerm).collect(Collectors.toList()))
+        .isEqualTo(generated.entries().stream().map(MRGEntry::getTerm).collect(Collectors.toList()));
+  }
+
+  @Test
+  @DisplayName("""
+      Given an MRG generated incrementally
+      When a term file is changed, one removed and one added and the MRG is generated incrementally again
+      Then only the changed and added files are parsed and the MRG is the same as a full generation
+      """)
+  void given_previous_mrg_when_generate_incrementally_then_only_parse_changes(@TempDir Path workspace)
+      throws Exception {
+    Path scope = workspace.resolve("scope-0");
+    writeScope(scope, "scope-0", List.of("v1"), 6);
+    Path safFile = scope.resolve("saf.yaml");
+    Path glossaryDir = workspace.resolve("glossaries");
+    Files.writeString(safFile, Files.readString(safFile).replace("glossarydir: glossaries", "glossarydir: " + glossaryDir));
+    String scopeDir = scope.toString();
+
+    ModelWrangler first = glossaryWrangler();
+    new MRGlossaryGenerator(first, registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1", true);
+    assertThat(glossaryDir.resolve("mrg.v1.fingerprints.yaml")).exists();
+
+    Path changed = scope.resolve(CURATED_DIR).resolve("scope-0-2.md");
+    Files.writeString(changed, "---\nterm: scope-0-2\ntermType: pattern\n---\n# scope-0-2\n");
+    Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 10_000));
+    Files.delete(scope.resolve(CURATED_DIR).resolve("scope-0-4.md"));
+    Files.writeString(scope.resolve(CURATED_DIR).resolve("scope-0-9.md"), "---\nterm: scope-0-9\ntermType: concept\n---\n");
+    ModelWrangler second = glossaryWrangler();
+    MRGModel incremental =
+        new MRGlossaryGenerator(second, registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1", true);
+    MRGModel full =
+        new MRGlossaryGenerator(glossaryWrangler(), registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1");
+
+    assertThat(second.termCacheStats().misses()).isEqualTo(2);
+    assertThat(incremental.entries()).extracting(MRGEntry::getTerm)
+        .containsExactlyElementsOf(full.entries().stream().map(MRGEntry::getTerm).collect(Collectors.toList()))
+        .contains("scope-0-9")
+        .doesNotContain("scope-0-4");
+    assertThat(incremental.entries()).filteredOn(e -> "scope-0-2".equals(e.getTerm()))
+        .extracting(MRGEntry::getTermType)
+        .containsExactly("pattern");
+  }
+
+  @Test
+  @DisplayName("""
+      Given an MRG generated incrementally
+      When the SAF changes and the MRG is generated incrementally again
+      Then every term file is parsed
+      """)
+  void given_changed_saf_when_generate_incrementally_then_parse_everything(@TempDir Path workspace)
+      throws Exception {
+    Path scope = workspace.resolve("scope-0");
+    writeScope(scope, "scope-0", List.of("v1"), 5);
+    Path safFile = scope.resolve("saf.yaml");
+    Path glossaryDir = workspace.resolve("glossaries");
+    Files.writeString(safFile, Files.readString(safFile).replace("glossarydir: glossaries", "glossarydir: " + glossaryDir));
+    String scopeDir = scope.toString();
+    new MRGlossaryGenerator(glossaryWrangler(), registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1", true);
+
+    ModelWrangler unchangedSaf = glossaryWrangler();
+    new MRGlossaryGenerator(unchangedSaf, registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1", true);
+    Files.writeString(safFile, Files.readString(safFile) + "# changed\n");
+    ModelWrangler changedSaf = glossaryWrangler();
+    MRGModel mrg =
+        new MRGlossaryGenerator(changedSaf, registry, 1, Duration.ofSeconds(30)).generate(scopeDir, safFilename, "v1", true);
+
+    assertThat(unchangedSaf.termCacheStats().misses()).isZero();
+    assertThat(changedSaf.termCacheStats().misses()).isEqualTo(5);
+    assertThat(mrg.entries()).hasSize(5);
+  }
+
+  @Test
+  @DisplayName("""
+      Given a local scope
+      When generate to an output stream and then as a model
+      Then the generation, each of its stages and the term files parsed are recorded
+      And only writing the entries out is timed as the write stage
+      """)
+  void given_local_scope_when_generate_then_stages_are_measured(@TempDir Path workspace)
+      throws Exception {
+    writeScope(workspace.resolve("scope-0"), "scope-0", List.of("v1"), 7);
+    ModelWrangler localWrangler =
+        new ModelWrangler(new YamlWrangler(), new LocalFSConnector(), 1) {
+          @Override
+          String writeMrgToFile(MRGModel mrg, String glossaryDir, String versionTag) {
+            return "not written";
+          }
+        };
+    MRGlossaryGenerator localGenerator =
+        new MRGlossaryGenerator(localWrangler, registry, 1, Duration.ofSeconds(30));
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    Metrics.addRegistry(meters);
+    try {
+      localGenerator.generate(
+          workspace.resolve("scope-0").toString(), safFilename, "v1", new ByteArrayOutputStream());
+
+      assertThat(meters.get(GenerationMetrics.GENERATION).tags("output", "stream", "outcome", "success").timer().count())
+          .isEqualTo(1);
+      for (String stage : List.of("saf.fetch", "saf.parse", "context", "local.fetch", "write")) {
+        assertThat(meters.get(GenerationMetrics.STAGE).tag("stage", stage).timer().count()).as(stage).isPositive();
+      }
+      assertThat(meters.get(GenerationMetrics.STAGE).tag("stage", "local.parse").timer().count()).isEqualTo(7);
+      assertThat(meters.get(GenerationMetrics.TERM_FILES).tag("outcome", "parsed").counter().count()).isEqualTo(7);
+      assertThat(meters.get(GenerationMetrics.ENTRIES).tag("source", "local").counter().count()).isEqualTo(7);
+      // one batch streamed, then a model that is only written once it is whole
+      localGenerator.generate(workspace.resolve("scope-0").toString(), safFilename, "v1");
+      assertThat(meters.get(GenerationMetrics.STAGE).tag("stage", "write").timer().count()).isEqualTo(2);
+    } finally {
+      Metrics.removeRegistry(meters);
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given a flight recording with the MRG generator settings
+      When a local scope is generated to an output stream
+      Then the generation, the connector calls and each term parse are recorded
+      """)
+  void given_flight_recording_when_generate_then_events_are_recorded(@TempDir Path workspace)
+      throws Exception {
+    writeScope(workspace.resolve("scope-0"), "scope-0", List.of("v1"), 7);
+    String scopeDir = workspace.resolve("scope-0").toString();
+    MRGlossaryGenerator localGenerator =
+        new MRGlossaryGenerator(
+            new ModelWrangler(new YamlWrangler(), new LocalFSConnector(), 1), registry, 1, Duration.ofSeconds(30));
+    Configuration settings;
+    try (Reader jfc = new InputStreamReader(getClass().getResourceAsStream("/jfr/mrg.jfc"), StandardCharsets.UTF_8)) {
+      settings = Configuration.create(jfc);
+    }
+    Path recordingFile = workspace.resolve("mrg.jfr");
+    try (Recording recording = new Recording(settings)) {
+      // every term parse, not only the slow ones
+      recording.enable("org.trustoverip.mrg.TermParse").withThreshold(Duration.ZERO);
+      recording.start();
+      localGenerator.generate(scopeDir, safFilename, "v1", new ByteArrayOutputStream());
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+    assertThat(events).filteredOn(e -> e.getEventType().getName().equals("org.trustoverip.mrg.Generation"))
+        .singleElement()
+        .satisfies(
+            e -> {
+              assertThat(e.getString("scopedir")).isEqualTo(scopeDir);
+              assertThat(e.getString("output")).isEqualTo("stream");
+              assertThat(e.getInt("entries")).isEqualTo(7);
+              assertThat(e.getString("outcome")).isEqualTo("success");
+            });
+    assertThat(events).filteredOn(e -> e.getEventType().getName().equals("org.trustoverip.mrg.ConnectorCall"))
+        .extracting(e -> e.getString("operation"), e -> e.getInt("files"))
+        .contains(tuple("getContent", 1), tuple("getDirectoryFrontMatter", 7));
+    assertThat(events).filteredOn(e -> e.getEventType().getName().equals("org.trustoverip.mrg.TermParse"))
+        .hasSize(7)
+        .allSatisfy(e -> assertThat(e.getBoolean("cached")).isFalse());
+  }
+
+  /*
+   A new wrangler, so nothing is cached in memory from an earlier generation, that writes the MRG to
+   the glossarydir itself
+  */
+  private static ModelWrangler glossaryWrangler() {
+    return new ModelWrangler(new YamlWrangler(), new LocalFSConnector(), 1) {
+      @Override
+      Path mrgFile(String glossaryDir, String versionTag) {
+        return Path.of(glossaryDir, "mrg." + versionTag + ".yaml");
+      }
+    };
+  }
+
+  private static void writeScope(Path dir, String scopetag, List<String> versions, int termCount)
+      throws Exception {
+    Path termsDir = Files.createDirectories(dir.resolve(CURATED_DIR));
+    StringBuilder saf = new StringBuilder();
+    saf.append("scope:\n")
+        .append("  scopetag: ").append(scopetag).append("\n")
+        .append("  scopedir: ").append(dir).append("\n")
+        .append("  curatedir: ").append(CURATED_DIR).append("\n")
+        .append("  glossarydir: glossaries\n")
+        .append("scopes: []\n")
+        .append("versions:\n");
+    for (String v : versions) {
+      saf.append("  - vsntag: ").append(v).append("\n").append("    termselcrit: []\n");
+    }
+    Files.writeString(dir.resolve("saf.yaml"), saf.toString());
+    for (int j = 0; j < termCount; j++) {
+      String term = scopetag + "-" + j;
+      Files.writeString(
+          termsDir.resolve(term + ".md"),
+          "---\nterm: " + term + "\ntermType: concept\n---\n# " + term + "\n");
+    }
+  }
+
+  /*
+   The local scope (which has no add filters so is not looked up remotely) followed by the remote ones
+  */
+  private Map<String, GeneratorContext> contextsWithRemoteScopes(int remoteScopes) {
+    Map<String, GeneratorContext> contexts = new LinkedHashMap<>();
+    contexts.put(validSaf.getScope().getScopetag(), context);
+    for (int i = 0; i < remoteScopes; i++) {
+      String scopetag = "remote-" + i;
+      GeneratorContext remoteContext =
+          new GeneratorContext(
+              OWNER_REPO, SCOPEDIR + "/" + scopetag, ROOT_DIR_PATH, VERSION_TAG, CURATED_DIR);
+      remoteContext.setScopetag(scopetag);
+      remoteContext.setAddFilters(List.of(TermsFilter.all()));
+      contexts.put(scopetag, remoteContext);
+    }
+    stubPlan(validSaf, contexts);
+    return contexts;
+  }
+
+  private void stubPlan(SAFModel saf, Map<String, GeneratorContext> contexts) {
+    when(mockWrangler.plan(scopedir, safFilename))
+        .thenReturn(new GenerationPlan("sha", saf, version -> contexts));
+  }
+
+  /*
+   The plan hands out frozen copies of the contexts it was built from, so they are matched by repo
+  */
+  private static GeneratorContext sameScope(GeneratorContext expected) {
+    return argThat(c -> c != null && expected.getAbsoluteRepo().equals(c.getAbsoluteRepo()));
+  }
+
+  private void stubRemoteScopes(Map<String, GeneratorContext> contexts, Duration latency) {
+    for (GeneratorContext remoteContext : contexts.values()) {
+      if (remoteContext == context) {
+        continue;
+      }
+      when(mockWrangler.getSaf(remoteContext.getAbsoluteRepo(), safFilename))
+          .thenAnswer(
+              invocation -> {
+                Thread.sleep(latency.toMillis());
+                return validSaf;
+              });
+      List<MRGEntry> remoteEntries = new ArrayList<>(List.of(new MRGEntry(matchingTerms.get(0))));
+      when(mockWrangler.getMrg(sameScope(remoteContext), any(), any(), any()))
+          .thenReturn(new MRGModel(null, List.of(), remoteEntries));
+    }
+  }
+
 }
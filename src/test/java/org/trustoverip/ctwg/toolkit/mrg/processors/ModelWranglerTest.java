@@ -2,6 +2,12 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_SAF;
 
@@ -11,15 +17,19 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
 import org.trustoverip.ctwg.toolkit.mrg.connectors.GithubConnector;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
 import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.Term;
 import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
@@ -141,6 +151,36 @@ class ModelWranglerTest {
     assertThat(localContext.getRemoveFilters()).containsExactly(TermsFilter.of(TermsFilterType.terms, "@, curated-text-body"));
   }
 
+  @DisplayName("""
+      Given an unchanged SAF
+      When plan it twice and then again once it has changed
+      Then the first plan is reused and the changed SAF gets a new one
+      """)
+  @Test
+  void testPlanCachedBySafContent() {
+    when(mockReader.getContent(OWNER_REPO, VALID_SAF_TRIGGER)).thenReturn(validSafContent);
+    GenerationPlan plan = wrangler.plan(SCOPEDIR, VALID_SAF_NAME);
+    assertThat(wrangler.plan(SCOPEDIR, VALID_SAF_NAME)).isSameAs(plan);
+
+    GeneratorContext localContext = plan.contextMap(MRGTEST_VERSION).get("tev2");
+    assertThat(plan.version(MRGTEST_VERSION)).isPresent();
+    assertThat(plan.version("moo")).isEmpty();
+    assertThat(plan.contextMap(MRGTEST_VERSION))
+        .containsOnlyKeys("tev2", "essiflab", "essif-lab", "ctwg", "toip-ctwg");
+    assertThat(localContext.getVersionTag()).isEqualTo(MRGTEST_VERSION);
+    assertThat(localContext.getAddFilters()).containsExactly(TermsFilter.all());
+    assertThatExceptionOfType(UnsupportedOperationException.class)
+        .isThrownBy(() -> localContext.getAddFilters().add(TermsFilter.all()));
+    assertThatExceptionOfType(UnsupportedOperationException.class)
+        .isThrownBy(() -> localContext.setVersionTag("moo"));
+    assertThatExceptionOfType(UnsupportedOperationException.class)
+        .isThrownBy(() -> localContext.setRemoveFilters(List.of()));
+    assertThat(plan.contextMap(MRGTEST_VERSION).get("tev2").getVersionTag()).isEqualTo(MRGTEST_VERSION);
+
+    when(mockReader.getContent(OWNER_REPO, VALID_SAF_TRIGGER)).thenReturn(validSafContent + "\n");
+    assertThat(wrangler.plan(SCOPEDIR, VALID_SAF_NAME)).isNotSameAs(plan);
+  }
+
 
 
   @DisplayName("""
@@ -182,8 +222,7 @@ class ModelWranglerTest {
   @Test
   void testFetchTermsValid() {
     int expectedSize = 2;
-    when(mockReader.getDirectoryContent(OWNER_REPO, CURATED_DIR_PATH))
-        .thenReturn(List.of(termStringTerm, termStringScope));
+    stubCuratedDir(termStringTerm, termStringScope);
     GeneratorContext context =
         new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
     List<Term> terms = wrangler.fetchTerms(context, List.of(TermsFilter.of(TermsFilterType.terms, "term"), TermsFilter.of(TermsFilterType.terms, "scope")), new ArrayList<>());
@@ -204,4 +243,150 @@ class ModelWranglerTest {
     terms = wrangler.fetchTerms(context, List.of(TermsFilter.of(TermsFilterType.terms, "term, scope")), List.of(TermsFilter.of(TermsFilterType.terms, "scope, term")));
     assertThat(terms).hasSize(expectedSize);
   }
+
+  @DisplayName("""
+      Given terms are only selected by term id
+      When fetch terms
+      Then only the files named after those terms are fetched
+      """)
+  @Test
+  void testTermsPushedDownToConnector() {
+    stubCuratedDir(termStringTerm, termStringScope);
+    GeneratorContext context =
+        new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
+    List<Term> terms = wrangler.fetchTerms(context, List.of(TermsFilter.of(TermsFilterType.terms, "term")), new ArrayList<>());
+    assertThat(terms).extracting(Term::getTerm).containsExactly("term");
+    ArgumentCaptor<Predicate<String>> filenameFilter = ArgumentCaptor.forClass(Predicate.class);
+    verify(mockReader).getDirectoryFrontMatter(eq(OWNER_REPO), eq(CURATED_DIR_PATH), filenameFilter.capture(), eq(true));
+    verify(mockReader, never()).getDirectoryContent(OWNER_REPO, CURATED_DIR_PATH);
+    assertThat(filenameFilter.getValue()).accepts("term.md").rejects("scope.md");
+    // the body of a kept term is still scanned for headings
+    assertThat(new MRGEntry(terms.get(0)).getHeadingids()).contains("# TEv2 Curated Text Header", "# Term", "## Summary");
+  }
+
+  @DisplayName("""
+      Given a selected term lives in a file that isn't named after it
+      When fetch terms
+      Then the rest of the curated dir is fetched to find it
+      """)
+  @Test
+  void testTermsPushDownFallsBack() {
+    FileContent renamed =
+        new FileContent("terms/renamed.md", termStringTerm.content(), "htmllink", new ArrayList<>());
+    stubCuratedDir(renamed, termStringScope);
+    GeneratorContext context =
+        new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
+    List<Term> terms = wrangler.fetchTerms(context, List.of(TermsFilter.of(TermsFilterType.terms, "term, scope")), new ArrayList<>());
+    assertThat(terms).extracting(Term::getTerm).containsExactlyInAnyOrder("term", "scope");
+    verify(mockReader, times(2)).getDirectoryFrontMatter(eq(OWNER_REPO), eq(CURATED_DIR_PATH), any(), eq(true));
+  }
+
+  @DisplayName("""
+      Given filters that can drop terms
+      When fetch terms
+      Then the curated dir is read once and the headings come from that same read
+      """)
+  @Test
+  void testCuratedDirReadOnce() {
+    stubCuratedDir(termStringTerm, termStringScope);
+    GeneratorContext context =
+        new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
+    List<Term> terms =
+        wrangler.fetchTerms(context, new ArrayList<>(), List.of(TermsFilter.of(TermsFilterType.terms, "scope")));
+    assertThat(terms).extracting(Term::getTerm).containsExactly("term");
+    ArgumentCaptor<Predicate<String>> filenameFilter = ArgumentCaptor.forClass(Predicate.class);
+    verify(mockReader).getDirectoryFrontMatter(eq(OWNER_REPO), eq(CURATED_DIR_PATH), filenameFilter.capture(), eq(true));
+    verify(mockReader, never()).getDirectoryFrontMatter(eq(OWNER_REPO), eq(CURATED_DIR_PATH), any(), eq(false));
+    assertThat(filenameFilter.getValue()).accepts(termStringTerm.filename(), termStringScope.filename());
+    assertThat(new MRGEntry(terms.get(0)).getHeadingids()).contains("# Term", "## Summary");
+  }
+
+  @DisplayName("""
+      Given an unchanged curated dir
+      When fetch terms for two versions with different filters
+      Then the terms are only parsed for the first and each version gets its own copies
+      """)
+  @Test
+  void testTermIndexReusedAcrossVersions() {
+    List<FileContent> files = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      String content = String.format("---\nterm: term-%02d\ngrouptags: %s\n---\n", i, (i % 2 == 0) ? "even" : "odd");
+      files.add(new FileContent(String.format("term-%02d.md", i), content, "htmllink", new ArrayList<>()));
+    }
+    stubCuratedDir(files.toArray(new FileContent[0]));
+    ModelWrangler indexingWrangler = new ModelWrangler(yamlWrangler, mockReader, 1);
+    GeneratorContext v1 = new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, "v1", CURATED_DIR_NAME);
+    GeneratorContext v2 = new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, "v2", CURATED_DIR_NAME);
+
+    List<Term> evens = indexingWrangler.fetchTerms(v1, List.of(TermsFilter.of(TermsFilterType.tags, "even")), new ArrayList<>());
+    TermCache.Stats afterFirst = indexingWrangler.termCacheStats();
+    List<Term> odds =
+        indexingWrangler.fetchTerms(
+            v2,
+            List.of(TermsFilter.of(TermsFilterType.tags, "odd, even")),
+            List.of(TermsFilter.of(TermsFilterType.tags, "even")));
+
+    assertThat(indexingWrangler.termCacheStats().misses() + indexingWrangler.termCacheStats().hits())
+        .isEqualTo(afterFirst.misses() + afterFirst.hits());
+    assertThat(evens).hasSize(15).allMatch(t -> "v1".equals(t.getVsntag()));
+    assertThat(odds).hasSize(15).allMatch(t -> "v2".equals(t.getVsntag()));
+    assertThat(odds).extracting(Term::getTerm).startsWith("term-01", "term-03");
+  }
+
+  @DisplayName("""
+      Given a large curated dir
+      When fetch terms in parallel
+      Then the terms come back in the same order as a sequential parse
+      """)
+  @Test
+  void testParallelParseKeepsOrder() {
+    List<FileContent> files = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String content = String.format("---\nterm: term-%03d\ngrouptags: %s\n---\n# Term %d\n", i, (i % 3 == 0) ? "three" : "other", i);
+      files.add(new FileContent(String.format("term-%03d.md", i), content, "htmllink", new ArrayList<>()));
+    }
+    stubCuratedDir(files.toArray(new FileContent[0]));
+    GeneratorContext context =
+        new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
+    List<Predicate<Term>> addFilters = List.of(TermsFilter.of(TermsFilterType.tags, "three"));
+    List<Term> sequential =
+        new ModelWrangler(yamlWrangler, mockReader, 1).fetchTerms(context, addFilters, new ArrayList<>());
+    List<Term> parallel =
+        new ModelWrangler(yamlWrangler, mockReader, 8).fetchTerms(context, addFilters, new ArrayList<>());
+    assertThat(sequential).hasSize(167);
+    assertThat(parallel).extracting(Term::getTerm).containsExactlyElementsOf(sequential.stream().map(Term::getTerm).toList());
+    assertThat(parallel).extracting(Term::getTerm).isSorted();
+  }
+
+  @DisplayName("""
+      Given a curated dir with a term file that can't be parsed
+      When fetch terms
+      Then that file is skipped and the other terms are returned
+      """)
+  @Test
+  void testUnparseableTermFileSkipped() {
+    FileContent broken =
+        new FileContent("terms/broken.md", "---\nterm: [unclosed\n---\n", "htmllink", new ArrayList<>());
+    stubCuratedDir(termStringTerm, broken, termStringScope);
+    GeneratorContext context =
+        new GeneratorContext(OWNER_REPO, SCOPEDIR, ROOT_DIR, MRGTEST_VERSION, CURATED_DIR_NAME);
+    List<Term> terms = new ModelWrangler(yamlWrangler, mockReader, 4).fetchTerms(context, new ArrayList<>(), new ArrayList<>());
+    assertThat(terms).extracting(Term::getTerm).containsExactly("term", "scope");
+  }
+
+  @SuppressWarnings("unchecked")
+  private void stubCuratedDir(FileContent... files) {
+    List<FileContent> all = List.of(files);
+    when(mockReader.getDirectoryContent(OWNER_REPO, CURATED_DIR_PATH)).thenReturn(all);
+    when(mockReader.getDirectoryContent(eq(OWNER_REPO), eq(CURATED_DIR_PATH), any()))
+        .thenAnswer(invocation -> filtered(all, invocation.getArgument(2)));
+    when(mockReader.getDirectoryFrontMatter(eq(OWNER_REPO), eq(CURATED_DIR_PATH), any(), anyBoolean()))
+        .thenAnswer(invocation -> filtered(all, invocation.getArgument(2)));
+  }
+
+  private static List<FileContent> filtered(List<FileContent> files, Predicate<String> filenameFilter) {
+    return files.stream()
+        .filter(fc -> filenameFilter.test(fc.filename()))
+        .collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,317 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntFunction;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
+
+/**
+ * Synthetic scopes for finding out how the generator behaves at sizes and shapes the essif-lab
+ * skeleton doesn't have: a curated dir of any number of term files, terms with many grouptags or a
+ * very long glossaryText, and any number of imported scopes each with its own MRG. The same shape and
+ * seed always give the same files.
+ *
+ * <p>The local scope is tagged {@value #SCOPETAG} and its term files are {@code term-<n>.md}. Each
+ * imported scope is tagged {@code upstream-<n>} and has a SAF and an MRG of version {@value #VERSION}
+ * but no curated dir. The local SAF has two versions:
+ *
+ * <ul>
+ *   <li>{@value #VERSION} selects every local term and, from every imported scope, the entries with
+ *       grouptag {@code group-0} or {@code group-1}
+ *   <li>{@value #SELECTIVE_VERSION} selects the local terms with grouptag {@code group-0} or {@code
+ *       group-1}, or that are {@code term-0} or {@code term-1}, less those with grouptag {@code
+ *       group-2}, and imports nothing
+ * </ul>
+ *
+ * The scopes can be written to the file system as local scopedirs, see {@link #writeLocal(Path)}, or
+ * in the layout of GitHub repositories, see {@link #writeGithub(Path)} and {@link
+ * #forEachGithubFile(GithubFileSink)}.
+ *
+ * @author sih
+ */
+final class SyntheticCorpus {
+
+  static final String SCOPETAG = "synthetic";
+  static final String VERSION = "v1";
+  static final String SELECTIVE_VERSION = "selective";
+  static final String GITHUB_OWNER = "synthetic";
+  private static final String CURATEDIR = "terms";
+  private static final String GLOSSARYDIR = "glossaries";
+  private static final String GITHUB_ROOT = "docs";
+  private static final String UPSTREAM = "upstream-";
+  private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit.";
+
+  /**
+   * @param termFiles the number of term files in the local curated dir
+   * @param grouptags the number of distinct grouptags, {@code group-0} upwards
+   * @param grouptagsPerTerm the number of grouptags each term has, at most {@code grouptags}
+   * @param glossaryTextLength the length every glossaryText is padded to, 0 for a short one
+   * @param importedScopes the number of scopes the local scope imports from
+   * @param importedEntries the number of entries in the MRG of each imported scope
+   */
+  record Shape(
+      int termFiles,
+      int grouptags,
+      int grouptagsPerTerm,
+      int glossaryTextLength,
+      int importedScopes,
+      int importedEntries) {
+
+    /**
+     * @return term files each with one of 20 grouptags and a short glossaryText, and no imports
+     */
+    static Shape of(int termFiles) {
+      return new Shape(termFiles, 20, 1, 0, 0, 0);
+    }
+
+    Shape withGrouptags(int grouptags, int grouptagsPerTerm) {
+      return new Shape(termFiles, grouptags, grouptagsPerTerm, glossaryTextLength, importedScopes, importedEntries);
+    }
+
+    Shape withGlossaryTextLength(int glossaryTextLength) {
+      return new Shape(termFiles, grouptags, grouptagsPerTerm, glossaryTextLength, importedScopes, importedEntries);
+    }
+
+    Shape withImportedScopes(int importedScopes, int importedEntries) {
+      return new Shape(termFiles, grouptags, grouptagsPerTerm, glossaryTextLength, importedScopes, importedEntries);
+    }
+  }
+
+  /**
+   * Where a file in the GitHub layout goes.
+   */
+  @FunctionalInterface
+  interface GithubFileSink {
+    void accept(String ownerRepo, String path, String content) throws IOException;
+  }
+
+  private final Shape shape;
+  private final long seed;
+
+  SyntheticCorpus(Shape shape, long seed) {
+    if (shape.grouptagsPerTerm() > shape.grouptags()) {
+      throw new IllegalArgumentException("A term can't have more grouptags than there are");
+    }
+    this.shape = shape;
+    this.seed = seed;
+  }
+
+  Shape shape() {
+    return shape;
+  }
+
+  /**
+   * @return the content of every local term file, {@code term-<n>.md} being the nth
+   */
+  List<String> termFiles() {
+    Random random = new Random(seed);
+    List<String> contents = new ArrayList<>(shape.termFiles());
+    for (int i = 0; i < shape.termFiles(); i++) {
+      StringBuilder file = new StringBuilder("---\n\n# TEv2 Curated Text Header\n\n");
+      file.append("term: term-").append(i).append('\n');
+      file.append("termType: concept\n");
+      file.append("grouptags: ").append(String.join(", ", grouptags(random))).append('\n');
+      file.append("glossaryText: \"").append(glossaryText("synthetic term number " + i)).append("\"\n");
+      file.append("formPhrases: term{ss}\n\n# Curation status\n\nstatus: proposed\n---\n\n");
+      file.append("# Term ").append(i).append("\n\n");
+      int sections = 1 + random.nextInt(6);
+      for (int s = 0; s < sections; s++) {
+        file.append("## Section ").append(s).append("\n\n");
+        file.append((LOREM + "\n").repeat(1 + random.nextInt(20)));
+        file.append("\n---\n\n");
+      }
+      contents.add(file.toString());
+    }
+    return contents;
+  }
+
+  /**
+   * @param scopedir where the local scope is
+   * @param glossarydir where its MRGs are written
+   * @param importedScopedir the scopedir of the nth imported scope
+   * @return the local SAF
+   */
+  String saf(String scopedir, String glossarydir, IntFunction<String> importedScopedir) {
+    StringBuilder saf = scope(SCOPETAG, scopedir, glossarydir);
+    saf.append("scopes:");
+    if (shape.importedScopes() == 0) {
+      saf.append(" []");
+    }
+    saf.append('\n');
+    for (int n = 0; n < shape.importedScopes(); n++) {
+      saf.append("  - scopetags:\n      - ").append(UPSTREAM).append(n).append('\n');
+      saf.append("    scopedir: ").append(importedScopedir.apply(n)).append('\n');
+    }
+    saf.append("versions:\n");
+    saf.append("  - vsntag: ").append(VERSION).append('\n');
+    saf.append("    termselcrit:\n");
+    saf.append("      - \"*@").append(SCOPETAG).append("\"\n");
+    for (int n = 0; n < shape.importedScopes(); n++) {
+      saf.append("      - \"tags[group-0, group-1]@").append(UPSTREAM).append(n).append(':').append(VERSION).append("\"\n");
+    }
+    saf.append("  - vsntag: ").append(SELECTIVE_VERSION).append('\n');
+    saf.append("    termselcrit:\n");
+    saf.append("      - \"tags[group-0, group-1]@").append(SCOPETAG).append("\"\n");
+    saf.append("      - \"terms[term-0, term-1]@").append(SCOPETAG).append("\"\n");
+    saf.append("      - \"-tags[group-2]@").append(SCOPETAG).append("\"\n");
+    return saf.toString();
+  }
+
+  /**
+   * @param glossarydir where its MRG is read from, which isn't resolved against the scopedir
+   * @return the SAF of the nth imported scope
+   */
+  String importedSaf(int n, String scopedir, String glossarydir) {
+    StringBuilder saf = scope(UPSTREAM + n, scopedir, glossarydir);
+    saf.append("scopes: []\nversions:\n");
+    saf.append("  - vsntag: ").append(VERSION).append('\n');
+    saf.append("    termselcrit:\n      - \"*@").append(UPSTREAM).append(n).append("\"\n");
+    return saf.toString();
+  }
+
+  /**
+   * @return the MRG of version {@value #VERSION} of the nth imported scope
+   */
+  String importedMrg(int n, String scopedir) {
+    String scopetag = UPSTREAM + n;
+    Random random = new Random(seed + n + 1);
+    List<MRGEntry> entries = new ArrayList<>(shape.importedEntries());
+    for (int i = 0; i < shape.importedEntries(); i++) {
+      MRGEntry entry = new MRGEntry();
+      entry.setTerm(scopetag + "-term-" + i);
+      entry.setScopetag(scopetag);
+      entry.setVsntag(VERSION);
+      entry.setTermType("concept");
+      entry.setGrouptags(String.join(", ", grouptags(random)));
+      entry.setGlossaryText(glossaryText("imported term number " + i));
+      entry.setLocator("term-" + i + ".md");
+      entry.setHeadingids(List.of("# Term " + i));
+      entries.add(entry);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (MRGStreamWriter writer =
+        new YamlWrangler()
+            .openMrg(
+                out,
+                new Terminology(scopetag, scopedir, CURATEDIR, VERSION),
+                List.of(new ScopeRef(List.of(scopetag), scopedir)))) {
+      writer.write(entries);
+    }
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the local scope to {@code root/synthetic} and each imported scope to {@code
+   * root/upstream-<n>}, with absolute glossarydirs so MRGs are read and written there.
+   *
+   * @return the local scopedir
+   */
+  String writeLocal(Path root) throws IOException {
+    Path local = root.resolve(SCOPETAG).toAbsolutePath();
+    Files.createDirectories(local.resolve(CURATEDIR));
+    Files.writeString(
+        local.resolve(MRGlossaryGenerator.DEFAULT_SAF_FILENAME),
+        saf(local.toString(), local.resolve(GLOSSARYDIR).toString(), n -> root.resolve(UPSTREAM + n).toAbsolutePath().toString()));
+    List<String> termFiles = termFiles();
+    for (int i = 0; i < termFiles.size(); i++) {
+      Files.writeString(local.resolve(CURATEDIR).resolve("term-" + i + ".md"), termFiles.get(i));
+    }
+    for (int n = 0; n < shape.importedScopes(); n++) {
+      Path imported = root.resolve(UPSTREAM + n).toAbsolutePath();
+      Path glossaries = Files.createDirectories(imported.resolve(GLOSSARYDIR));
+      Files.writeString(
+          imported.resolve(MRGlossaryGenerator.DEFAULT_SAF_FILENAME),
+          importedSaf(n, imported.toString(), glossaries.toString()));
+      Files.writeString(glossaries.resolve(mrgFilename()), importedMrg(n, imported.toString()));
+    }
+    return local.toString();
+  }
+
+  /**
+   * Writes every scope as the {@code docs} dir of its own repository, {@code root/<owner>/<repo>},
+   * for a stub GitHub to serve.
+   *
+   * @return the local scopedir, a GitHub URL
+   */
+  String writeGithub(Path root) throws IOException {
+    return forEachGithubFile(
+        (ownerRepo, path, content) -> {
+          Path file = root.resolve(ownerRepo).resolve(path);
+          Files.createDirectories(file.getParent());
+          Files.writeString(file, content);
+        });
+  }
+
+  /**
+   * Hands every file of every scope in the GitHub layout to the sink, the local scope first.
+   *
+   * @return the local scopedir, a GitHub URL
+   */
+  String forEachGithubFile(GithubFileSink sink) throws IOException {
+    String ownerRepo = GITHUB_OWNER + "/" + SCOPETAG;
+    sink.accept(
+        ownerRepo,
+        GITHUB_ROOT + "/" + MRGlossaryGenerator.DEFAULT_SAF_FILENAME,
+        saf(githubScopedir(SCOPETAG), GLOSSARYDIR, n -> githubScopedir(UPSTREAM + n)));
+    List<String> termFiles = termFiles();
+    for (int i = 0; i < termFiles.size(); i++) {
+      sink.accept(ownerRepo, String.join("/", GITHUB_ROOT, CURATEDIR, "term-" + i + ".md"), termFiles.get(i));
+    }
+    for (int n = 0; n < shape.importedScopes(); n++) {
+      String importedRepo = GITHUB_OWNER + "/" + UPSTREAM + n;
+      String glossaries = GITHUB_ROOT + "/" + GLOSSARYDIR; // relative to the repository, not the scopedir
+      sink.accept(
+          importedRepo,
+          GITHUB_ROOT + "/" + MRGlossaryGenerator.DEFAULT_SAF_FILENAME,
+          importedSaf(n, githubScopedir(UPSTREAM + n), glossaries));
+      sink.accept(importedRepo, glossaries + "/" + mrgFilename(), importedMrg(n, githubScopedir(UPSTREAM + n)));
+    }
+    return githubScopedir(SCOPETAG);
+  }
+
+  static String githubScopedir(String repo) {
+    return String.join("/", "https://github.com", GITHUB_OWNER, repo, "tree/main", GITHUB_ROOT);
+  }
+
+  private StringBuilder scope(String scopetag, String scopedir, String glossarydir) {
+    StringBuilder saf = new StringBuilder("scope:\n");
+    saf.append("  scopetag: ").append(scopetag).append('\n');
+    saf.append("  scopedir: ").append(scopedir).append('\n');
+    saf.append("  curatedir: ").append(CURATEDIR).append('\n');
+    saf.append("  glossarydir: ").append(glossarydir).append('\n');
+    return saf;
+  }
+
+  private List<String> grouptags(Random random) {
+    Set<String> grouptags = new LinkedHashSet<>();
+    while (grouptags.size() < shape.grouptagsPerTerm()) {
+      grouptags.add("group-" + random.nextInt(shape.grouptags()));
+    }
+    return new ArrayList<>(grouptags);
+  }
+
+  private String glossaryText(String text) {
+    if (text.length() >= shape.glossaryTextLength()) {
+      return text;
+    }
+    StringBuilder padded = new StringBuilder(shape.glossaryTextLength()).append(text);
+    while (padded.length() < shape.glossaryTextLength()) {
+      padded.append(' ').append(LOREM);
+    }
+    return padded.substring(0, shape.glossaryTextLength());
+  }
+
+  private static String mrgFilename() {
+    return String.join(".", MRGlossaryGenerator.DEFAULT_MRG_FILENAME, VERSION, "yaml");
+  }
+}
@@ -0,0 +1,134 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.connectors.FileContent;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+
+/**
+ * @author sih
+ */
+class TermCacheTest {
+
+  private static final long ONE_MB = 1024L * 1024L;
+
+  private AtomicInteger parses;
+  private Function<FileContent, FileContent> cleaner;
+  private Function<FileContent, Term> parser;
+
+  @BeforeEach
+  void setUp() {
+    parses = new AtomicInteger();
+    cleaner =
+        raw -> new FileContent(raw.filename(), raw.content(), raw.htmlLink(), List.of("# Heading"));
+    parser =
+        cleaned -> {
+          parses.incrementAndGet();
+          Term t = new Term();
+          t.setTerm(cleaned.content());
+          t.setHeadings(cleaned.headings());
+          return t;
+        };
+  }
+
+  @Test
+  @DisplayName("""
+      Given the same content twice
+      When get
+      Then it is only parsed once and each caller gets its own copy
+      """)
+  void testHitReturnsCopy() {
+    TermCache cache = new TermCache(ONE_MB);
+    Term first = cache.get(file("a.md", "foo", "sha-foo"), cleaner, parser);
+    first.setScopetag("changed");
+    Term second = cache.get(file("b.md", "foo", "sha-foo"), cleaner, parser);
+    assertThat(parses).hasValue(1);
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getTerm()).isEqualTo("foo");
+    assertThat(second.getScopetag()).isNull();
+    TermCache.Stats stats = cache.stats();
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.hitRatio()).isEqualTo(0.5);
+    assertThat(stats.bytesHeld()).isPositive();
+  }
+
+  @Test
+  @DisplayName("Given no sha from the connector then identical content is still recognised")
+  void testContentHashWhenNoSha() {
+    TermCache cache = new TermCache(ONE_MB);
+    cache.get(file("a.md", "foo", null), cleaner, parser);
+    cache.get(file("b.md", "foo", null), cleaner, parser);
+    cache.get(file("c.md", "bar", null), cleaner, parser);
+    assertThat(parses).hasValue(2);
+    // same algorithm as git hash-object
+    assertThat(FileContent.blobSha("hello\n")).isEqualTo("ce013625030ba8dba906f756967f9e9ca394464a");
+  }
+
+  @Test
+  @DisplayName("Given more terms than fit then the least recently used are evicted")
+  void testEviction() {
+    TermCache cache = new TermCache(2000);
+    List<String> shas = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      shas.add("sha-" + i);
+      cache.get(file(i + ".md", "term " + i, shas.get(i)), cleaner, parser);
+    }
+    TermCache.Stats stats = cache.stats();
+    assertThat(stats.bytesHeld()).isLessThanOrEqualTo(2000);
+    assertThat(stats.entries()).isLessThan(10);
+    // the most recent one is still there, the first one has gone
+    cache.get(file("9.md", "term 9", shas.get(9)), cleaner, parser);
+    assertThat(parses).hasValue(10);
+    cache.get(file("0.md", "term 0", shas.get(0)), cleaner, parser);
+    assertThat(parses).hasValue(11);
+  }
+
+  @Test
+  @DisplayName("Given a cache size of zero then every file is parsed")
+  void testDisabled() {
+    TermCache cache = new TermCache(0);
+    cache.get(file("a.md", "foo", "sha-foo"), cleaner, parser);
+    cache.get(file("a.md", "foo", "sha-foo"), cleaner, parser);
+    assertThat(parses).hasValue(2);
+    assertThat(cache.stats().entries()).isZero();
+  }
+
+  @Test
+  @DisplayName("""
+      Given two term caches registered with the generation metrics
+      When terms are looked up in both
+      Then the meters add up their hits, misses, entries and bytes
+      """)
+  void testMetrics() {
+    SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    GenerationMetrics metrics = new GenerationMetrics(meters);
+    TermCache first = new TermCache(ONE_MB);
+    TermCache second = new TermCache(ONE_MB);
+    metrics.termCache(first);
+    metrics.termCache(second);
+    first.get(file("a.md", "foo", "sha-foo"), cleaner, parser);
+    first.get(file("a.md", "foo", "sha-foo"), cleaner, parser);
+    second.get(file("b.md", "bar", "sha-bar"), cleaner, parser);
+
+    assertThat(meters.get(GenerationMetrics.TERM_CACHE_REQUESTS).tag("result", "hit").functionCounter().count())
+        .isEqualTo(1);
+    assertThat(meters.get(GenerationMetrics.TERM_CACHE_REQUESTS).tag("result", "miss").functionCounter().count())
+        .isEqualTo(2);
+    assertThat(meters.get(GenerationMetrics.TERM_CACHE_ENTRIES).gauge().value()).isEqualTo(2);
+    assertThat(meters.get(GenerationMetrics.TERM_CACHE_BYTES).gauge().value())
+        .isEqualTo(first.stats().bytesHeld() + second.stats().bytesHeld());
+  }
+
+  private static FileContent file(String name, String content, String sha) {
+    return new FileContent(name, content, "htmllink", new ArrayList<>(), sha);
+  }
+}
@@ -0,0 +1,101 @@
+package org.trustoverip.ctwg.toolkit.mrg.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.processors.TermsFilter.TermsFilterType;
+
+/**
+ * @author sih
+ */
+class TermIndexTest {
+
+  private static final int TERMS = 60;
+  private static final int TAGS = 10;
+
+  @Test
+  @DisplayName("""
+      Given random add and remove filters over an index of random terms
+      When select
+      Then exactly the terms the compiled filter selects are set, in directory order
+      """)
+  void testSameSelectionAsCompiledFilter() {
+    Random random = new Random(23);
+    Map<String, Term> termsByFilename = new LinkedHashMap<>();
+    for (int i = 0; i < TERMS; i++) {
+      termsByFilename.put("term-" + i + ".md", term(" Term-" + i, (i % 7 == 0) ? null : randomTags(random)));
+    }
+    TermIndex index = new TermIndex(List.of(), termsByFilename);
+    List<Term> terms = new ArrayList<>(termsByFilename.values());
+    for (int round = 0; round < 300; round++) {
+      List<Predicate<Term>> addFilters = randomFilters(random, random.nextInt(4));
+      List<Predicate<Term>> removeFilters = randomFilters(random, random.nextInt(3));
+      CompiledTermsFilter compiled = CompiledTermsFilter.compile(addFilters, removeFilters);
+      BitSet expected = new BitSet();
+      for (int i = 0; i < terms.size(); i++) {
+        if (compiled.test(terms.get(i))) {
+          expected.set(i);
+        }
+      }
+      assertThat(index.select(addFilters, removeFilters))
+          .as("add %s and remove %s", addFilters, removeFilters)
+          .isEqualTo(expected);
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given a filter that is a plain predicate rather than a TermsFilter
+      When select
+      Then it is tested against each term
+      """)
+  void testOtherPredicates() {
+    Map<String, Term> termsByFilename = new LinkedHashMap<>();
+    termsByFilename.put("a.md", term("a", "x"));
+    termsByFilename.put("b.md", term("b", "x"));
+    TermIndex index = new TermIndex(List.of(), termsByFilename);
+    Predicate<Term> isB = t -> "b".equals(t.getTerm());
+    assertThat(index.select(List.of(isB), null).stream().toArray()).containsExactly(1);
+    assertThat(index.select(null, List.of(isB)).stream().toArray()).containsExactly(0);
+    assertThat(index.filename(1)).isEqualTo("b.md");
+  }
+
+  private static List<Predicate<Term>> randomFilters(Random random, int count) {
+    List<Predicate<Term>> filters = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int kind = random.nextInt(10);
+      if (kind == 0) {
+        filters.add(TermsFilter.all());
+      } else if (kind < 6) {
+        filters.add(TermsFilter.of(TermsFilterType.tags, randomTags(random)));
+      } else {
+        filters.add(TermsFilter.of(TermsFilterType.terms, "term-" + random.nextInt(TERMS) + ", TERM-" + random.nextInt(TERMS)));
+      }
+    }
+    return filters;
+  }
+
+  private static String randomTags(Random random) {
+    StringBuilder tags = new StringBuilder();
+    for (int j = 0; j <= random.nextInt(3); j++) {
+      tags.append(j == 0 ? "" : ", ").append("Tag-").append(random.nextInt(TAGS));
+    }
+    return tags.toString();
+  }
+
+  private static Term term(String id, String grouptags) {
+    Term term = new Term();
+    term.setTerm(id);
+    term.setGrouptags(grouptags);
+    return term;
+  }
+}
@@ -2,22 +2,34 @@ package org.trustoverip.ctwg.toolkit.mrg.processors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_MRG;
 import static org.trustoverip.ctwg.toolkit.mrg.processors.MRGGenerationException.UNABLE_TO_PARSE_SAF;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.trustoverip.ctwg.toolkit.mrg.model.Curator;
 import org.trustoverip.ctwg.toolkit.mrg.model.Email;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGEntry;
+import org.trustoverip.ctwg.toolkit.mrg.model.MRGModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.SAFModel;
 import org.trustoverip.ctwg.toolkit.mrg.model.Scope;
 import org.trustoverip.ctwg.toolkit.mrg.model.ScopeRef;
+import org.trustoverip.ctwg.toolkit.mrg.model.Term;
+import org.trustoverip.ctwg.toolkit.mrg.model.Terminology;
 import org.trustoverip.ctwg.toolkit.mrg.model.Version;
 
 /**
@@ -73,11 +85,148 @@ class YamlWranglerTest {
         .withMessage(UNABLE_TO_PARSE_SAF);
   }
 
+  @Test
+  void given_term_yaml_when_parse_from_bytes_or_stream_then_same_as_from_string() {
+    String termYaml = "term: term\ntermType: concept\ngrouptags: tev2, terms\nglossaryText: a word\n";
+    byte[] termBytes = termYaml.getBytes(StandardCharsets.UTF_8);
+    Term fromString = yamlWrangler.parseTerm(termYaml);
+    assertThat(fromString.getTerm()).isEqualTo("term");
+    assertThat(yamlWrangler.parseTerm(termBytes)).usingRecursiveComparison().isEqualTo(fromString);
+    assertThat(yamlWrangler.parseTerm(new ByteArrayInputStream(termBytes)))
+        .usingRecursiveComparison()
+        .isEqualTo(fromString);
+  }
+
+  @Test
+  void given_blackbird_when_parse_then_same_models_as_without() {
+    YamlWrangler blackbird = new YamlWrangler(true);
+    assertThat(blackbird.parseSaf(safAsString))
+        .usingRecursiveComparison()
+        .isEqualTo(yamlWrangler.parseSaf(safAsString));
+    String termYaml = "term: term\ntermType: concept\ngrouptags: tev2\n";
+    assertThat(blackbird.parseTerm(termYaml))
+        .usingRecursiveComparison()
+        .isEqualTo(yamlWrangler.parseTerm(termYaml));
+  }
+
+  @Test
+  @DisplayName("""
+      Given an MRG
+      When its entries are streamed a few at a time
+      Then the YAML is the same as writing the whole model in one go
+      """)
+  void given_mrg_when_stream_entries_in_batches_then_same_yaml_as_whole_model(@TempDir Path dir)
+      throws Exception {
+    MRGModel mrg = sampleMrg(5);
+    List<MRGEntry> entries = mrg.entries();
+    Path wholeModel = dir.resolve("whole.yaml");
+    yamlWrangler.writeMrg(wholeModel, mrg);
+
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    try (MRGStreamWriter writer = yamlWrangler.openMrg(streamed, mrg.terminology(), mrg.scopes())) {
+      for (int i = 0; i < entries.size(); i += 2) {
+        writer.write(entries.subList(i, Math.min(i + 2, entries.size())));
+      }
+      writer.write(List.of());
+      assertThat(writer.entriesWritten()).isEqualTo(entries.size());
+    }
+
+    assertThat(entries).hasSizeGreaterThan(2);
+    assertThat(streamed.toString(StandardCharsets.UTF_8)).isEqualTo(Files.readString(wholeModel));
+  }
+
+  @Test
+  @DisplayName("""
+      Given a stream of entries that fails part way through
+      When write MRG
+      Then the error is rethrown and no MRG or temporary file is left behind
+      """)
+  void given_failing_entries_when_write_mrg_then_leave_nothing_behind(@TempDir Path dir)
+      throws Exception {
+    MRGModel mrg = sampleMrg(5);
+    Path location = dir.resolve("mrg.yaml");
+
+    assertThatExceptionOfType(MRGGenerationException.class)
+        .isThrownBy(
+            () ->
+                yamlWrangler.writeMrg(
+                    location,
+                    mrg.terminology(),
+                    mrg.scopes(),
+                    writer -> {
+                      writer.write(mrg.entries());
+                      throw new MRGGenerationException("remote scope failed");
+                    }))
+        .withMessage("remote scope failed");
+    try (Stream<Path> files = Files.list(dir)) {
+      assertThat(files).isEmpty();
+    }
+  }
+
+  @Test
+  @DisplayName("""
+      Given a streamed MRG and an entry filter
+      When parse MRG
+      Then only the entries the filter accepts are kept, in order, with the rest of the MRG as before
+      """)
+  void given_entry_filter_when_parse_mrg_stream_then_keep_matching_entries(@TempDir Path dir)
+      throws Exception {
+    MRGModel mrg = sampleMrg(50);
+    Path location = dir.resolve("mrg.yaml");
+    yamlWrangler.writeMrg(location, mrg);
+    byte[] mrgBytes = Files.readAllBytes(location);
+
+    MRGModel filtered =
+        yamlWrangler.parseMrg(
+            new ByteArrayInputStream(mrgBytes), entry -> entry.getTerm().endsWith("7"));
+    MRGModel whole = yamlWrangler.parseMrg(new ByteArrayInputStream(mrgBytes));
+
+    assertThat(filtered.terminology()).usingRecursiveComparison().isEqualTo(whole.terminology());
+    assertThat(filtered.scopes()).usingRecursiveComparison().isEqualTo(whole.scopes());
+    assertThat(filtered.entries())
+        .usingRecursiveFieldByFieldElementComparator()
+        .containsExactlyElementsOf(
+            whole.entries().stream().filter(entry -> entry.getTerm().endsWith("7")).toList());
+    assertThat(filtered.entries())
+        .extracting(MRGEntry::getTerm)
+        .containsExactly("term-7", "term-17", "term-27", "term-37", "term-47");
+  }
+
+  @Test
+  void given_unknown_mrg_section_when_parse_mrg_stream_then_throw_MRGException() {
+    String notAnMrg = "terminology:\n  scopetag: tev2\nglossary:\n  - term: term\n";
+    assertThatExceptionOfType(MRGGenerationException.class)
+        .isThrownBy(
+            () ->
+                yamlWrangler.parseMrg(
+                    new ByteArrayInputStream(notAnMrg.getBytes(StandardCharsets.UTF_8)),
+                    entry -> true))
+        .withMessage(UNABLE_TO_PARSE_MRG);
+  }
+
   @Test
   void given_invalid_path_when_write_mrg_then_throw_MRGException() {
     Path p = Paths.get("foo");
   }
 
+  private MRGModel sampleMrg(int entryCount) {
+    SAFModel saf = yamlWrangler.parseSaf(safAsString);
+    Terminology terminology =
+        new Terminology(
+            saf.getScope().getScopetag(),
+            saf.getScope().getScopedir(),
+            saf.getScope().getCuratedir(),
+            "v1");
+    terminology.setAltvsntags(List.of("latest"));
+    List<MRGEntry> entries = new ArrayList<>();
+    for (int i = 0; i < entryCount; i++) {
+      Term term = yamlWrangler.parseTerm("term: term-" + i + "\ntermType: concept\ngrouptags: tev2\n");
+      term.addHeadings(List.of("# Term " + i, "## Notes"));
+      entries.add(new MRGEntry(term));
+    }
+    return new MRGModel(terminology, saf.getScopes(), entries);
+  }
+
   private void assertSpecificChecksForSample1(SAFModel actualModel) {
     // check top-level scope
     Scope actualTerminology = actualModel.getScope();